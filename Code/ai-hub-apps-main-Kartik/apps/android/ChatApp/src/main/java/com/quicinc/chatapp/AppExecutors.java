@@ -0,0 +1,213 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AppExecutors - Application-wide thread pools shared by all screens
+ *
+ * - io():        file / content resolver / SharedPreferences work (PDF and image loading)
+ * - cpu():       parsing and text processing, sized to the CPU core count
+ * - inference:   a single dispatch thread in front of the model. Genie runs one generation at a
+ *                time, so requests are queued by priority instead of each spawning its own thread.
+ *
+ * Thread counts are fixed and idle threads time out, so a long session never accumulates threads.
+ * The io and cpu queues are bounded; a task submitted to a full queue runs on the submitting
+ * thread, which slows the producer down instead of growing the backlog without limit. When the
+ * submitter is the main thread the task goes to a single overflow thread instead, so disk I/O
+ * or formatting never runs on the UI thread, however loaded the app is. The inference queue is
+ * left unbounded: dropping or rejecting a queued generation would leave whoever waits on it
+ * hanging, and it only grows by one entry per user action or prefetch step.
+ * Use TaskScope to tie submitted work to an activity's lifecycle.
+ */
+public final class AppExecutors {
+
+    private static final String TAG = "AppExecutors";
+
+    // Inference priorities (lower runs first)
+    public static final int PRIORITY_INTERACTIVE = 0;  // User is waiting on the result
+    public static final int PRIORITY_BACKGROUND = 10;  // Prefetch, summaries, pre-generation
+
+    private static final int IO_THREADS = 3;
+    private static final int CPU_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int IO_QUEUE_CAPACITY = 256;
+    private static final int CPU_QUEUE_CAPACITY = 256;
+
+    private static volatile AppExecutors instance;
+
+    private final ThreadPoolExecutor ioPool;
+    private final ThreadPoolExecutor cpuPool;
+    private final ThreadPoolExecutor inferencePool;
+    private final ThreadPoolExecutor overflowPool;  // Takes full-queue tasks submitted from the main thread
+    private final AtomicLong inferenceSequence = new AtomicLong();
+
+    private AppExecutors() {
+        overflowPool = newPool("overflow", 1, new LinkedBlockingQueue<>(), Process.THREAD_PRIORITY_BACKGROUND, null);
+        ioPool = newPool("io", IO_THREADS, new LinkedBlockingQueue<>(IO_QUEUE_CAPACITY), Process.THREAD_PRIORITY_BACKGROUND, overflowPool);
+        cpuPool = newPool("cpu", CPU_THREADS, new LinkedBlockingQueue<>(CPU_QUEUE_CAPACITY), Process.THREAD_PRIORITY_DEFAULT, overflowPool);
+        inferencePool = newPool("inference", 1, new PriorityBlockingQueue<>(), Process.THREAD_PRIORITY_DEFAULT, null);
+    }
+
+    public static AppExecutors get() {
+        if (instance == null) {
+            synchronized (AppExecutors.class) {
+                if (instance == null) {
+                    instance = new AppExecutors();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static ThreadPoolExecutor newPool(String name, int threads,
+                                              BlockingQueue<Runnable> queue,
+                                              int osPriority, ThreadPoolExecutor overflow) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue,
+                new NamedThreadFactory(name, osPriority), new CallerRunsWhenFull(name, overflow));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public ExecutorService io() {
+        return ioPool;
+    }
+
+    public ExecutorService cpu() {
+        return cpuPool;
+    }
+
+    /**
+     * Queue work for the model. Tasks run one at a time, lowest priority value first,
+     * and in submission order within the same priority.
+     */
+    public Future<?> submitInference(Runnable task, int priority) {
+        return submitInference(() -> {
+            task.run();
+            return null;
+        }, priority);
+    }
+
+    public <T> Future<T> submitInference(Callable<T> task, int priority) {
+        PrioritizedTask<T> prioritized = new PrioritizedTask<>(task, priority, inferenceSequence.getAndIncrement());
+        inferencePool.execute(prioritized);
+        Tracer.counter("executor", "inferenceQueue", inferencePool.getQueue().size());
+        return prioritized;
+    }
+
+    /**
+     * Thread-count and queue metrics for all pools
+     */
+    public String getMetricsSummary() {
+        return describe("io", ioPool) + "\n"
+                + describe("cpu", cpuPool) + "\n"
+                + describe("inference", inferencePool) + "\n"
+                + describe("overflow", overflowPool) + "\n"
+                + "total threads: " + getThreadCount();
+    }
+
+    public int getThreadCount() {
+        return ioPool.getPoolSize() + cpuPool.getPoolSize() + inferencePool.getPoolSize()
+                + overflowPool.getPoolSize();
+    }
+
+    public void logMetrics() {
+        Log.d(TAG, getMetricsSummary().replace('\n', ' '));
+        Tracer.counter("executor", "threads", getThreadCount());
+        Tracer.counter("executor", "ioQueue", ioPool.getQueue().size());
+        Tracer.counter("executor", "cpuQueue", cpuPool.getQueue().size());
+        Tracer.counter("executor", "inferenceQueue", inferencePool.getQueue().size());
+    }
+
+    private static String describe(String name, ThreadPoolExecutor pool) {
+        return String.format("%s: %d/%d threads, %d active, %d queued, %d completed",
+                name, pool.getPoolSize(), pool.getMaximumPoolSize(), pool.getActiveCount(),
+                pool.getQueue().size(), pool.getCompletedTaskCount());
+    }
+
+    /**
+     * FutureTask ordered by (priority, submission order) for the inference priority queue
+     */
+    private static final class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+        private final int priority;
+        private final long sequence;
+
+        PrioritizedTask(Callable<T> callable, int priority, long sequence) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Runs a task on the submitting thread when the pool's queue is full, or on the overflow
+     * pool if the submitting thread is the main thread
+     */
+    private static final class CallerRunsWhenFull extends ThreadPoolExecutor.CallerRunsPolicy {
+        private final String name;
+        private final ThreadPoolExecutor overflow;  // Null where the queue is unbounded
+
+        CallerRunsWhenFull(String name, ThreadPoolExecutor overflow) {
+            this.name = name;
+            this.overflow = overflow;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            Tracer.instant("executor", name + "QueueFull");
+            if (overflow != null && !pool.isShutdown() && Looper.myLooper() == Looper.getMainLooper()) {
+                Log.w(TAG, name + " queue full (" + pool.getQueue().size() + "), handing off to overflow");
+                overflow.execute(task);
+                return;
+            }
+            Log.w(TAG, name + " queue full (" + pool.getQueue().size() + "), running on " + Thread.currentThread().getName());
+            super.rejectedExecution(task, pool);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final int osPriority;
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        NamedThreadFactory(String name, int osPriority) {
+            this.name = name;
+            this.osPriority = osPriority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(osPriority);
+                runnable.run();
+            }, "tutor-" + name + "-" + count.getAndIncrement());
+        }
+    }
+}
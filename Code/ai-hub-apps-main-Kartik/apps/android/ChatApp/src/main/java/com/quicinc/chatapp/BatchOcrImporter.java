@@ -0,0 +1,289 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * BatchOcrImporter - Recognizes a set of photographed pages and stores them as one document
+ *
+ * Each image's OCR text is cached in DocumentStore under the hash of the image bytes, so pages
+ * that were recognized before (in a batch or on their own) are not recognized again. The
+ * remaining pages run through OcrPipeline with at most MAX_IN_FLIGHT decoded at a time, and the
+ * texts are merged in the order the pages were given.
+ *
+ * The merged document is checked first, by its hash (derived from the image hashes): the page
+ * entries have no owner and are collected after the grace period, while the merged document is
+ * kept by the session that holds it, so a batch imported again is not recognized again.
+ */
+public class BatchOcrImporter {
+
+    private static final String TAG = "BatchOcrImporter";
+    private static final int MAX_IN_FLIGHT = 2;  // Decoded bitmaps alive at once (~12 MB each)
+
+    /**
+     * Listener - Progress of a batch, called on a background thread
+     */
+    public interface Listener {
+        void onPageDone(int done, int total);
+    }
+
+    private final DocumentStore documentStore;
+    private final OcrPipeline ocrPipeline;
+    private final List<Uri> uris;
+    private final List<String> names;
+    private final Listener listener;
+
+    private final String[] hashes;
+    private final String[] texts;
+    private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+    private final CompletableFuture<Result> future = new CompletableFuture<>();
+    private int inFlight = 0;
+    private int done = 0;
+    private int recognized = 0;
+    private int failed = 0;
+    private Throwable lastError;
+    private Tracer.Span span;
+
+    private BatchOcrImporter(Context context, List<Uri> uris, List<String> names, Listener listener) {
+        this.documentStore = DocumentStore.get(context);
+        this.ocrPipeline = OcrPipeline.get(context);
+        this.uris = uris;
+        this.names = names;
+        this.listener = listener;
+        this.hashes = new String[uris.size()];
+        this.texts = new String[uris.size()];
+    }
+
+    /**
+     * Recognize the images and store the merged text. Blocks while hashing the images, so call
+     * on a background thread; recognition itself completes asynchronously, and fails only if
+     * no image could be recognized.
+     *
+     * @param names display names of the images, in the same order
+     */
+    public static CompletableFuture<Result> importImages(Context context, List<Uri> uris, List<String> names,
+                                                         Listener listener) {
+        BatchOcrImporter importer = new BatchOcrImporter(context, uris, names, listener);
+        importer.start();
+        return importer.future;
+    }
+
+    private void start() {
+        span = Tracer.begin("ocr", "importBatch");
+        try {
+            for (int i = 0; i < uris.size(); i++) {
+                hashes[i] = documentStore.hashUri(uris.get(i));
+            }
+        } catch (IOException e) {
+            span.end();
+            future.completeExceptionally(e);
+            return;
+        }
+        if (uris.size() > 1 && completeFromStoredBatch()) {
+            return;
+        }
+        for (int i = 0; i < uris.size(); i++) {
+            String cached = documentStore.getText(hashes[i]);
+            if (cached != null) {
+                texts[i] = cached;
+            } else {
+                pending.add(i);
+            }
+        }
+
+        synchronized (this) {
+            done = uris.size() - pending.size();
+        }
+        listener.onPageDone(done, uris.size());
+        if (pending.isEmpty()) {
+            finish();
+            return;
+        }
+        dispatch();
+    }
+
+    /**
+     * Complete with the merged document if this batch was stored complete before
+     *
+     * @return false if it was not, and the pages have to be looked up one by one
+     */
+    private boolean completeFromStoredBatch() {
+        String hash = batchHash();
+        DocumentStore.Entry entry = documentStore.getEntry(hash);
+        String text = entry != null && entry.isComplete() ? documentStore.getText(hash) : null;
+        if (text == null) {
+            return false;
+        }
+        int emptyPages = 0;
+        for (int i = 0; i < uris.size(); i++) {
+            if (!text.contains(pageHeader(i))) {
+                emptyPages++;
+            }
+        }
+        listener.onPageDone(uris.size(), uris.size());
+        span.setDetail(uris.size() + " pages, stored batch");
+        span.end();
+        Log.i(TAG, "Batch of " + uris.size() + " pages already imported: " + hash.substring(0, 12));
+        future.complete(new Result(hash, entry.getName(), text, uris.size(), 0, emptyPages));
+        return true;
+    }
+
+    /**
+     * Start recognizing pending pages until MAX_IN_FLIGHT are running
+     */
+    private void dispatch() {
+        while (true) {
+            int index;
+            synchronized (this) {
+                if (inFlight >= MAX_IN_FLIGHT || pending.isEmpty()) {
+                    return;
+                }
+                index = pending.poll();
+                inFlight++;
+            }
+            // Stored on the I/O pool: the future completes on ML Kit's thread
+            ocrPipeline.recognize(uris.get(index)).whenCompleteAsync(
+                    (result, error) -> onPageRecognized(index, result, error), AppExecutors.get().io());
+        }
+    }
+
+    private void onPageRecognized(int index, OcrPipeline.Result result, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            Log.e(TAG, "OCR failed for " + names.get(index) + ": " + cause.getMessage());
+            texts[index] = "";  // Not cached, so the page is retried next time
+            lastError = cause;
+        } else {
+            texts[index] = result.text.trim();
+            try {
+                documentStore.put(hashes[index], DocumentStore.KIND_IMAGE, names.get(index), texts[index], 1, true);
+            } catch (IOException e) {
+                Log.e(TAG, "Error caching OCR of " + names.get(index) + ": " + e.getMessage());
+            }
+        }
+
+        boolean last;
+        int progress;
+        synchronized (this) {
+            inFlight--;
+            done++;
+            if (error == null) {
+                recognized++;
+            } else {
+                failed++;
+            }
+            progress = done;
+            last = done == uris.size();
+        }
+        listener.onPageDone(progress, uris.size());
+        if (last) {
+            finish();
+        } else {
+            dispatch();
+        }
+    }
+
+    /**
+     * Merge the page texts in order and store them as one document. A single image is its own
+     * document: its OCR text under its own hash.
+     */
+    private void finish() {
+        if (failed == uris.size()) {
+            span.end();
+            future.completeExceptionally(lastError);
+            return;
+        }
+
+        int emptyPages = 0;
+        for (String text : texts) {
+            if (text.isEmpty()) {
+                emptyPages++;
+            }
+        }
+
+        String hash;
+        String name;
+        String text;
+        if (uris.size() == 1) {
+            name = names.get(0);
+            text = texts[0];
+            hash = hashes[0];
+        } else {
+            StringBuilder merged = new StringBuilder();
+            for (int i = 0; i < uris.size(); i++) {
+                if (!texts[i].isEmpty()) {
+                    merged.append(pageHeader(i)).append(names.get(i)).append(") ---\n");
+                    merged.append(texts[i]).append("\n\n");
+                }
+            }
+            name = names.get(0) + " + " + (uris.size() - 1) + " more";
+            text = merged.toString().trim();
+            hash = batchHash();
+            try {
+                // Incomplete if a page failed; it is recognized again next time
+                documentStore.put(hash, DocumentStore.KIND_SCAN, name, text, uris.size(), failed == 0);
+            } catch (IOException e) {
+                span.end();
+                future.completeExceptionally(e);
+                return;
+            }
+        }
+
+        span.setDetail(uris.size() + " pages, " + recognized + " recognized, " + failed + " failed");
+        span.end();
+        Log.i(TAG, "Imported " + uris.size() + " pages (" + recognized + " recognized, "
+                + (uris.size() - recognized - failed) + " cached, " + emptyPages + " without text)");
+        future.complete(new Result(hash, name, text, uris.size(), recognized, emptyPages));
+    }
+
+    /**
+     * Hash of the merged document, from the image hashes in page order
+     */
+    private String batchHash() {
+        StringBuilder key = new StringBuilder();
+        for (String hash : hashes) {
+            key.append(hash);
+        }
+        return DocumentStore.hash(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Start of the header of page index in the merged text, up to the page's name
+     */
+    private static String pageHeader(int index) {
+        return "--- Page " + (index + 1) + " (";
+    }
+
+    /**
+     * Result - The stored document and what the batch did
+     */
+    public static final class Result {
+        public final String hash;
+        public final String name;
+        public final String text;
+        public final int pageCount;
+        public final int recognizedPages;  // Pages that went through OCR (the rest were cached)
+        public final int emptyPages;  // Pages without text, or whose OCR failed
+
+        Result(String hash, String name, String text, int pageCount, int recognizedPages, int emptyPages) {
+            this.hash = hash;
+            this.name = name;
+            this.text = text;
+            this.pageCount = pageCount;
+            this.recognizedPages = recognizedPages;
+            this.emptyPages = emptyPages;
+        }
+    }
+}
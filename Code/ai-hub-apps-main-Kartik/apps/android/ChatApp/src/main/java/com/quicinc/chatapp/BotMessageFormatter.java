@@ -0,0 +1,217 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import java.util.regex.Pattern;
+
+/**
+ * BotMessageFormatter - Formats bot answers for display
+ *
+ * - Handles formulas and mathematical expressions
+ * - Adds proper spacing after punctuation
+ * - Ensures consistent line breaks
+ * - Improves overall structure for lists and equations
+ *
+ * Patterns are compiled once. While an answer is streaming, formatIncremental() formats
+ * only text appended since the last call: older text is committed in blocks (split on
+ * whitespace well before the end of the answer) and only the open tail is re-formatted.
+ */
+public final class BotMessageFormatter {
+
+    // Blocks are only committed this far behind the end of the text, so rules that look
+    // ahead (lists, headers, formulas) see their full match before a block is frozen
+    private static final int COMMIT_MARGIN = 96;
+    // Minimum size of a newly committed block, keeps the number of joins small
+    private static final int MIN_COMMIT_BLOCK = 256;
+    // Headers and formula labels end in a colon at most this far from where they start
+    private static final int LABEL_REACH = 52;
+
+    private static final Pattern CRLF = Pattern.compile("\\r\\n");
+    private static final Pattern CR = Pattern.compile("\\r");
+    private static final Pattern SPACES = Pattern.compile("[ \\t]+");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+    private static final Pattern SENTENCE_SPACING = Pattern.compile("([.!?])([A-Z])");
+    private static final Pattern NUMBERED_LIST = Pattern.compile("([^\\n])\\s*([0-9]+\\.)\\s+");
+    private static final Pattern BULLET_LIST = Pattern.compile("([^\\n])\\s*([•\\-\\*])\\s+([A-Z])");
+    private static final Pattern SECTION_HEADER = Pattern.compile("([^\\n])\n([A-Z][^:\\n]{4,49}:)");
+    private static final Pattern FORMULA_INTRO = Pattern.compile("([^\\n])(The formula [^\\n]{0,20}:)");
+    private static final Pattern FORMULA_LINE = Pattern.compile("(\\bformula[^:]{0,20}:)\\s*\\n+\\s*([^\\n]+)");
+    private static final Pattern LEADING_SPACES = Pattern.compile("(?m)^[ \\t]+");
+    private static final Pattern TRAILING_SPACES = Pattern.compile("(?m)[ \\t]+$");
+
+    private BotMessageFormatter() {
+    }
+
+    /**
+     * Format a complete message in one go
+     */
+    public static String format(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return text == null ? null : "";
+        }
+        String message = text.toString();
+
+        // Normalize line endings
+        message = CRLF.matcher(message).replaceAll("\n");
+        message = CR.matcher(message).replaceAll("\n");
+
+        // Remove excessive whitespace while preserving intentional line breaks
+        message = SPACES.matcher(message).replaceAll(" ");
+
+        // Normalize multiple consecutive line breaks (3+ becomes 2)
+        message = BLANK_LINES.matcher(message).replaceAll("\n\n");
+
+        // Ensure proper spacing after sentence-ending punctuation
+        message = SENTENCE_SPACING.matcher(message).replaceAll("$1 $2");
+
+        // Format numbered lists with proper line breaks (only if not already on new line)
+        message = NUMBERED_LIST.matcher(message).replaceAll("$1\n$2 ");
+
+        // Format bullet points with proper line breaks (only if not already on new line)
+        message = BULLET_LIST.matcher(message).replaceAll("$1\n$2 $3");
+
+        // Add spacing before section headers (capitalized text ending with colon)
+        // But only if it's a reasonable header length (5-50 chars)
+        message = SECTION_HEADER.matcher(message).replaceAll("$1\n\n$2");
+
+        // Add line break before "The formula is:" or similar patterns
+        message = FORMULA_INTRO.matcher(message).replaceAll("$1\n\n$2");
+
+        // Keep formulas on single lines - remove line breaks within mathematical expressions
+        message = FORMULA_LINE.matcher(message).replaceAll("$1 $2");
+
+        // Clean up leading/trailing whitespace on each line
+        message = LEADING_SPACES.matcher(message).replaceAll("");
+        message = TRAILING_SPACES.matcher(message).replaceAll("");
+
+        // Clean up any leading/trailing whitespace
+        return message.trim();
+    }
+
+    /**
+     * Format a message that may have grown since the previous call with the same state.
+     * Only the text after the last committed block is processed again.
+     *
+     * Not thread-safe: calls for one message must not overlap.
+     */
+    public static String formatIncremental(IncrementalState state, CharSequence text) {
+        if (text == null || text.length() == 0) {
+            state.reset();
+            return text == null ? null : "";
+        }
+        if (text.length() < state.committedLength) {
+            // Message was replaced rather than appended to
+            state.reset();
+        }
+
+        int length = text.length();
+        int commitEnd = findCommitPoint(text, state.committedLength, length - COMMIT_MARGIN);
+        if (commitEnd >= 0) {
+            state.prefix.append(formatBlock(state, text.subSequence(state.committedLength, commitEnd)));
+
+            // The whitespace run after the block is formatted together with the next block
+            int next = skipWhitespace(text, commitEnd);
+            state.pendingWhitespace = text.subSequence(commitEnd, next).toString();
+            state.lastCommittedChar = text.charAt(commitEnd - 1);
+            state.committedLength = next;
+        }
+
+        String tail = formatBlock(state, text.subSequence(state.committedLength, length));
+        if (state.prefix.length() == 0) {
+            return tail;
+        }
+        return new StringBuilder(state.prefix.length() + tail.length())
+                .append(state.prefix).append(tail).toString();
+    }
+
+    /**
+     * Format a block as it would be formatted in place. The last committed char and the
+     * whitespace after it are formatted along with the block, so the result starts with the
+     * separator the line-break rules would have produced there.
+     */
+    private static String formatBlock(IncrementalState state, CharSequence block) {
+        if (state.committedLength == 0) {
+            return format(block);
+        }
+        StringBuilder input = new StringBuilder(block.length() + state.pendingWhitespace.length() + 1);
+        input.append(state.lastCommittedChar).append(state.pendingWhitespace).append(block);
+        String formatted = format(input);
+        if (state.prefix.length() == 0) {
+            return formatted.substring(skipWhitespace(formatted, 1));
+        }
+        return formatted.substring(1);
+    }
+
+    /**
+     * Start of the last whitespace run in [from, limit) that follows the end of a sentence
+     * and leaves a block of at least MIN_COMMIT_BLOCK chars, or -1 if there is none yet.
+     * List markers ("2.") are never left at the end of a block, and no block ends shortly
+     * before a colon, since a header or formula label could start in front of the split.
+     */
+    private static int findCommitPoint(CharSequence text, int from, int limit) {
+        if (limit - from < MIN_COMMIT_BLOCK) {
+            return -1;
+        }
+        for (int i = limit - 1; i >= from + MIN_COMMIT_BLOCK; i--) {
+            if (!Character.isWhitespace(text.charAt(i)) || Character.isWhitespace(text.charAt(i - 1))) {
+                continue;
+            }
+            char last = text.charAt(i - 1);
+            if ((last == '.' || last == '!' || last == '?')
+                    && !endsWithListMarker(text, from, i)
+                    && !hasColonWithin(text, skipWhitespace(text, i), LABEL_REACH)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean endsWithListMarker(CharSequence text, int from, int end) {
+        int start = end;
+        while (start > from && !Character.isWhitespace(text.charAt(start - 1))) {
+            start--;
+        }
+        // Token is "<digits>." (a numbered list marker)
+        int i = start;
+        while (i < end - 1 && Character.isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i > start && i == end - 1;
+    }
+
+    private static boolean hasColonWithin(CharSequence text, int from, int reach) {
+        int end = Math.min(text.length(), from + reach);
+        for (int i = from; i < end; i++) {
+            if (text.charAt(i) == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int skipWhitespace(CharSequence text, int from) {
+        int i = from;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Per-message progress of incremental formatting
+     */
+    public static final class IncrementalState {
+        private final StringBuilder prefix = new StringBuilder();
+        private int committedLength = 0;
+        private String pendingWhitespace = "";
+        private char lastCommittedChar;
+
+        void reset() {
+            prefix.setLength(0);
+            committedLength = 0;
+            pendingWhitespace = "";
+        }
+    }
+}
@@ -13,6 +13,16 @@ public class ChatMessage {
     public int mLength;
     public MessageSender mSender;
 
+    // Growable text while an answer is streaming, null once frozen (main thread only)
+    private transient StringBuilder mBuffer;
+
+    // Display formatting cache for bot messages (main thread only, not persisted).
+    // mFormatted is the formatted text of the first mFormattedLength chars of the message.
+    transient String mFormatted;
+    transient int mFormattedLength;
+    transient BotMessageFormatter.IncrementalState mFormatState;
+    transient boolean mFormatPending;
+
     public ChatMessage(String msg, MessageSender sender) {
         mMessage = msg;
         mLength = msg.length();
@@ -23,7 +33,63 @@ public class ChatMessage {
         return mSender == MessageSender.USER;
     }
 
+    /**
+     * Message text as an immutable String. Copies the buffer while the message is streaming;
+     * use getText() to read it without copying.
+     */
     public String getMessage() {
-        return mMessage;
+        return mBuffer != null ? mBuffer.toString() : mMessage;
+    }
+
+    /**
+     * Message text without copying. While streaming this is the live buffer, so read it
+     * on the main thread and do not keep it.
+     */
+    public CharSequence getText() {
+        return mBuffer != null ? mBuffer : mMessage;
+    }
+
+    public int getLength() {
+        return mBuffer != null ? mBuffer.length() : (mMessage != null ? mMessage.length() : 0);
+    }
+
+    /**
+     * Append streamed text. The first call switches the message to a growable buffer,
+     * so an answer of N tokens is built in amortized O(N) instead of O(N^2) copying.
+     */
+    public void append(CharSequence text) {
+        if (mBuffer == null) {
+            int current = mMessage != null ? mMessage.length() : 0;
+            mBuffer = new StringBuilder(Math.max(256, (current + text.length()) * 2));
+            if (mMessage != null) {
+                mBuffer.append(mMessage);
+            }
+        }
+        mBuffer.append(text);
+        mLength = mBuffer.length();
+    }
+
+    /**
+     * Turn the streaming buffer into the immutable (and persisted) message text.
+     * Does nothing if the message is not streaming; appending again later is allowed.
+     */
+    public void freeze() {
+        if (mBuffer == null) {
+            return;
+        }
+        mMessage = mBuffer.toString();
+        mLength = mMessage.length();
+        mBuffer = null;
+    }
+
+    public boolean isStreaming() {
+        return mBuffer != null;
+    }
+
+    /**
+     * Whether the cached formatted text matches the current message
+     */
+    boolean isFormattedTextCurrent() {
+        return mFormatted != null && mFormattedLength == getLength();
     }
 }
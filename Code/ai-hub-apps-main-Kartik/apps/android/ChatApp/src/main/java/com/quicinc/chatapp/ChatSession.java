@@ -1,7 +1,6 @@
 package com.quicinc.chatapp;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -14,17 +13,22 @@ public class ChatSession {
     private String sessionId;
     private String title;
     private long timestamp;
-    private List<ChatMessage> messages;
-    private String pdfContext;
+    private int messageCount;
+    private List<ChatMessage> messages;  // Legacy: inline messages of sessions saved before paging
+    private List<ConversationHistory.Turn> historyTurns;  // Prompt context, oldest first
+    private String historySummary;  // Rolling summary of turns older than historyTurns
+    private List<ConversationHistory.Turn> unsummarizedTurns;  // Evicted turns not summarized yet
+    private String pdfDocHash;  // DocumentStore hash of the attached PDF
     private String pdfFileName;
-    private String imageContext;
+    private String imageDocHash;  // DocumentStore hash of the attached image's analysis
     private String imageFileName;
+    private String pdfContext;  // Legacy: inline PDF text of sessions saved before DocumentStore
+    private String imageContext;  // Legacy: inline image analysis
     
     // Constructor for new session
     public ChatSession() {
         this.sessionId = UUID.randomUUID().toString();
         this.timestamp = System.currentTimeMillis();
-        this.messages = new ArrayList<>();
         this.title = "New Chat";
     }
     
@@ -33,7 +37,6 @@ public class ChatSession {
         this.sessionId = sessionId;
         this.title = title;
         this.timestamp = timestamp;
-        this.messages = new ArrayList<>();
     }
     
     // Getters
@@ -49,49 +52,99 @@ public class ChatSession {
         return timestamp;
     }
     
-    public List<ChatMessage> getMessages() {
+    /**
+     * Number of messages stored in this session's pages (see ChatSessionManager)
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Messages stored inline by older versions, null once migrated to pages
+     */
+    List<ChatMessage> getLegacyMessages() {
         return messages;
     }
     
-    public String getPdfContext() {
-        return pdfContext;
+    /**
+     * Saved conversation history, or null for sessions saved before it was stored
+     */
+    public List<ConversationHistory.Turn> getHistoryTurns() {
+        return historyTurns;
+    }
+    
+    public String getHistorySummary() {
+        return historySummary;
+    }
+    
+    public List<ConversationHistory.Turn> getUnsummarizedTurns() {
+        return unsummarizedTurns;
+    }
+    
+    public String getPdfDocHash() {
+        return pdfDocHash;
     }
     
     public String getPdfFileName() {
         return pdfFileName;
     }
     
-    public String getImageContext() {
-        return imageContext;
+    public String getImageDocHash() {
+        return imageDocHash;
     }
     
     public String getImageFileName() {
         return imageFileName;
     }
+
+    /**
+     * Contexts stored inline by older versions, null once moved to DocumentStore
+     */
+    String getLegacyPdfContext() {
+        return pdfContext;
+    }
+
+    String getLegacyImageContext() {
+        return imageContext;
+    }
     
     // Setters
     public void setTitle(String title) {
         this.title = title;
     }
     
-    public void setMessages(List<ChatMessage> messages) {
-        this.messages = messages;
+    public void setMessageCount(int messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public void setHistoryTurns(List<ConversationHistory.Turn> historyTurns) {
+        this.historyTurns = historyTurns;
+    }
+
+    public void setHistorySummary(String historySummary, List<ConversationHistory.Turn> unsummarizedTurns) {
+        this.historySummary = historySummary;
+        this.unsummarizedTurns = unsummarizedTurns;
+    }
+
+    void clearLegacyMessages() {
+        this.messages = null;
+    }
+
+    void clearLegacyContexts() {
+        this.pdfContext = null;
+        this.imageContext = null;
     }
     
-    public void setPdfContext(String pdfContext, String pdfFileName) {
-        this.pdfContext = pdfContext;
+    public void setPdfDocument(String pdfDocHash, String pdfFileName) {
+        this.pdfDocHash = pdfDocHash;
         this.pdfFileName = pdfFileName;
     }
     
-    public void setImageContext(String imageContext, String imageFileName) {
-        this.imageContext = imageContext;
+    public void setImageDocument(String imageDocHash, String imageFileName) {
+        this.imageDocHash = imageDocHash;
         this.imageFileName = imageFileName;
     }
     
-    public void addMessage(ChatMessage message) {
-        this.messages.add(message);
-        updateTimestamp();
-    }
     
     public void updateTimestamp() {
         this.timestamp = System.currentTimeMillis();
@@ -101,7 +154,7 @@ public class ChatSession {
      * Generate a smart title from the first user message
      * Limits to first 40 characters
      */
-    public void generateTitleFromFirstMessage() {
+    public void generateTitleFromFirstMessage(List<ChatMessage> messages) {
         for (ChatMessage msg : messages) {
             if (msg.isMessageFromUser()) {
                 String firstMsg = msg.getMessage();
@@ -153,16 +206,16 @@ public class ChatSession {
      * Check if session has any messages
      */
     public boolean isEmpty() {
-        return messages.isEmpty();
+        return messageCount == 0 && (messages == null || messages.isEmpty());
     }
     
     /**
      * Clear all PDF/image context
      */
     public void clearContext() {
-        this.pdfContext = null;
+        this.pdfDocHash = null;
         this.pdfFileName = null;
-        this.imageContext = null;
+        this.imageDocHash = null;
         this.imageFileName = null;
     }
     
@@ -171,7 +224,7 @@ public class ChatSession {
         return "ChatSession{" +
                 "sessionId='" + sessionId + '\'' +
                 ", title='" + title + '\'' +
-                ", messageCount=" + messages.size() +
+                ", messageCount=" + messageCount +
                 ", timestamp=" + getFormattedTimestamp() +
                 '}';
     }
@@ -2,12 +2,21 @@ package com.quicinc.chatapp;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.AtomicFile;
 import android.util.Log;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -16,6 +25,12 @@ import java.util.List;
 /**
  * Manages chat sessions - saving, loading, and deleting from SharedPreferences
  * Uses JSON serialization for complex object storage
+ *
+ * Session metadata (title, contexts, message count) lives in SharedPreferences, messages live
+ * in pages of PAGE_SIZE in files under filesDir/chat_pages, so a long chat can be loaded a page
+ * at a time (see PagedMessageSource). Attached documents live in DocumentStore and are referenced
+ * by hash. Sessions saved with inline messages or contexts are migrated with migrate(), on a
+ * background thread, before their pages or documents are used.
  */
 public class ChatSessionManager {
     private static final String TAG = "ChatSessionManager";
@@ -23,21 +38,30 @@ public class ChatSessionManager {
     private static final String KEY_SESSIONS_PREFIX = "chat_sessions_";
     private static final String KEY_CURRENT_SESSION = "current_session_id";
     private static final String KEY_SESSION_LIST = "session_id_list";
-    
+    private static final String PAGES_DIR = "chat_pages";
+
+    public static final int PAGE_SIZE = 50;  // Messages per stored page
+
     private SharedPreferences preferences;
     private Gson gson;
     private String username;
+    private File pagesRoot;
+    private DocumentStore documentStore;
     
     public ChatSessionManager(Context context, String username) {
         this.preferences = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         this.gson = new Gson();
         this.username = username;
+        this.pagesRoot = new File(new File(context.getFilesDir(), PAGES_DIR),
+                String.valueOf(username).replaceAll("[^A-Za-z0-9_-]", "_"));
+        this.documentStore = DocumentStore.get(context);
     }
     
     /**
-     * Save a chat session
+     * Save a chat session's metadata. Messages are saved separately with savePage().
      */
     public void saveSession(ChatSession session) {
+        Tracer.Span span = Tracer.begin("storage", "saveSession");
         try {
             // Save session data
             String sessionKey = KEY_SESSIONS_PREFIX + username + "_" + session.getSessionId();
@@ -55,15 +79,20 @@ public class ChatSessionManager {
             }
             
             Log.d(TAG, "Session saved: " + session.getSessionId());
+            span.setDetail(sessionJson.length() + " chars JSON");
         } catch (Exception e) {
             Log.e(TAG, "Error saving session: " + e.getMessage());
+        } finally {
+            span.end();
         }
     }
     
     /**
-     * Load a specific chat session
+     * Load a specific chat session's metadata. Cheap enough for the main thread; a session that
+     * needsMigration() must be migrated before it is opened.
      */
     public ChatSession loadSession(String sessionId) {
+        Tracer.Span span = Tracer.begin("storage", "loadSession");
         try {
             String sessionKey = KEY_SESSIONS_PREFIX + username + "_" + sessionId;
             String sessionJson = preferences.getString(sessionKey, null);
@@ -75,12 +104,153 @@ public class ChatSessionManager {
             }
         } catch (Exception e) {
             Log.e(TAG, "Error loading session: " + e.getMessage());
+        } finally {
+            span.end();
         }
         return null;
     }
     
     /**
-     * Load all chat sessions for current user
+     * Whether the session was saved with inline messages or contexts
+     */
+    public boolean needsMigration(ChatSession session) {
+        return session.getLegacyMessages() != null
+                || session.getLegacyPdfContext() != null || session.getLegacyImageContext() != null;
+    }
+
+    /**
+     * Move inline messages into pages and inline contexts into DocumentStore, and save the
+     * session. Writes every page and hashes the contexts, so call it on the I/O pool.
+     */
+    public void migrate(ChatSession session) {
+        Tracer.Span span = Tracer.begin("storage", "migrateSession");
+        try {
+            if (session.getLegacyMessages() != null) {
+                migrateToPages(session);
+            }
+            if (session.getLegacyPdfContext() != null || session.getLegacyImageContext() != null) {
+                migrateContexts(session);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error migrating session " + session.getSessionId() + ": " + e.getMessage());
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Move messages stored inline in the session JSON into pages
+     */
+    private void migrateToPages(ChatSession session) {
+        List<ChatMessage> legacy = session.getLegacyMessages();
+        for (int start = 0, page = 0; start < legacy.size(); start += PAGE_SIZE, page++) {
+            savePage(session.getSessionId(), page,
+                    legacy.subList(start, Math.min(legacy.size(), start + PAGE_SIZE)));
+        }
+        session.setMessageCount(legacy.size());
+        session.clearLegacyMessages();
+        saveSession(session);
+        Log.i(TAG, "Migrated " + legacy.size() + " messages to pages: " + session.getSessionId());
+    }
+
+    /**
+     * Move PDF/image contexts stored inline in the session JSON into DocumentStore. The source
+     * files are gone, so the text is keyed by its own hash; identical contexts are still shared.
+     */
+    private void migrateContexts(ChatSession session) {
+        String owner = DocumentStore.sessionOwner(session.getSessionId());
+        try {
+            String pdfContext = session.getLegacyPdfContext();
+            if (pdfContext != null && !pdfContext.isEmpty()) {
+                String hash = documentStore.putText(session.getPdfFileName(), pdfContext);
+                documentStore.acquire(hash, owner);
+                session.setPdfDocument(hash, session.getPdfFileName());
+            }
+            String imageContext = session.getLegacyImageContext();
+            if (imageContext != null && !imageContext.isEmpty()) {
+                String hash = documentStore.putText(session.getImageFileName(), imageContext);
+                documentStore.acquire(hash, owner);
+                session.setImageDocument(hash, session.getImageFileName());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error migrating contexts of " + session.getSessionId() + ": " + e.getMessage());
+            return;  // Keep the inline contexts and retry on the next load
+        }
+        session.clearLegacyContexts();
+        saveSession(session);
+        Log.i(TAG, "Migrated contexts to document store: " + session.getSessionId());
+    }
+
+    /**
+     * Load one page of messages (indices page * PAGE_SIZE until the next page)
+     */
+    public List<ChatMessage> loadPage(String sessionId, int page) {
+        Tracer.Span span = Tracer.begin("storage", "loadPage");
+        AtomicFile file = new AtomicFile(pageFile(sessionId, page));
+        try (Reader reader = new InputStreamReader(file.openRead(), StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<List<ChatMessage>>(){}.getType();
+            List<ChatMessage> messages = gson.fromJson(reader, type);
+            span.setDetail("page " + page);
+            return messages != null ? messages : new ArrayList<>();
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading page " + page + " of " + sessionId + ": " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Write one page of messages, replacing the stored page atomically
+     */
+    public void savePage(String sessionId, int page, List<ChatMessage> messages) {
+        Tracer.Span span = Tracer.begin("storage", "savePage");
+        File target = pageFile(sessionId, page);
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Unable to create page directory: " + dir);
+            span.end();
+            return;
+        }
+        AtomicFile file = new AtomicFile(target);
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(messages, writer);
+            writer.flush();
+            file.finishWrite(out);
+            span.setDetail("page " + page + ", " + messages.size() + " messages");
+        } catch (IOException e) {
+            if (out != null) {
+                file.failWrite(out);
+            }
+            Log.e(TAG, "Error saving page " + page + " of " + sessionId + ": " + e.getMessage());
+        } finally {
+            span.end();
+        }
+    }
+
+    private File sessionPagesDir(String sessionId) {
+        return new File(pagesRoot, sessionId);
+    }
+
+    private File pageFile(String sessionId, int page) {
+        return new File(sessionPagesDir(sessionId), page + ".json");
+    }
+
+    private void deletePages(String sessionId) {
+        File[] files = sessionPagesDir(sessionId).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        sessionPagesDir(sessionId).delete();
+    }
+
+    /**
+     * Load all chat sessions for current user, metadata only (nothing is migrated)
      * Returns sorted by timestamp (newest first)
      */
     public List<ChatSession> loadAllSessions() {
@@ -114,6 +284,8 @@ public class ChatSessionManager {
             // Remove session data
             String sessionKey = KEY_SESSIONS_PREFIX + username + "_" + sessionId;
             preferences.edit().remove(sessionKey).apply();
+            deletePages(sessionId);
+            documentStore.releaseAll(DocumentStore.sessionOwner(sessionId));
             
             // Remove from session list
             List<String> sessionIds = getSessionIdList();
@@ -139,6 +311,8 @@ public class ChatSessionManager {
         for (String sessionId : sessionIds) {
             String sessionKey = KEY_SESSIONS_PREFIX + username + "_" + sessionId;
             preferences.edit().remove(sessionKey).apply();
+            deletePages(sessionId);
+            documentStore.releaseAll(DocumentStore.sessionOwner(sessionId));
         }
         saveSessionIdList(new ArrayList<>());
         clearCurrentSessionId();
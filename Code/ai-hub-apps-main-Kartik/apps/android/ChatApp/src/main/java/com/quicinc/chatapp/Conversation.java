@@ -5,6 +5,8 @@
 package com.quicinc.chatapp;
 
 import android.app.AlertDialog;
+import android.content.ClipData;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -31,39 +33,50 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.navigation.NavigationView;
 
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.text.TextRecognition;
-import com.google.mlkit.vision.text.TextRecognizer;
-import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
-
 import com.tom_roush.pdfbox.android.PDFBoxResourceLoader;
-import com.tom_roush.pdfbox.pdmodel.PDDocument;
-import com.tom_roush.pdfbox.text.PDFTextStripper;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
 
 
 public class Conversation extends AppCompatActivity {
 
-    ArrayList<ChatMessage> messages = new ArrayList<ChatMessage>(1000);
+    ArrayList<ChatMessage> messages = new ArrayList<ChatMessage>();  // Window of the current session, see PagedMessageSource
     private String pdfContext = "";  // Stores extracted PDF text
     private String pdfFileName = "";  // Stores PDF filename
     private String imageContext = "";  // Stores image analysis
     private String imageFileName = "";  // Stores image filename
+    private String pdfDocHash = "";  // DocumentStore hash of the loaded PDF
+    private CompletableFuture<Void> lastTurn = CompletableFuture.completedFuture(null);  // Main thread only
+    private String lastExtractiveQuestion;  // Main thread only. Set while the last answer was quoted from the document
+    private String imageDocHash = "";  // DocumentStore hash of the loaded image's analysis
     private String mode = "chat";  // Mode: "chat", "pdf", or "image"
     private GenieWrapper genieWrapper = null;  // Persistent model instance
     private SharedPreferences preferences;  // For tracking metrics
+    private TaskScope taskScope;  // Background work, cancelled when this screen is destroyed
     private boolean sessionTracked = false;  // Track if we've already counted this session
-    private StringBuilder conversationHistory = new StringBuilder();  // Store conversation context
-    private static final int MAX_HISTORY_MESSAGES = 6;  // Keep last 6 messages (3 exchanges)
+    private static final int MAX_HISTORY_TURNS = 8;  // Exchanges kept for context
+    private static final int HISTORY_TOKEN_BUDGET = 768;  // Prompt tokens spent on previous exchanges
+    static final int PDF_CONTEXT_LIMIT = 3500;  // Document chars sent with each prompt
+    private static final int OVERVIEW_CONTEXT_LIMIT = 1200;  // Fits the ~200-token document summary
+    private static final Pattern OVERVIEW_QUESTION = Pattern.compile(
+            "\\b(summar\\w*|overview|gist|main (points?|ideas?|topics?)|key (points?|takeaways?)"
+            + "|what('s| is) (this|the) (document|pdf|chapter|paper|text|book|file)( \\w+)? about)\\b",
+            Pattern.CASE_INSENSITIVE);
+    private final ConversationHistory conversationHistory = new ConversationHistory(MAX_HISTORY_TURNS);
+    private HistorySummarizer historySummarizer;  // Folds turns older than the window into a summary
 
     // Chat session management
     private ChatSessionManager sessionManager;
     private ChatSession currentSession;
+    private String openingSessionId;  // Last session asked for; one still migrating is not shown after it
+    private ChatSession migratingSession;  // Being migrated on the I/O pool, not saved meanwhile
+    private PagedMessageSource messageSource;
     private DrawerLayout drawerLayout;
     private LinearLayout navDrawer;
     private ChatHistoryAdapter chatHistoryAdapter;
@@ -84,6 +97,8 @@ public class Conversation extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        taskScope = new TaskScope(this);
+        historySummarizer = new HistorySummarizer(conversationHistory, taskScope);
 
         // Initialize preferences for tracking metrics
         preferences = getSharedPreferences("TutorAppPrefs", MODE_PRIVATE);
@@ -99,6 +114,7 @@ public class Conversation extends AppCompatActivity {
         String gemName = intent.getStringExtra("gem_name");
         String pdfUriString = intent.getStringExtra("pdf_uri");
         String imageUriString = intent.getStringExtra("image_uri");
+        String pdfDocHashExtra = intent.getStringExtra("pdf_doc_hash");
 
         // Initialize PDF Box (required for PDF parsing)
         PDFBoxResourceLoader.init(getApplicationContext());
@@ -129,17 +145,11 @@ public class Conversation extends AppCompatActivity {
         // Load or create current session
         String currentSessionId = sessionManager.getCurrentSessionId();
         if (currentSessionId != null && sessionManager.sessionExists(currentSessionId)) {
+            // Messages and contexts are restored once the adapter exists
             currentSession = sessionManager.loadSession(currentSessionId);
-            if (currentSession != null) {
-                // Restore messages from session
-                messages.clear();
-                messages.addAll(currentSession.getMessages());
-                pdfContext = currentSession.getPdfContext() != null ? currentSession.getPdfContext() : "";
-                pdfFileName = currentSession.getPdfFileName() != null ? currentSession.getPdfFileName() : "";
-                imageContext = currentSession.getImageContext() != null ? currentSession.getImageContext() : "";
-                imageFileName = currentSession.getImageFileName() != null ? currentSession.getImageFileName() : "";
-            }
-        } else {
+        }
+        boolean restoreSession = currentSession != null;
+        if (currentSession == null) {
             // Create new session
             currentSession = new ChatSession();
             sessionManager.setCurrentSessionId(currentSession.getSessionId());
@@ -160,7 +170,32 @@ public class Conversation extends AppCompatActivity {
         RecyclerView recyclerView = findViewById(R.id.chat_recycler_view);
         chatAdapter = new Message_RecyclerViewAdapter(this, messages);
         recyclerView.setAdapter(chatAdapter);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager chatLayoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(chatLayoutManager);
+
+        // Newest messages first; older pages are loaded as the user scrolls up
+        messageSource = new PagedMessageSource(sessionManager, messages, chatAdapter, taskScope);
+        ChatSession openedSession = currentSession;
+        openingSessionId = openedSession.getSessionId();
+        whenMigrated(openedSession, () -> {
+            if (restoreSession) {
+                restoreDocumentContext(openedSession);
+            }
+            messageSource.open(openedSession, () -> {
+                chatAdapter.prefetchFormatting();
+                restoreConversationHistory(openedSession);
+                if (!messages.isEmpty()) {
+                    recyclerView.scrollToPosition(messages.size() - 1);
+                }
+            });
+        });
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                messageSource.onVisibleRangeChanged(chatLayoutManager.findFirstVisibleItemPosition(),
+                        chatLayoutManager.findLastVisibleItemPosition());
+            }
+        });
 
         ImageButton sendUserMsgButton = (ImageButton) findViewById(R.id.send_button);
         ImageButton pdfButton = (ImageButton) findViewById(R.id.pdf_button);
@@ -176,7 +211,7 @@ public class Conversation extends AppCompatActivity {
                 result -> {
                     if (result.getResultCode() == RESULT_OK && result.getData() != null) {
                         Uri pdfUri = result.getData().getData();
-                        loadPdfInBackground(pdfUri, pdfStatusLayout, pdfStatusText, chatAdapter);
+                        loadPdfInBackground(pdfUri, null, pdfStatusLayout, pdfStatusText, chatAdapter);
                     }
                 }
         );
@@ -186,8 +221,18 @@ public class Conversation extends AppCompatActivity {
                 new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                        Uri imageUri = result.getData().getData();
-                        loadImageInBackground(imageUri, pdfStatusLayout, pdfStatusText, chatAdapter);
+                        List<Uri> imageUris = new ArrayList<>();
+                        ClipData clipData = result.getData().getClipData();
+                        if (clipData != null) {
+                            for (int i = 0; i < clipData.getItemCount(); i++) {
+                                imageUris.add(clipData.getItemAt(i).getUri());
+                            }
+                        } else if (result.getData().getData() != null) {
+                            imageUris.add(result.getData().getData());
+                        }
+                        if (!imageUris.isEmpty()) {
+                            loadImagesInBackground(imageUris, pdfStatusLayout, pdfStatusText, chatAdapter);
+                        }
                     }
                 }
         );
@@ -205,6 +250,7 @@ public class Conversation extends AppCompatActivity {
             Intent intent2 = new Intent(Intent.ACTION_OPEN_DOCUMENT);
             intent2.setType("image/*");
             intent2.addCategory(Intent.CATEGORY_OPENABLE);
+            intent2.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);  // Several photographed pages form one document
             imagePickerLauncher.launch(intent2);
         });
 
@@ -212,10 +258,14 @@ public class Conversation extends AppCompatActivity {
         clearPdfButton.setOnClickListener(v -> {
             pdfContext = "";
             pdfFileName = "";
+            pdfDocHash = "";
+            lastExtractiveQuestion = null;
             imageContext = "";
             imageFileName = "";
+            imageDocHash = "";
             pdfStatusLayout.setVisibility(View.GONE);
             clearConversationHistory();  // Also clear conversation history when changing context
+            messageSource.ensureTail();
             chatAdapter.addMessage(new ChatMessage("Context cleared. Back to normal chat mode. Conversation history reset.", MessageSender.BOT));
             chatAdapter.notifyItemInserted(chatAdapter.getItemCount() - 1);
             recyclerView.scrollToPosition(chatAdapter.getItemCount() - 1);
@@ -246,16 +296,16 @@ public class Conversation extends AppCompatActivity {
             // Option 2: /data/local/tmp/genie_models (models only)
             // Option 3: /data/local/tmp/qairt/lib/aarch64-android (QAIRT SDK location)
             
-            String modelDir = "/data/local/tmp/genie_bundle";  // Using complete bundle
+            String modelDir = GenieWrapper.DEFAULT_MODEL_DIR;  // Using complete bundle
             
             // Use the main genie config (contains dialog field)
-            htpExtensionsDir = "genie_config.json";  // Main config file with dialog settings
+            htpExtensionsDir = GenieWrapper.DEFAULT_CONFIG;  // Main config file with dialog settings
             
             Log.i("ChatApp", "Using model directory: " + modelDir);
             Log.i("ChatApp", "Using config file: " + htpExtensionsDir);
 
-            // Load Model once and keep it in memory
-            genieWrapper = new GenieWrapper(modelDir, htpExtensionsDir);
+            // Load Model once and keep it in memory, shared with the other screens
+            genieWrapper = GenieWrapper.getShared();
             Log.i("ChatApp", modelName + " Loaded.");
 
             // Add welcome message based on mode
@@ -274,18 +324,18 @@ public class Conversation extends AppCompatActivity {
             // Auto-load content from gem intents
             if (gemName != null) {
                 String welcomeMsg = "Welcome to " + gemName + "!";
-                if (pdfUriString != null || imageUriString != null) {
+                if (pdfUriString != null || pdfDocHashExtra != null || imageUriString != null) {
                     welcomeMsg += " Loading your documents...";
                     // Disable send button until content is loaded
                     sendUserMsgButton.setEnabled(false);
                 }
                 messages.add(new ChatMessage(welcomeMsg, MessageSender.BOT));
                 
-                // Auto-load PDF if provided
-                if (pdfUriString != null && !pdfUriString.isEmpty()) {
+                // Auto-load PDF if provided, from the document store when the gem has it
+                if ((pdfUriString != null && !pdfUriString.isEmpty()) || pdfDocHashExtra != null) {
                     try {
-                        Uri pdfUri = Uri.parse(pdfUriString);
-                        loadPdfInBackground(pdfUri, pdfStatusLayout, pdfStatusText, chatAdapter);
+                        Uri pdfUri = pdfUriString != null && !pdfUriString.isEmpty() ? Uri.parse(pdfUriString) : null;
+                        loadPdfInBackground(pdfUri, pdfDocHashExtra, pdfStatusLayout, pdfStatusText, chatAdapter);
                     } catch (Exception e) {
                         Log.e("ChatApp", "Error loading PDF from gem: " + e.getMessage());
                         // Re-enable send button on error
@@ -297,7 +347,7 @@ public class Conversation extends AppCompatActivity {
                 if (imageUriString != null && !imageUriString.isEmpty()) {
                     try {
                         Uri imageUri = Uri.parse(imageUriString);
-                        loadImageInBackground(imageUri, pdfStatusLayout, pdfStatusText, chatAdapter);
+                        loadImagesInBackground(Collections.singletonList(imageUri), pdfStatusLayout, pdfStatusText, chatAdapter);
                     } catch (Exception e) {
                         Log.e("ChatApp", "Error loading image from gem: " + e.getMessage());
                         // Re-enable send button on error
@@ -323,38 +373,93 @@ public class Conversation extends AppCompatActivity {
                             sessionTracked = true;
                         }
 
-                        // Insert user message in the conversation
+                        // Insert user message in the conversation, and the bot message its answer
+                        // streams into. The answer is applied to this message, not to whatever row
+                        // is last or at a given position once older pages are loaded.
+                        messageSource.ensureTail();
                         chatAdapter.addMessage(new ChatMessage(userInputMsg, MessageSender.USER));
-                        chatAdapter.notifyItemInserted(chatAdapter.getItemCount() - 1);
-
-                        int botResponseMsgIndex = chatAdapter.getItemCount();
-                        recyclerView.smoothScrollToPosition(botResponseMsgIndex);
-
-                        ExecutorService service = Executors.newSingleThreadExecutor();
-                        service.execute(new Runnable() {
-                            @Override
-                            public void run() {
-                                // Build conversation history for context
-                                String contextPrompt = buildConversationContext(userInputMsg);
-                                
-                                genieWrapper.getResponseForPrompt(contextPrompt, new StringCallback() {
+                        ChatMessage botMessage = chatAdapter.addStreamingBotMessage();
+                        chatAdapter.notifyItemRangeInserted(chatAdapter.getItemCount() - 2, 2);
+                        recyclerView.smoothScrollToPosition(chatAdapter.getItemCount() - 1);
+
+                        // Spans the whole turn: prompt assembly, lock wait, generation and save
+                        Tracer.Span turnSpan = Tracer.begin("chat", "turn");
+
+                        // Tokens are coalesced and applied once per display frame
+                        StreamingRenderBuffer renderBuffer = new StreamingRenderBuffer(text -> {
+                            botMessage.append(text);
+                            // Formatted off the main thread; the row rebinds when it is ready
+                            chatAdapter.onBotMessageStreamed(botMessage);
+                        });
+
+                        // The document the question was asked about, even if another loads meanwhile
+                        String lookupHash = pdfContext.isEmpty() ? "" : pdfDocHash;
+                        String turnPdfContext = pdfContext;
+                        String turnPdfHash = pdfDocHash;
+                        String turnImageContext = imageContext;
+
+                        // Turns are answered in send order: this one starts once the previous one is
+                        // in the history. Until then only the lookup runs.
+                        CompletableFuture<Void> previousTurn = lastTurn;
+                        CompletableFuture<Void> turnDone = new CompletableFuture<>();
+                        lastTurn = turnDone;
+
+                        // Lookup questions the document answers in a sentence skip the model, and
+                        // are looked up on the I/O pool, so they never wait behind a generation
+                        taskScope.io(() -> {
+                            String extractive = null;
+                            try {
+                                extractive = lookupHash.isEmpty() ? null
+                                        : ExtractiveAnswerer.answer(Conversation.this, lookupHash, userInputMsg);
+                            } catch (Exception e) {
+                                Log.w("ChatApp", "Lookup failed, asking the model: " + e.getMessage());
+                            }
+                            String answer = extractive;
+                            previousTurn.thenRun(() -> runOnUiThread(() -> {
+                                if (taskScope.isClosed()) {
+                                    return;
+                                }
+                                // A "tell me more" after a quoted answer goes to the model with
+                                // that question's context
+                                String previousLookup = lastExtractiveQuestion;
+                                lastExtractiveQuestion = null;
+                                if (answer != null) {
+                                    turnSpan.setDetail("extractive");
+                                    renderBuffer.append(answer);
+                                    renderBuffer.complete(() -> {
+                                        lastExtractiveQuestion = userInputMsg;
+                                        finishTurn(userInputMsg, botMessage, turnSpan, turnDone);
+                                    });
+                                    return;
+                                }
+                                String retrievalQuery = previousLookup != null && ExtractiveAnswerer.isMoreRequest(userInputMsg)
+                                        ? previousLookup : userInputMsg;
+
+                                taskScope.inference(new Runnable() {
                                     @Override
-                                    public void onNewString(String response) {
-                                        runOnUiThread(() -> {
-                                            // Update the last item in the adapter
-                                            chatAdapter.updateBotMessage(response);
-                                            chatAdapter.notifyItemChanged(botResponseMsgIndex);
-                                        });
+                                    public void run() {
+                                        try {
+                                            // Build conversation history for context
+                                            String contextPrompt;
+                                            try (Tracer.Span promptSpan = Tracer.begin("prompt", "buildConversationContext")) {
+                                                contextPrompt = buildConversationContext(userInputMsg, retrievalQuery,
+                                                        turnPdfContext, turnPdfHash, turnImageContext);
+                                                promptSpan.setDetail(contextPrompt.length() + " chars");
+                                            }
+
+                                            genieWrapper.getResponseForPrompt(contextPrompt, new StringCallback() {
+                                                @Override
+                                                public void onNewString(String response) {
+                                                    renderBuffer.append(response);
+                                                }
+                                            });
+                                        } finally {
+                                            // After response completes (and the last tokens are rendered), add to history
+                                            renderBuffer.complete(() -> finishTurn(userInputMsg, botMessage, turnSpan, turnDone));
+                                        }
                                     }
-                                });
-                                
-                                // After response completes, add to history
-                                runOnUiThread(() -> {
-                                    String botResponse = chatAdapter.getLastBotMessage();
-                                    addToConversationHistory(userInputMsg, botResponse);
-                                    saveCurrentSession();  // Auto-save after each message
-                                });
-                            }
+                                }, AppExecutors.PRIORITY_INTERACTIVE);
+                            }));
                         });
 
                         // Scroll to last message
@@ -371,11 +476,38 @@ public class Conversation extends AppCompatActivity {
     }
 
     /**
-     * Load and parse PDF file in background thread
+     * Complete a turn and then let the next one start, even if completing it failed
      */
-    private void loadPdfInBackground(Uri pdfUri, LinearLayout statusLayout, TextView statusText, Message_RecyclerViewAdapter adapter) {
-        ExecutorService service = Executors.newSingleThreadExecutor();
-        service.execute(() -> {
+    private void finishTurn(String userMessage, ChatMessage botMessage, Tracer.Span turnSpan,
+                            CompletableFuture<Void> turnDone) {
+        try {
+            completeTurn(userMessage, botMessage, turnSpan);
+        } finally {
+            turnDone.complete(null);
+        }
+    }
+
+    /**
+     * Finish a turn once its answer is rendered: add it to the history and save the session.
+     * Runs on the main thread.
+     */
+    private void completeTurn(String userMessage, ChatMessage botMessage, Tracer.Span turnSpan) {
+        botMessage.freeze();
+        String botResponse = botMessage.getMessage();  // Frozen String, no copy
+        addToConversationHistory(userMessage, botResponse);
+        saveCurrentSession();  // Auto-save after each message
+        // Summarize turns that fell out of the window once the model is idle
+        historySummarizer.summarizeIfNeeded(genieWrapper, () -> saveCurrentSession());
+        turnSpan.end();
+    }
+
+    /**
+     * Load and parse PDF file in background thread. A document already in the store (by hash, or
+     * by the hash of the file's bytes) is not extracted again.
+     */
+    private void loadPdfInBackground(Uri pdfUri, String docHash, LinearLayout statusLayout, TextView statusText, Message_RecyclerViewAdapter adapter) {
+        taskScope.io(() -> {
+            Tracer.Span loadSpan = Tracer.begin("pdf", "loadPdf");
             try {
                 // Show loading status
                 runOnUiThread(() -> {
@@ -383,38 +515,39 @@ public class Conversation extends AppCompatActivity {
                     statusText.setText("Loading PDF...");
                 });
 
-                // Extract filename
-                String filename = getFileName(pdfUri);
-                pdfFileName = filename;
-
-                // Open PDF document
-                InputStream inputStream = getContentResolver().openInputStream(pdfUri);
-                PDDocument document = PDDocument.load(inputStream);
-                
-                // Extract text
-                PDFTextStripper stripper = new PDFTextStripper();
-                String extractedText = stripper.getText(document);
-                
-                // Format the extracted text for better readability
-                extractedText = formatPdfText(extractedText);
-                
-                // Close document
-                document.close();
-                inputStream.close();
-
-                // Limit context size to fit model context window (1024 tokens ~= 3000-4000 chars)
-                // Using 3500 chars to leave room for conversation history
-                if (extractedText.length() > 3500) {
-                    pdfContext = extractedText.substring(0, 3500) + "\n\n[...document truncated...]";
-                } else {
-                    pdfContext = extractedText;
+                DocumentStore documentStore = DocumentStore.get(this);
+                String hash = docHash;
+                if (hash == null || !documentStore.contains(hash)) {
+                    if (pdfUri == null) {
+                        throw new IOException("Document is no longer available");
+                    }
+                    // Extract and format the text page by page, stopping once there is enough
+                    try (Tracer.Span extractSpan = Tracer.begin("pdf", "extractText")) {
+                        hash = documentStore.importPdf(pdfUri, getFileName(pdfUri), PDF_CONTEXT_LIMIT);
+                        extractSpan.setDetail(hash.substring(0, 12));
+                    }
+                }
+                DocumentStore.Entry document = documentStore.getEntry(hash);
+                String filename = document.getName() != null ? document.getName() : "document.pdf";
+                if (pdfUri != null) {
+                    try {
+                        filename = getFileName(pdfUri);
+                    } catch (Exception e) {
+                        Log.w("ChatApp", "No access to " + pdfUri + ", using stored name");  // e.g. an old gem's URI
+                    }
                 }
+                String loadedHash = hash;
+                String loadedContext = toPdfContext(documentStore.getTextPrefix(hash, PDF_CONTEXT_LIMIT + 1));
 
-                int pageCount = document.getNumberOfPages();
-                int charCount = pdfContext.length();
+                int pageCount = document.getPageCount();
+                int charCount = loadedContext.length();
 
-                // Update UI with formatted success message
+                // Update UI with formatted success message. The document fields are only
+                // written on the main thread, where turns read them.
                 runOnUiThread(() -> {
+                    pdfFileName = filename;
+                    pdfDocHash = loadedHash;
+                    pdfContext = loadedContext;
                     statusText.setText("📄 " + filename + " (" + pageCount + " pages, " + charCount + " chars)");
                     
                     String successMessage = "✅ PDF Loaded Successfully\n\n" +
@@ -427,6 +560,7 @@ public class Conversation extends AppCompatActivity {
                                           "• Explain the formulas\n" +
                                           "• What are the key concepts?";
                     
+                    messageSource.ensureTail();
                     chatAdapter.addMessage(new ChatMessage(successMessage, MessageSender.BOT));
                     chatAdapter.notifyItemInserted(chatAdapter.getItemCount() - 1);
                     
@@ -439,9 +573,12 @@ public class Conversation extends AppCompatActivity {
                     sendUserMsgButton.setEnabled(true);
                 });
 
+                indexDocumentInBackground(hash, pdfUri);
+
                 Log.i("ChatApp", "PDF loaded: " + filename + " (" + pageCount + " pages)");
-                Log.i("ChatApp", "PDF context length: " + pdfContext.length());
-                Log.i("ChatApp", "PDF context preview: " + (pdfContext.length() > 100 ? pdfContext.substring(0, 100) + "..." : pdfContext));
+                Log.i("ChatApp", "PDF context length: " + loadedContext.length());
+                Log.i("ChatApp", "PDF context preview: " + (loadedContext.length() > 100 ? loadedContext.substring(0, 100) + "..." : loadedContext));
+                loadSpan.setDetail(filename + " (" + pageCount + " pages)");
 
             } catch (Exception e) {
                 Log.e("ChatApp", "Error loading PDF: " + e.toString(), e);
@@ -453,168 +590,217 @@ public class Conversation extends AppCompatActivity {
                     ImageButton sendUserMsgButton = findViewById(R.id.send_button);
                     sendUserMsgButton.setEnabled(true);
                 });
+            } finally {
+                loadSpan.end();
             }
         });
     }
 
     /**
-     * Load and analyze image in background thread
+     * Index and summarize a document, extracting its full text first when only the start of it
+     * is stored. Runs on the I/O pool, since extraction blocks on OCR and the CPU pool must stay
+     * free for it. The index is kept when this screen closes; summaries are built at background
+     * priority on the inference lane while it is open, and what was built is kept.
      */
-    private void loadImageInBackground(Uri imageUri, LinearLayout statusLayout, TextView statusText, Message_RecyclerViewAdapter adapter) {
-        ExecutorService service = Executors.newSingleThreadExecutor();
-        service.execute(() -> {
+    private void indexDocumentInBackground(String hash, Uri pdfUri) {
+        Context appContext = getApplicationContext();
+        AppExecutors.get().io().execute(() -> {
+            DocumentStore documentStore = DocumentStore.get(appContext);
+            DocumentStore.Entry entry = documentStore.getEntry(hash);
+            if (entry != null && !entry.isComplete() && pdfUri != null) {
+                try {
+                    documentStore.importPdf(pdfUri, entry.getName(), PdfTextExtractor.NO_LIMIT);
+                } catch (Exception e) {
+                    Log.w("ChatApp", "Indexing the stored part only: " + e.getMessage());
+                }
+            }
+            // Only while this chat is open; gems are summarized by GemPrefetchJobService
+            DocumentSummarizer.get(appContext).summarizeInBackground(hash, taskScope::isClosed);
+            if (SentenceEmbedder.get(appContext) == null) {
+                return;  // No embedding model installed
+            }
+            DocumentRetriever.get(appContext).ensureIndexed(hash);
+        });
+    }
+
+    /**
+     * Document text as sent with each prompt, cut to fit the model context window
+     */
+    private static String toPdfContext(String text) {
+        if (text == null) {
+            return "";
+        }
+        // Limit context size to fit model context window (1024 tokens ~= 3000-4000 chars)
+        // Using 3500 chars to leave room for conversation history
+        if (text.length() > PDF_CONTEXT_LIMIT) {
+            return text.substring(0, PDF_CONTEXT_LIMIT) + "\n\n[...document truncated...]";
+        }
+        return text;
+    }
+
+    /**
+     * Restore the PDF/image context of a saved session; the text is read from the document
+     * store in the background
+     */
+    private void restoreDocumentContext(ChatSession session) {
+        pdfDocHash = session.getPdfDocHash() != null ? session.getPdfDocHash() : "";
+        pdfFileName = session.getPdfFileName() != null ? session.getPdfFileName() : "";
+        imageDocHash = session.getImageDocHash() != null ? session.getImageDocHash() : "";
+        imageFileName = session.getImageFileName() != null ? session.getImageFileName() : "";
+        pdfContext = "";
+        imageContext = "";
+        if (pdfDocHash.isEmpty() && imageDocHash.isEmpty()) {
+            return;
+        }
+
+        final String restorePdfHash = pdfDocHash;
+        final String restoreImageHash = imageDocHash;
+        DocumentStore documentStore = DocumentStore.get(this);
+        taskScope.io(() -> {
+            String pdfText = restorePdfHash.isEmpty() ? null : documentStore.getTextPrefix(restorePdfHash, PDF_CONTEXT_LIMIT + 1);
+            String imageText = restoreImageHash.isEmpty() ? null : documentStore.getText(restoreImageHash);
+            DocumentStore.Entry imageEntry = restoreImageHash.isEmpty() ? null : documentStore.getEntry(restoreImageHash);
+            if (imageText != null && imageEntry != null && !DocumentStore.KIND_TEXT.equals(imageEntry.getKind())) {
+                // OCR text; sessions migrated from inline contexts already hold the description
+                imageText = describeImageText(imageEntry.getName(), imageText, imageEntry.getPageCount(), 0);
+            }
+            runOnUiThread(() -> {
+                if (!restorePdfHash.equals(pdfDocHash) || !restoreImageHash.equals(imageDocHash)) {
+                    return;  // Context changed meanwhile
+                }
+                pdfContext = toPdfContext(pdfText);
+                imageContext = imageText != null ? imageText : "";
+            });
+            if (!restorePdfHash.isEmpty()) {
+                indexDocumentInBackground(restorePdfHash, null);
+            }
+        });
+    }
+
+    /**
+     * Load and analyze images in background thread. Several images (e.g. photographed pages) are
+     * recognized as one document; images that were recognized before are taken from the
+     * document store.
+     */
+    private void loadImagesInBackground(List<Uri> imageUris, LinearLayout statusLayout, TextView statusText, Message_RecyclerViewAdapter adapter) {
+        taskScope.io(() -> {
             try {
                 // Show loading status
                 runOnUiThread(() -> {
                     statusLayout.setVisibility(View.VISIBLE);
-                    statusText.setText("Analyzing image...");
+                    statusText.setText(imageUris.size() > 1 ? "Analyzing " + imageUris.size() + " images..." : "Analyzing image...");
                 });
 
-                // Extract filename
-                String filename = getFileName(imageUri);
-                imageFileName = filename;
-
-                // Load and analyze the image
-                String analysis = analyzeImage(imageUri);
-                
-                imageContext = analysis;
+                // Extract filenames
+                List<String> names = new ArrayList<>();
+                for (Uri uri : imageUris) {
+                    names.add(getFileName(uri));
+                }
 
-                // Update UI
-                runOnUiThread(() -> {
-                    statusText.setText("🖼️ " + filename + " (analyzed)");
-                    chatAdapter.addMessage(new ChatMessage("Image loaded successfully: " + filename + 
-                                                      "\n\nImage Analysis Complete!" +
-                                                      "\n\nI can now answer questions about:" +
-                                                      "\n• Text content in the image" +
-                                                      "\n• Visual elements and objects" +
-                                                      "\n• Scene description" +
-                                                      "\n• Colors and composition" +
-                                                      "\n\nWhat would you like to know about this image?", 
-                                                      MessageSender.BOT));
-                    chatAdapter.notifyItemInserted(chatAdapter.getItemCount() - 1);
-                    
-                    // Track document analysis (images count as documents)
-                    int currentDocs = preferences.getInt("documents_analyzed_count", 0);
-                    preferences.edit().putInt("documents_analyzed_count", currentDocs + 1).apply();
-                    
-                    // Re-enable send button now that content is loaded
-                    ImageButton sendUserMsgButton = findViewById(R.id.send_button);
-                    sendUserMsgButton.setEnabled(true);
+                BatchOcrImporter.importImages(this, imageUris, names, (done, total) -> {
+                    if (total > 1) {
+                        runOnUiThread(() -> statusText.setText("Recognizing page " + done + " of " + total + "..."));
+                    }
+                }).whenComplete((result, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        onImageLoadFailed(cause, statusLayout);
+                        return;
+                    }
+                    onImageAnalyzed(result.hash, result.name,
+                            describeImageText(result.name, result.text, result.pageCount, result.emptyPages), statusText);
                 });
 
-                Log.i("ChatApp", "Image loaded: " + filename);
-                Log.i("ChatApp", "Image analysis: " + analysis.substring(0, Math.min(200, analysis.length())));
-
             } catch (Exception e) {
-                Log.e("ChatApp", "Error loading image: " + e.toString(), e);
-                runOnUiThread(() -> {
-                    statusLayout.setVisibility(View.GONE);
-                    Toast.makeText(this, "Error loading image: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    
-                    // Re-enable send button even on error
-                    ImageButton sendUserMsgButton = findViewById(R.id.send_button);
-                    sendUserMsgButton.setEnabled(true);
-                });
+                onImageLoadFailed(e, statusLayout);
             }
         });
     }
 
-    private String analyzeImage(Uri imageUri) {
-        try {
-            // Load image as bitmap for ML Kit
-            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-            android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeStream(inputStream);
-            inputStream.close();
-            
-            if (bitmap == null) {
-                return "Unable to load image for analysis.";
-            }
-            
-            // Get image dimensions
-            int width = bitmap.getWidth();
-            int height = bitmap.getHeight();
-            String fileName = getFileName(imageUri);
-            
-            // Create InputImage for ML Kit
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
-            
-            // Initialize ML Kit Text Recognizer
-            TextRecognizer recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
-            
-            // StringBuilder to store results
-            final StringBuilder analysisResult = new StringBuilder();
-            analysisResult.append("📸 Image Analysis:\n");
-            analysisResult.append("File: ").append(fileName).append("\n");
-            analysisResult.append("Dimensions: ").append(width).append(" x ").append(height).append(" pixels\n");
-            analysisResult.append("Aspect Ratio: ").append(width > height ? "Landscape" : height > width ? "Portrait" : "Square").append("\n\n");
-            
-            // Process image for text recognition (synchronous wait)
-            final boolean[] ocrCompleted = {false};
-            final String[] extractedText = {""};
-            
-            recognizer.process(image)
-                .addOnSuccessListener(visionText -> {
-                    String text = visionText.getText();
-                    extractedText[0] = text;
-                    
-                    if (text != null && !text.trim().isEmpty()) {
-                        analysisResult.append("✅ OCR Text Extraction:\n");
-                        analysisResult.append("━━━━━━━━━━━━━━━━━━━━━\n");
-                        analysisResult.append(text.trim()).append("\n");
-                        analysisResult.append("━━━━━━━━━━━━━━━━━━━━━\n\n");
-                        analysisResult.append("📝 Detected ").append(visionText.getTextBlocks().size())
-                                     .append(" text blocks with ").append(text.split("\\s+").length)
-                                     .append(" words.\n\n");
-                        analysisResult.append("💡 You can now ask questions about the text content!");
-                    } else {
-                        analysisResult.append("ℹ️ No text detected in this image.\n");
-                        analysisResult.append("This appears to be a visual image without readable text.\n");
-                        analysisResult.append("You can ask about colors, patterns, or visual elements.");
-                    }
-                    
-                    synchronized (ocrCompleted) {
-                        ocrCompleted[0] = true;
-                        ocrCompleted.notify();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("ChatApp", "OCR failed: " + e.getMessage());
-                    analysisResult.append("⚠️ OCR processing failed: ").append(e.getMessage()).append("\n");
-                    analysisResult.append("Image loaded but text extraction unavailable.");
-                    
-                    synchronized (ocrCompleted) {
-                        ocrCompleted[0] = true;
-                        ocrCompleted.notify();
-                    }
-                });
+    private void onImageLoadFailed(Throwable e, LinearLayout statusLayout) {
+        Log.e("ChatApp", "Error loading image: " + e.toString(), e);
+        runOnUiThread(() -> {
+            statusLayout.setVisibility(View.GONE);
+            Toast.makeText(this, "Error loading image: " + e.getMessage(), Toast.LENGTH_LONG).show();
+
+            // Re-enable send button even on error
+            ImageButton sendUserMsgButton = findViewById(R.id.send_button);
+            sendUserMsgButton.setEnabled(true);
+        });
+    }
+
+    private void onImageAnalyzed(String hash, String filename, String analysis, TextView statusText) {
+        if (taskScope.isClosed()) {
+            return;  // Screen was closed while OCR ran
+        }
+        // Update UI
+        runOnUiThread(() -> {
+            imageContext = analysis;
+            imageDocHash = hash;
+            imageFileName = filename;
+            statusText.setText("🖼️ " + filename + " (analyzed)");
+            messageSource.ensureTail();
+            chatAdapter.addMessage(new ChatMessage("Image loaded successfully: " + filename + 
+                                              "\n\nImage Analysis Complete!" +
+                                              "\n\nI can now answer questions about:" +
+                                              "\n• Text content in the image" +
+                                              "\n• Visual elements and objects" +
+                                              "\n• Scene description" +
+                                              "\n• Colors and composition" +
+                                              "\n\nWhat would you like to know about this image?", 
+                                              MessageSender.BOT));
+            chatAdapter.notifyItemInserted(chatAdapter.getItemCount() - 1);
             
-            // Wait for OCR to complete (max 5 seconds)
-            synchronized (ocrCompleted) {
-                try {
-                    if (!ocrCompleted[0]) {
-                        ocrCompleted.wait(5000);
-                    }
-                } catch (InterruptedException e) {
-                    Log.e("ChatApp", "OCR wait interrupted: " + e.getMessage());
-                }
-            }
+            // Track document analysis (images count as documents)
+            int currentDocs = preferences.getInt("documents_analyzed_count", 0);
+            preferences.edit().putInt("documents_analyzed_count", currentDocs + 1).apply();
             
-            // Store extracted text for Llama context
-            if (extractedText[0] != null && !extractedText[0].trim().isEmpty()) {
-                imageContext = "EXTRACTED TEXT FROM IMAGE:\n" + extractedText[0];
-            } else {
-                imageContext = "Image: " + fileName + " (no text detected)";
+            // Re-enable send button now that content is loaded
+            ImageButton sendUserMsgButton = findViewById(R.id.send_button);
+            sendUserMsgButton.setEnabled(true);
+        });
+
+        Log.i("ChatApp", "Image loaded: " + filename);
+        Log.i("ChatApp", "Image analysis: " + analysis.substring(0, Math.min(200, analysis.length())));
+    }
+
+    /**
+     * Describe the OCR text of one or more images as sent with each prompt
+     */
+    private static String describeImageText(String fileName, String text, int pageCount, int emptyPages) {
+        StringBuilder analysisResult = new StringBuilder();
+        analysisResult.append("📸 Image Analysis:\n");
+        analysisResult.append("File: ").append(fileName).append("\n");
+        if (pageCount > 1) {
+            analysisResult.append("Pages: ").append(pageCount);
+            if (emptyPages > 0) {
+                analysisResult.append(" (").append(emptyPages).append(" without text)");
             }
-            
-            return analysisResult.toString();
-            
-        } catch (Exception e) {
-            Log.e("ChatApp", "Error analyzing image: " + e.getMessage());
-            return "❌ Error analyzing image: " + e.getMessage() + 
-                   "\nBasic image loaded. You can still ask general questions.";
+            analysisResult.append("\n");
+        }
+        analysisResult.append("\n");
+
+        if (text != null && !text.trim().isEmpty()) {
+            text = text.trim();
+            boolean truncated = text.length() > PDF_CONTEXT_LIMIT;
+            analysisResult.append("✅ OCR Text Extraction:\n");
+            analysisResult.append("━━━━━━━━━━━━━━━━━━━━━\n");
+            analysisResult.append(truncated ? text.substring(0, PDF_CONTEXT_LIMIT) + "\n[...text truncated...]" : text).append("\n");
+            analysisResult.append("━━━━━━━━━━━━━━━━━━━━━\n\n");
+            analysisResult.append("📝 Detected ").append(text.split("\\s+").length).append(" words.\n\n");
+            analysisResult.append("💡 You can now ask questions about the text content!");
+        } else {
+            analysisResult.append("ℹ️ No text detected in this image.\n");
+            analysisResult.append("This appears to be a visual image without readable text.\n");
+            analysisResult.append("You can ask about colors, patterns, or visual elements.");
         }
+        return analysisResult.toString();
     }
-    
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
     /**
      * Get filename from URI
      */
@@ -641,69 +827,64 @@ public class Conversation extends AppCompatActivity {
         return filename != null ? filename : "document.pdf";
     }
     
-    /**
-     * Format PDF extracted text for better readability
-     * - Preserves mathematical formulas and equations
-     * - Normalizes whitespace and line breaks
-     * - Maintains structure for better AI understanding
-     */
-    private String formatPdfText(String text) {
-        if (text == null || text.isEmpty()) {
-            return text;
-        }
-        
-        // Normalize line endings
-        text = text.replaceAll("\\r\\n", "\n");
-        text = text.replaceAll("\\r", "\n");
-        
-        // Remove excessive blank lines (more than 2 consecutive)
-        text = text.replaceAll("\\n{3,}", "\n\n");
-        
-        // Remove spaces at the beginning and end of lines
-        text = text.replaceAll("(?m)^[ \\t]+", "");
-        text = text.replaceAll("(?m)[ \\t]+$", "");
-        
-        // Preserve formulas and equations by adding line breaks around them
-        // Detect common mathematical patterns
-        text = text.replaceAll("(?m)^([^\\n]{0,5}[a-zA-Z0-9()\\[\\]]+\\s*[=≈≠<>≤≥]\\s*[^\\n]+)$", "\n$1\n");
-        
-        // Preserve section headers (short lines that might be titles)
-        text = text.replaceAll("(?m)^([A-Z][^.!?\\n]{2,40})$", "\n$1\n");
-        
-        // Normalize excessive spaces (but preserve single spaces)
-        text = text.replaceAll("[ \\t]{2,}", " ");
-        
-        // Fix broken words at line endings (common in PDFs)
-        text = text.replaceAll("-\\n([a-z])", "$1");
-        
-        // Clean up
-        text = text.trim();
-        
-        return text;
-    }
-    
     /**
      * Build conversation context prompt including history
+     *
+     * @param retrievalQuery what the document context is picked for: the message itself, or the
+     *                       earlier question a "tell me more" refers to
+     * @param documentText   pdfContext as read on the main thread when the message was sent;
+     *                       documentHash and imageText are pdfDocHash and imageContext likewise
      */
-    private String buildConversationContext(String currentUserMessage) {
+    private String buildConversationContext(String currentUserMessage, String retrievalQuery,
+                                            String documentText, String documentHash, String imageText) {
         StringBuilder prompt = new StringBuilder();
         
         // Add PDF or image context if available (prioritize this as base context)
-        if (!pdfContext.isEmpty()) {
-            prompt.append("Document context:\n").append(pdfContext).append("\n\n");
-        } else if (!imageContext.isEmpty()) {
+        if (!documentText.isEmpty()) {
+            // A short summary for questions about the whole document; else the parts nearest to
+            // the question, else a summary of the whole document that fits, else its start.
+            // Document text (not summaries, which are compact already) is compressed first.
+            String summary = null;
+            String relevant = null;
+            if (!documentHash.isEmpty()) {
+                DocumentSummarizer summarizer = DocumentSummarizer.get(this);
+                if (OVERVIEW_QUESTION.matcher(retrievalQuery).find()) {
+                    summary = summarizer.getSummary(documentHash, OVERVIEW_CONTEXT_LIMIT);
+                }
+                if (summary == null) {
+                    relevant = DocumentRetriever.get(this).retrieve(documentHash, retrievalQuery, PDF_CONTEXT_LIMIT);
+                }
+                if (summary == null && relevant == null && documentText.length() > PDF_CONTEXT_LIMIT) {
+                    summary = summarizer.getSummary(documentHash, PDF_CONTEXT_LIMIT);
+                }
+            }
+            String context = summary != null ? summary
+                    : PromptCompressor.compress(relevant != null ? relevant : documentText,
+                            PromptCompressor.DEFAULT_KEEP_RATIO, retrievalQuery);
+            prompt.append("Document context:\n").append(context).append("\n\n");
+        } else if (!imageText.isEmpty()) {
             // Enhanced prompt for OCR-extracted text
             prompt.append("You have access to text extracted from an image via OCR.\n");
-            prompt.append(imageContext).append("\n\n");
+            prompt.append(imageText).append("\n\n");
             prompt.append("Please answer questions about this text accurately. ");
             prompt.append("If asked about specific content, quote directly from the extracted text.\n\n");
         }
         
-        // Add conversation history for context
-        if (conversationHistory.length() > 0) {
+        // Earlier exchanges are sent as a summary
+        String historySummary = conversationHistory.getSummary();
+        if (!historySummary.isEmpty()) {
+            prompt.append("Summary of earlier conversation:\n").append(historySummary).append("\n\n");
+        }
+        
+        // Add the most recent exchanges that fit the history budget
+        if (!conversationHistory.isEmpty()) {
+            int headerLength = prompt.length();
             prompt.append("Previous conversation:\n");
-            prompt.append(conversationHistory.toString());
-            prompt.append("\n");
+            if (conversationHistory.appendTo(prompt, HISTORY_TOKEN_BUDGET) > 0) {
+                prompt.append("\n");
+            } else {
+                prompt.setLength(headerLength);
+            }
         }
         
         // Add current user message
@@ -718,35 +899,18 @@ public class Conversation extends AppCompatActivity {
     
     /**
      * Add exchange to conversation history
-     * Maintains sliding window of recent messages
+     * Maintains sliding window of recent exchanges
      */
     private void addToConversationHistory(String userMessage, String botResponse) {
-        // Count current messages in history
-        int messageCount = conversationHistory.toString().split("User:|Assistant:").length - 1;
-        
-        // If we exceed limit, remove oldest exchange (2 messages: user + assistant)
-        if (messageCount >= MAX_HISTORY_MESSAGES) {
-            String historyStr = conversationHistory.toString();
-            // Find second occurrence of "User:" to keep from there
-            int firstUser = historyStr.indexOf("User:");
-            int secondUser = historyStr.indexOf("User:", firstUser + 1);
-            if (secondUser > 0) {
-                conversationHistory = new StringBuilder(historyStr.substring(secondUser));
-            }
-        }
-        
-        // Add new exchange
-        conversationHistory.append("User: ").append(userMessage).append("\n");
-        conversationHistory.append("Assistant: ").append(botResponse).append("\n");
-        
-        Log.d("ChatApp", "Conversation history size: " + conversationHistory.length() + " chars");
+        conversationHistory.add(userMessage, GenieWrapper.stripMetrics(botResponse));
+        Log.d("ChatApp", "Conversation history: " + conversationHistory.size() + " turns");
     }
     
     /**
      * Clear conversation history (useful when switching topics or uploading new PDF)
      */
     private void clearConversationHistory() {
-        conversationHistory.setLength(0);
+        conversationHistory.clear();
         Log.d("ChatApp", "Conversation history cleared");
     }
     
@@ -837,20 +1001,21 @@ public class Conversation extends AppCompatActivity {
         // Save current session before creating new one
         saveCurrentSession();
         
-        // Clear current chat
-        messages.clear();
-        chatAdapter.notifyDataSetChanged();
-        
         // Clear contexts
         pdfContext = "";
         pdfFileName = "";
+        pdfDocHash = "";
+        lastExtractiveQuestion = null;
         imageContext = "";
         imageFileName = "";
+        imageDocHash = "";
         clearConversationHistory();
         
         // Create new session
         currentSession = new ChatSession();
+        openingSessionId = currentSession.getSessionId();
         sessionManager.setCurrentSessionId(currentSession.getSessionId());
+        messageSource.open(currentSession);  // Clears the current chat
         
         // Add welcome message
         messages.add(new ChatMessage(cWelcomeMessage, MessageSender.BOT));
@@ -866,16 +1031,25 @@ public class Conversation extends AppCompatActivity {
      * Save current chat session
      */
     private void saveCurrentSession() {
-        if (currentSession != null && !messages.isEmpty()) {
-            // Update session data
-            currentSession.setMessages(new ArrayList<>(messages));
-            currentSession.setPdfContext(pdfContext, pdfFileName);
-            currentSession.setImageContext(imageContext, imageFileName);
+        if (currentSession != null && currentSession != migratingSession && !messages.isEmpty()) {
+            // An answer still streaming lives in a transient buffer; freeze it so it is saved
+            messages.get(messages.size() - 1).freeze();
+
+            // Update session data; only pages that changed are written
+            messageSource.save(currentSession);
+            currentSession.setHistoryTurns(conversationHistory.getTurns());
+            currentSession.setHistorySummary(conversationHistory.getSummary(), conversationHistory.getUnsummarizedTurns());
+            DocumentStore documentStore = DocumentStore.get(this);
+            String owner = DocumentStore.sessionOwner(currentSession.getSessionId());
+            documentStore.replace(currentSession.getPdfDocHash(), emptyToNull(pdfDocHash), owner);
+            documentStore.replace(currentSession.getImageDocHash(), emptyToNull(imageDocHash), owner);
+            currentSession.setPdfDocument(emptyToNull(pdfDocHash), pdfFileName);
+            currentSession.setImageDocument(emptyToNull(imageDocHash), imageFileName);
             currentSession.updateTimestamp();
             
             // Generate title from first user message if still "New Chat"
             if (currentSession.getTitle().equals("New Chat")) {
-                currentSession.generateTitleFromFirstMessage();
+                currentSession.generateTitleFromFirstMessage(messages);
             }
             
             // Save to storage
@@ -891,44 +1065,70 @@ public class Conversation extends AppCompatActivity {
         // Save current session first
         saveCurrentSession();
         
-        // Load new session
+        // Load new session; the current one stays on screen while an old-format one is migrated
         ChatSession session = sessionManager.loadSession(sessionId);
         if (session != null) {
-            currentSession = session;
-            sessionManager.setCurrentSessionId(sessionId);
-            
-            // Restore messages
-            messages.clear();
-            messages.addAll(session.getMessages());
-            chatAdapter.notifyDataSetChanged();
-            
-            // Restore contexts
-            pdfContext = session.getPdfContext() != null ? session.getPdfContext() : "";
-            pdfFileName = session.getPdfFileName() != null ? session.getPdfFileName() : "";
-            imageContext = session.getImageContext() != null ? session.getImageContext() : "";
-            imageFileName = session.getImageFileName() != null ? session.getImageFileName() : "";
-            
-            // Rebuild conversation history from messages
-            rebuildConversationHistory();
-            
-            Toast.makeText(this, "Loaded: " + session.getTitle(), Toast.LENGTH_SHORT).show();
+            openingSessionId = sessionId;
+            whenMigrated(session, () -> {
+                currentSession = session;
+                sessionManager.setCurrentSessionId(sessionId);
+
+                // Restore the newest messages (read in the background); older pages load on scroll
+                messageSource.open(session, () -> {
+                    chatAdapter.prefetchFormatting();
+                    // Restore conversation history for context
+                    restoreConversationHistory(session);
+                });
+
+                // Restore contexts
+                restoreDocumentContext(session);
+
+                Toast.makeText(this, "Loaded: " + session.getTitle(), Toast.LENGTH_SHORT).show();
+            });
         }
     }
+
+    /**
+     * Run onReady now if the session is in the current format, else migrate it on the I/O pool
+     * first (writing its pages and documents) and run onReady on the main thread afterwards,
+     * unless another session was asked for meanwhile
+     */
+    private void whenMigrated(ChatSession session, Runnable onReady) {
+        if (!sessionManager.needsMigration(session)) {
+            onReady.run();
+            return;
+        }
+        migratingSession = session;
+        taskScope.io(() -> {
+            sessionManager.migrate(session);
+            runOnUiThread(() -> {
+                if (migratingSession == session) {
+                    migratingSession = null;
+                }
+                if (!taskScope.isClosed() && session.getSessionId().equals(openingSessionId)) {
+                    onReady.run();
+                }
+            });
+        });
+    }
     
     /**
-     * Rebuild conversation history from loaded messages
+     * Restore conversation history saved with the session. Sessions saved before turns were
+     * stored fall back to pairing the loaded user messages with the answers that follow them.
      */
-    private void rebuildConversationHistory() {
-        conversationHistory.setLength(0);
-        
-        // Take last MAX_HISTORY_MESSAGES
-        int start = Math.max(0, messages.size() - MAX_HISTORY_MESSAGES);
-        for (int i = start; i < messages.size(); i++) {
+    private void restoreConversationHistory(ChatSession session) {
+        if (session.getHistoryTurns() != null) {
+            conversationHistory.setTurns(session.getHistoryTurns());
+            conversationHistory.setSummaryState(session.getHistorySummary(), session.getUnsummarizedTurns());
+            return;
+        }
+        conversationHistory.clear();
+        for (int i = 0; i + 1 < messages.size(); i++) {
             ChatMessage msg = messages.get(i);
-            if (msg.isMessageFromUser()) {
-                conversationHistory.append("User: ").append(msg.getMessage()).append("\n");
-            } else {
-                conversationHistory.append("Assistant: ").append(msg.getMessage()).append("\n");
+            ChatMessage next = messages.get(i + 1);
+            if (msg.isMessageFromUser() && !next.isMessageFromUser()) {
+                conversationHistory.add(msg.getMessage(), GenieWrapper.stripMetrics(next.getMessage()));
+                i++;
             }
         }
     }
@@ -945,6 +1145,7 @@ public class Conversation extends AppCompatActivity {
         super.onDestroy();
         // Save before closing
         saveCurrentSession();
+        OcrPipeline.get(this).trimMemory();
     }
     
     @Override
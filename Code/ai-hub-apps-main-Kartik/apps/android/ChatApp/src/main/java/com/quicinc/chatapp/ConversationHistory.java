@@ -0,0 +1,284 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ConversationHistory - Recent user/assistant exchanges used as prompt context
+ *
+ * Turns are kept in a fixed-size ring buffer and each turn's token estimate is computed once
+ * when it is added, so choosing which turns fit the prompt budget is O(turns) and never
+ * re-scans message text. Thread-safe: turns are added on the main thread while prompts are
+ * built on the inference thread.
+ *
+ * Turns evicted from the ring are not dropped: they wait in a pending list until
+ * HistorySummarizer folds them into a rolling summary, which is sent in their place. Turns still
+ * in the ring but too old to fit the prompt budget are folded in the same way, and are then no
+ * longer sent themselves.
+ */
+public class ConversationHistory {
+
+    // Rough token estimate for the Llama tokenizer on English text (~4 chars per token)
+    private static final int CHARS_PER_TOKEN = 4;
+    // "User: " / "Assistant: " labels and line breaks of one turn
+    private static final int TURN_OVERHEAD_TOKENS = 6;
+
+    private final Turn[] ring;
+    private int head = 0;  // Index of the oldest turn
+    private int size = 0;
+
+    private String summary = "";  // Rolling summary of turns older than the ring
+    private final List<Turn> unsummarized = new ArrayList<>();  // Evicted, not in the summary yet
+    private int epoch = 0;  // Bumped by clear(), so a summary of cleared turns is discarded
+    private int lastBudget = Integer.MAX_VALUE;  // Token budget of the last appendTo()
+
+    public ConversationHistory(int capacity) {
+        ring = new Turn[capacity];
+    }
+
+    /**
+     * Add an exchange. When the buffer is full the oldest turn is evicted and returned.
+     *
+     * @return the evicted turn, or null
+     */
+    public synchronized Turn add(String userMessage, String assistantMessage) {
+        return add(new Turn(userMessage, assistantMessage));
+    }
+
+    private Turn add(Turn turn) {
+        Turn evicted = null;
+        if (size == ring.length) {
+            evicted = ring[head];
+            ring[head] = turn;
+            head = (head + 1) % ring.length;
+            if (!evicted.summarized) {
+                unsummarized.add(evicted);
+            }
+        } else {
+            ring[(head + size) % ring.length] = turn;
+            size++;
+        }
+        return evicted;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        head = 0;
+        size = 0;
+        summary = "";
+        unsummarized.clear();
+        epoch++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Append the newest turns that fit the token budget, oldest first, as
+     * "User: ...\nAssistant: ...\n" lines. The newest turn is always appended, with its
+     * answer shortened to the budget if it does not fit on its own. Turns already in the
+     * summary are not appended.
+     *
+     * @return number of turns appended
+     */
+    public synchronized int appendTo(StringBuilder prompt, int tokenBudget) {
+        lastBudget = tokenBudget;
+        if (size == 0) {
+            return 0;
+        }
+        int count = countFitting(tokenBudget);
+        if (count == 0) {
+            Turn newest = ring[(head + size - 1) % ring.length];
+            int answerTokens = Math.max(0, tokenBudget - TURN_OVERHEAD_TOKENS - estimateTokens(newest.user));
+            prompt.append("User: ").append(newest.user).append("\n");
+            prompt.append("Assistant: ").append(truncate(newest.assistant, answerTokens * CHARS_PER_TOKEN)).append("\n");
+            return 1;
+        }
+        for (int i = size - count; i < size; i++) {
+            Turn turn = ring[(head + i) % ring.length];
+            prompt.append("User: ").append(turn.user).append("\n");
+            prompt.append("Assistant: ").append(turn.assistant).append("\n");
+        }
+        return count;
+    }
+
+    /**
+     * Walk back from the newest turn until the budget is used up or a summarized turn is reached
+     */
+    private int countFitting(int tokenBudget) {
+        int count = 0;
+        int used = 0;
+        while (count < size) {
+            Turn turn = ring[(head + size - 1 - count) % ring.length];
+            if (turn.summarized || used + turn.tokens > tokenBudget) {
+                break;
+            }
+            used += turn.tokens;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Turns oldest first, for saving with the chat session
+     */
+    public synchronized List<Turn> getTurns() {
+        List<Turn> turns = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            turns.add(ring[(head + i) % ring.length]);
+        }
+        return turns;
+    }
+
+    /**
+     * Replace the history with saved turns (oldest first)
+     */
+    public synchronized void setTurns(List<Turn> turns) {
+        clear();
+        if (turns == null) {
+            return;
+        }
+        for (Turn turn : turns) {
+            if (turn != null && turn.user != null && turn.assistant != null) {
+                if (turn.tokens <= 0) {
+                    boolean summarized = turn.summarized;
+                    turn = new Turn(turn.user, turn.assistant);
+                    turn.summarized = summarized;
+                }
+                add(turn);
+            }
+        }
+    }
+
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * Evicted turns not yet folded into the summary, oldest first
+     */
+    public synchronized List<Turn> getUnsummarizedTurns() {
+        return new ArrayList<>(unsummarized);
+    }
+
+    /**
+     * Restore the summary state saved with the chat session
+     */
+    public synchronized void setSummaryState(String summary, List<Turn> unsummarizedTurns) {
+        this.summary = summary != null ? summary : "";
+        unsummarized.clear();
+        if (unsummarizedTurns != null) {
+            for (Turn turn : unsummarizedTurns) {
+                if (turn != null && turn.user != null && turn.assistant != null) {
+                    unsummarized.add(turn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the work for the next summary: the oldest turns that are neither summarized
+     * nor sent, evicted ones first, then those in the ring that no longer fit the budget of the
+     * last prompt. Null if there are none.
+     */
+    public synchronized SummaryWork beginSummary(int maxTurns) {
+        List<Turn> turns = new ArrayList<>(unsummarized.subList(0, Math.min(maxTurns, unsummarized.size())));
+        int sent = Math.max(1, countFitting(lastBudget));
+        for (int i = 0; i < size - sent && turns.size() < maxTurns; i++) {
+            Turn turn = ring[(head + i) % ring.length];
+            if (!turn.summarized) {
+                turns.add(turn);
+            }
+        }
+        if (turns.isEmpty()) {
+            return null;
+        }
+        return new SummaryWork(summary, turns, epoch);
+    }
+
+    /**
+     * Replace the summary with one that folds in the turns of the given work
+     *
+     * @return false if the history was cleared meanwhile and the summary was discarded
+     */
+    public synchronized boolean applySummary(SummaryWork work, String newSummary) {
+        if (work.epoch != epoch) {
+            return false;
+        }
+        summary = newSummary;
+        for (Turn turn : work.turns) {
+            turn.summarized = true;
+            unsummarized.remove(turn);
+        }
+        return true;
+    }
+
+    /**
+     * The start of text up to maxChars, ending at a word boundary
+     */
+    private static String truncate(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int cut = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, cut > maxChars / 2 ? cut : maxChars) + "...";
+    }
+
+    public static int estimateTokens(CharSequence text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * SummaryWork - Previous summary and the turns to fold into it
+     */
+    public static final class SummaryWork {
+        public final String previousSummary;
+        public final List<Turn> turns;
+        private final int epoch;
+
+        SummaryWork(String previousSummary, List<Turn> turns, int epoch) {
+            this.previousSummary = previousSummary;
+            this.turns = turns;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * Turn - One user message and the assistant's answer
+     */
+    public static final class Turn {
+        private String user;
+        private String assistant;
+        private int tokens;  // Estimated once, including labels
+        private boolean summarized;  // Folded into the summary while still in the ring
+
+        Turn(String user, String assistant) {
+            this.user = user;
+            this.assistant = assistant;
+            this.tokens = estimateTokens(user) + estimateTokens(assistant) + TURN_OVERHEAD_TOKENS;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public String getAssistant() {
+            return assistant;
+        }
+
+        public int getTokens() {
+            return tokens;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
@@ -18,12 +20,14 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
 
 import com.google.android.material.appbar.MaterialToolbar;
+import com.tom_roush.pdfbox.android.PDFBoxResourceLoader;
 
 import java.util.HashSet;
 import java.util.Set;
 
 public class CreateGemActivity extends AppCompatActivity {
 
+    private static final String TAG = "CreateGemActivity";
     private static final int PDF_PICK_CODE = 1000;
     private static final int IMAGE_PICK_CODE = 1001;
     
@@ -35,11 +39,15 @@ public class CreateGemActivity extends AppCompatActivity {
     
     private String selectedPdfUri = null;
     private String selectedImageUri = null;
+    private String selectedPdfHash = null;  // Set once the PDF is in the document store
+    private TaskScope taskScope;  // Background work, cancelled when this screen is destroyed
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_create_gem);
+        taskScope = new TaskScope(this);
+        PDFBoxResourceLoader.init(getApplicationContext());
         
         preferences = getSharedPreferences("TutorAppPrefs", MODE_PRIVATE);
         
@@ -83,18 +91,20 @@ public class CreateGemActivity extends AppCompatActivity {
         });
     }
     
+    // OPEN_DOCUMENT rather than GET_CONTENT: the gem keeps the URI, and only a document URI
+    // can be read again after a restart (by the gem or the background prefetch)
     private void pickPdfFile() {
-        Intent intent = new Intent();
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.setType("application/pdf");
-        intent.setAction(Intent.ACTION_GET_CONTENT);
-        startActivityForResult(Intent.createChooser(intent, "Select PDF"), PDF_PICK_CODE);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, PDF_PICK_CODE);
     }
     
     private void pickImageFile() {
-        Intent intent = new Intent();
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.setType("image/*");
-        intent.setAction(Intent.ACTION_GET_CONTENT);
-        startActivityForResult(Intent.createChooser(intent, "Select Image"), IMAGE_PICK_CODE);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, IMAGE_PICK_CODE);
     }
     
     @Override
@@ -104,9 +114,16 @@ public class CreateGemActivity extends AppCompatActivity {
         if (resultCode == RESULT_OK && data != null) {
             Uri uri = data.getData();
             if (uri != null) {
+                try {
+                    getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                } catch (SecurityException e) {
+                    Log.w(TAG, "No persistable permission for " + uri + ", readable until restart only");
+                }
                 if (requestCode == PDF_PICK_CODE) {
                     selectedPdfUri = uri.toString();
-                    Toast.makeText(this, "PDF selected", Toast.LENGTH_SHORT).show();
+                    selectedPdfHash = null;
+                    Toast.makeText(this, "PDF selected, extracting text...", Toast.LENGTH_SHORT).show();
+                    importPdf(uri);
                 } else if (requestCode == IMAGE_PICK_CODE) {
                     selectedImageUri = uri.toString();
                     Toast.makeText(this, "Image selected", Toast.LENGTH_SHORT).show();
@@ -115,6 +132,38 @@ public class CreateGemActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * Extract the PDF into the document store while the gem is being set up, so opening the
+     * gem later does not extract it again. Saving is disabled until the import is done, so
+     * the gem is saved with the document's hash and registered as its owner.
+     */
+    private void importPdf(Uri uri) {
+        final String importUri = uri.toString();
+        setSaveEnabled(false);
+        taskScope.io(() -> {
+            String hash = null;
+            try {
+                hash = DocumentStore.get(this).importPdf(uri, uri.getLastPathSegment(), Conversation.PDF_CONTEXT_LIMIT);
+            } catch (Exception e) {
+                Log.e(TAG, "Error importing PDF: " + e.getMessage());  // Extracted when the gem is opened instead
+            }
+            final String importedHash = hash;
+            runOnUiThread(() -> {
+                if (importUri.equals(selectedPdfUri)) {
+                    selectedPdfHash = importedHash;
+                    setSaveEnabled(true);
+                }
+            });
+        });
+    }
+
+    private void setSaveEnabled(boolean enabled) {
+        for (View view : new View[] { createGemBtn, startChatCard, generateQuizCard }) {
+            view.setEnabled(enabled);
+            view.setAlpha(enabled ? 1f : 0.5f);
+        }
+    }
+
     private boolean validateGemData() {
         String name = gemNameEdit.getText().toString().trim();
         if (name.isEmpty()) {
@@ -132,7 +181,11 @@ public class CreateGemActivity extends AppCompatActivity {
         Set<String> existingGems = preferences.getStringSet("user_gems", new HashSet<>());
         String gemData = gemName + "|" + gemDescription + "|" + 
                         (selectedPdfUri != null ? selectedPdfUri : "") + "|" + 
-                        (selectedImageUri != null ? selectedImageUri : "");
+                        (selectedImageUri != null ? selectedImageUri : "") + "|" +
+                        (selectedPdfHash != null ? selectedPdfHash : "");
+        if (selectedPdfHash != null) {
+            DocumentStore.get(this).acquire(selectedPdfHash, DocumentStore.gemOwner(gemName));
+        }
         
         existingGems.add(gemData);
         preferences.edit()
@@ -152,6 +205,9 @@ public class CreateGemActivity extends AppCompatActivity {
         if (selectedPdfUri != null) {
             intent.putExtra("pdf_uri", selectedPdfUri);
         }
+        if (selectedPdfHash != null) {
+            intent.putExtra("pdf_doc_hash", selectedPdfHash);
+        }
         if (selectedImageUri != null) {
             intent.putExtra("image_uri", selectedImageUri);
         }
@@ -169,6 +225,9 @@ public class CreateGemActivity extends AppCompatActivity {
         
         Intent intent = new Intent(CreateGemActivity.this, QuizActivity.class);
         intent.putExtra("pdf_uri", selectedPdfUri);
+        if (selectedPdfHash != null) {
+            intent.putExtra("pdf_doc_hash", selectedPdfHash);
+        }
         intent.putExtra("gem_name", gemNameEdit.getText().toString().trim());
         startActivity(intent);
         finish();
@@ -0,0 +1,284 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DocumentRetriever - Picks the parts of a document that are relevant to a question
+ *
+ * At ingest, a document's text is split into chunks of about CHUNK_CHARS at paragraph and
+ * sentence boundaries, each chunk is embedded with SentenceEmbedder, and the vectors are written
+ * to a VectorIndex next to the document in DocumentStore (with the chunk offsets in a small JSON
+ * file). At question time the question is embedded and the nearest chunks, in document order,
+ * replace the start of the document as prompt context.
+ *
+ * Without the embedding model every method is a no-op, and callers keep using the document's
+ * first characters.
+ */
+public class DocumentRetriever {
+
+    private static final String TAG = "DocumentRetriever";
+    private static final String INDEX_ARTIFACT = "vectors.idx";
+    private static final String CHUNKS_ARTIFACT = "chunks.json";
+    private static final int CHUNK_CHARS = 500;  // ~110-125 tokens, inside the embedder's 128-token window
+    private static final int MIN_CHUNK_CHARS = 200;
+    private static final int TOP_K = 8;
+    private static final String CHUNK_SEPARATOR = "\n[...]\n";
+
+    private static DocumentRetriever instance;
+
+    private final Context context;
+    private final DocumentStore documentStore;
+    private final Gson gson = new Gson();
+    private final LruCache<String, LoadedIndex> indexes = new LruCache<>(4);
+
+    public static synchronized DocumentRetriever get(Context context) {
+        if (instance == null) {
+            instance = new DocumentRetriever(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DocumentRetriever(Context context) {
+        this.context = context;
+        this.documentStore = DocumentStore.get(context);
+    }
+
+    /**
+     * Build the index of a stored document unless it is up to date. Blocks for the embedding of
+     * every chunk; run on a background thread.
+     *
+     * @return whether the document has an up-to-date index
+     */
+    public boolean ensureIndexed(String hash) {
+        SentenceEmbedder embedder = SentenceEmbedder.get(context);
+        String text = documentStore.getText(hash);
+        if (embedder == null || text == null) {
+            return false;
+        }
+        Chunks existing = loadChunks(hash);
+        if (existing != null && existing.isFor(embedder, text)) {
+            return true;
+        }
+
+        Tracer.Span span = Tracer.begin("embedding", "indexDocument");
+        try {
+            Chunks chunks = split(text);
+            chunks.modelIdentifier = embedder.getModelIdentifier();
+            chunks.textLength = text.length();
+            float[][] vectors = new float[chunks.starts.length][];
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = embedder.embed(text.substring(chunks.starts[i], chunks.ends[i]));
+            }
+            VectorIndex.write(documentStore.getArtifactFile(hash, INDEX_ARTIFACT), vectors, embedder.getDimension());
+            saveChunks(hash, chunks);
+            indexes.remove(hash);
+            span.setDetail(vectors.length + " chunks");
+            Log.i(TAG, "Indexed " + hash.substring(0, 12) + ": " + vectors.length + " chunks");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error indexing " + hash.substring(0, 12) + ": " + e.getMessage(), e);
+            return false;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * The chunks most relevant to the question, in document order, up to maxChars in total
+     *
+     * @return the context, or null if the document has no index (use its start instead)
+     */
+    public String retrieve(String hash, String question, int maxChars) {
+        LoadedIndex loaded = loadIndex(hash);
+        if (loaded == null) {
+            return null;
+        }
+        SentenceEmbedder embedder = SentenceEmbedder.get(context);
+        String text = documentStore.getText(hash);
+        if (embedder == null || text == null || !loaded.chunks.isFor(embedder, text)) {
+            return null;
+        }
+
+        try (Tracer.Span span = Tracer.begin("embedding", "retrieve")) {
+            int[] nearest = loaded.index.search(embedder.embed(question), TOP_K);
+
+            // Most relevant first until the budget is used, then back into reading order
+            List<Integer> picked = new ArrayList<>();
+            int used = 0;
+            for (int id : nearest) {
+                int length = loaded.chunks.ends[id] - loaded.chunks.starts[id] + CHUNK_SEPARATOR.length();
+                if (used + length > maxChars) {
+                    continue;
+                }
+                picked.add(id);
+                used += length;
+            }
+            if (picked.isEmpty()) {
+                return null;
+            }
+            picked.sort((a, b) -> Integer.compare(loaded.chunks.starts[a], loaded.chunks.starts[b]));
+
+            StringBuilder context = new StringBuilder(used);
+            for (int id : picked) {
+                if (context.length() > 0) {
+                    context.append(CHUNK_SEPARATOR);
+                }
+                context.append(text, loaded.chunks.starts[id], loaded.chunks.ends[id]);
+            }
+            span.setDetail(picked.size() + " of " + loaded.index.size() + " chunks");
+            return context.toString();
+        } catch (Exception e) {
+            Log.e(TAG, "Error retrieving from " + hash.substring(0, 12) + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Split text into chunks of about CHUNK_CHARS, ending at a paragraph break where possible,
+     * else at a sentence end, else at a space
+     */
+    static Chunks split(String text) {
+        return split(text, CHUNK_CHARS, MIN_CHUNK_CHARS);
+    }
+
+    /**
+     * Split text into chunks of at most chunkChars (and at least minChunkChars, except the last)
+     * at the best break, as split(text)
+     */
+    static Chunks split(String text, int chunkChars, int minChunkChars) {
+        List<int[]> ranges = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            if (start >= text.length()) {
+                break;
+            }
+            int limit = Math.min(text.length(), start + chunkChars);
+            int end = limit;
+            if (limit < text.length()) {
+                end = lastBreak(text, start + minChunkChars, limit);
+            }
+            ranges.add(new int[] { start, end });
+            start = end;
+        }
+
+        Chunks chunks = new Chunks();
+        chunks.starts = new int[ranges.size()];
+        chunks.ends = new int[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            chunks.starts[i] = ranges.get(i)[0];
+            chunks.ends[i] = ranges.get(i)[1];
+        }
+        return chunks;
+    }
+
+    private static int lastBreak(String text, int from, int limit) {
+        int paragraph = text.lastIndexOf("\n\n", limit);
+        if (paragraph >= from) {
+            return paragraph;
+        }
+        for (int i = limit - 1; i >= from; i--) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '?' || c == '!') && Character.isWhitespace(text.charAt(i + 1))) {
+                return i + 1;
+            }
+        }
+        int space = text.lastIndexOf(' ', limit);
+        return space >= from ? space : limit;
+    }
+
+    private LoadedIndex loadIndex(String hash) {
+        LoadedIndex loaded = indexes.get(hash);
+        if (loaded != null) {
+            return loaded;
+        }
+        File indexFile = documentStore.getArtifactFile(hash, INDEX_ARTIFACT);
+        Chunks chunks = loadChunks(hash);
+        if (chunks == null || !indexFile.exists()) {
+            return null;
+        }
+        try {
+            loaded = new LoadedIndex(VectorIndex.open(indexFile), chunks);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening index of " + hash.substring(0, 12) + ": " + e.getMessage());
+            return null;
+        }
+        indexes.put(hash, loaded);
+        return loaded;
+    }
+
+    private Chunks loadChunks(String hash) {
+        File file = documentStore.getArtifactFile(hash, CHUNKS_ARTIFACT);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new AtomicFile(file).openRead(), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Chunks.class);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading chunks of " + hash.substring(0, 12) + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveChunks(String hash, Chunks chunks) throws IOException {
+        AtomicFile file = new AtomicFile(documentStore.getArtifactFile(hash, CHUNKS_ARTIFACT));
+        FileOutputStream out = file.startWrite();
+        try {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(chunks, writer);
+            writer.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            file.failWrite(out);
+            throw e;
+        }
+    }
+
+    /**
+     * Chunk offsets into the document text, and what the index was built from
+     */
+    static final class Chunks {
+        String modelIdentifier;
+        int textLength;
+        int[] starts;
+        int[] ends;
+
+        /** Whether the index matches this model and text (a partial text may since have been replaced) */
+        boolean isFor(SentenceEmbedder embedder, String text) {
+            return embedder.getModelIdentifier().equals(modelIdentifier) && textLength == text.length()
+                    && starts != null && ends != null && starts.length == ends.length;
+        }
+    }
+
+    private static final class LoadedIndex {
+        final VectorIndex index;
+        final Chunks chunks;
+
+        LoadedIndex(VectorIndex index, Chunks chunks) {
+            this.index = index;
+            this.chunks = chunks;
+        }
+    }
+}
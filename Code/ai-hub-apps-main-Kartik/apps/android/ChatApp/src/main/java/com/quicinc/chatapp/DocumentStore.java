@@ -0,0 +1,509 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DocumentStore - Content-addressed store for document text shared by the whole app
+ *
+ * Documents are keyed by the SHA-256 of their source bytes (the PDF or image file), so the same
+ * textbook attached to many chats, gems, quizzes and flashcard sets is extracted, stored and
+ * held in memory once. Each document has a directory under filesDir/documents holding its
+ * normalized text and any derived artifacts (see getArtifactFile).
+ *
+ * Sessions and gems reference documents by hash and register themselves as owners. Documents
+ * without owners are deleted by collectGarbage() after a grace period, so a document opened
+ * only for a quiz survives long enough to be reused.
+ *
+ * Thread-safe. Methods that read or extract files block and must not be called on the main thread.
+ */
+public class DocumentStore {
+
+    private static final String TAG = "DocumentStore";
+    private static final String DOCUMENTS_DIR = "documents";
+    private static final String INDEX_FILE = "index.json";
+    private static final String TEXT_FILE = "text.txt";
+    private static final long GC_GRACE_PERIOD_MS = 24 * 60 * 60 * 1000L;  // Unowned documents kept for a day
+    private static final int CACHE_MAX_CHARS = 2 * 1024 * 1024;  // ~4 MB of text in memory
+
+    public static final String KIND_PDF = "pdf";
+    public static final String KIND_IMAGE = "image";  // OCR text of one image
+    public static final String KIND_SCAN = "scan";  // OCR text of several images, in page order
+    public static final String KIND_TEXT = "text";
+
+    private static DocumentStore instance;
+
+    private final ContentResolver contentResolver;
+    private final OcrPipeline ocrPipeline;
+    private final File root;
+    private final AtomicFile indexFile;
+    private final Gson gson = new Gson();
+    private final Map<String, Entry> index;
+    private final LruCache<String, String> textCache = new LruCache<String, String>(CACHE_MAX_CHARS) {
+        @Override
+        protected int sizeOf(String hash, String text) {
+            return Math.max(1, text.length());
+        }
+    };
+
+    public static synchronized DocumentStore get(Context context) {
+        if (instance == null) {
+            instance = new DocumentStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DocumentStore(Context context) {
+        contentResolver = context.getContentResolver();
+        ocrPipeline = OcrPipeline.get(context);
+        root = new File(context.getFilesDir(), DOCUMENTS_DIR);
+        indexFile = new AtomicFile(new File(root, INDEX_FILE));
+        index = loadIndex();
+    }
+
+    /**
+     * Owner id of a chat session, for acquire() / release()
+     */
+    public static String sessionOwner(String sessionId) {
+        return "session:" + sessionId;
+    }
+
+    /**
+     * Owner id of a gem, for acquire() / release()
+     */
+    public static String gemOwner(String gemName) {
+        return "gem:" + gemName;
+    }
+
+    /**
+     * Import a PDF, extracting and normalizing its text unless the store already has at least
+     * minChars of it (or all of it). Scanned pages are recognized with OCR.
+     *
+     * @return the document's hash
+     */
+    public String importPdf(Uri uri, String name, int minChars) throws IOException {
+        String hash;
+        try (InputStream input = contentResolver.openInputStream(uri)) {
+            hash = hash(input);
+        }
+        Entry entry = getEntry(hash);
+        // An empty text is extracted again only if it was stored before pages were recognized
+        if (entry != null && (entry.charCount > 0 || entry.recognized) && (entry.complete || entry.charCount > minChars)
+                && textFile(hash).exists()) {
+            Log.d(TAG, "Reusing " + name + " (" + hash.substring(0, 12) + ")");
+            return hash;
+        }
+
+        PdfTextExtractor.Result result;
+        try (InputStream input = contentResolver.openInputStream(uri)) {
+            result = PdfTextExtractor.extract(input, minChars, ocrPipeline);
+        }
+        put(hash, KIND_PDF, name, result.text, result.pageCount, !result.isPartial(), true);
+        return hash;
+    }
+
+    /**
+     * Hash of the file behind a URI, for looking up a document before extracting it
+     */
+    public String hashUri(Uri uri) throws IOException {
+        try (InputStream input = contentResolver.openInputStream(uri)) {
+            return hash(input);
+        }
+    }
+
+    /**
+     * Store text derived from a source with the given hash (e.g. OCR of an image)
+     */
+    public void put(String hash, String kind, String name, String text, int pageCount, boolean complete) throws IOException {
+        put(hash, kind, name, text, pageCount, complete, false);
+    }
+
+    private void put(String hash, String kind, String name, String text, int pageCount, boolean complete,
+                     boolean recognized) throws IOException {
+        // Written under the lock, so collectGarbage() cannot delete the directory meanwhile
+        synchronized (this) {
+            Entry existing = index.get(hash);
+            if (existing != null && existing.complete && !complete && textFile(hash).exists()) {
+                return;  // Never replace a full text with a partial one
+            }
+
+            File dir = documentDir(hash);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            AtomicFile file = new AtomicFile(textFile(hash));
+            FileOutputStream out = file.startWrite();
+            try {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                writer.write(text);
+                writer.flush();
+                file.finishWrite(out);
+            } catch (IOException e) {
+                file.failWrite(out);
+                throw e;
+            }
+
+            Entry entry = index.get(hash);
+            if (entry == null) {
+                entry = new Entry();
+                entry.createdAt = System.currentTimeMillis();
+                entry.releasedAt = entry.createdAt;
+                index.put(hash, entry);
+            }
+            entry.kind = kind;
+            entry.name = name;
+            entry.charCount = text.length();
+            entry.pageCount = pageCount;
+            entry.complete = complete;
+            entry.recognized = recognized;
+            saveIndex();
+            textCache.put(hash, text);
+        }
+        Log.d(TAG, "Stored " + kind + " " + name + ": " + text.length() + " chars (" + hash.substring(0, 12) + ")");
+    }
+
+    /**
+     * Store a piece of text under the hash of the text itself
+     *
+     * @return the text's hash
+     */
+    public String putText(String name, String text) throws IOException {
+        String hash = hash(text.getBytes(StandardCharsets.UTF_8));
+        if (!contains(hash)) {
+            put(hash, KIND_TEXT, name, text, 0, true);
+        }
+        return hash;
+    }
+
+    public synchronized boolean contains(String hash) {
+        return hash != null && index.containsKey(hash);
+    }
+
+    /**
+     * Metadata of a document, or null if it is not stored. A copy: later changes to the
+     * document are not reflected in it.
+     */
+    public synchronized Entry getEntry(String hash) {
+        Entry entry = hash != null ? index.get(hash) : null;
+        return entry != null ? new Entry(entry) : null;
+    }
+
+    /**
+     * A document's full text, or null if it is not stored. Cached in memory.
+     */
+    public String getText(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        String text = textCache.get(hash);
+        if (text != null) {
+            return text;
+        }
+        text = readText(hash, Integer.MAX_VALUE);
+        if (text != null) {
+            textCache.put(hash, text);
+        }
+        return text;
+    }
+
+    /**
+     * The first maxChars chars of a document's text, or null if it is not stored. Reads only
+     * the start of the file when the text is not in memory.
+     */
+    public String getTextPrefix(String hash, int maxChars) {
+        if (hash == null) {
+            return null;
+        }
+        String text = textCache.get(hash);
+        if (text == null) {
+            text = readText(hash, maxChars);
+        }
+        return text != null && text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+
+    private String readText(String hash, int maxChars) {
+        File file = textFile(hash);
+        if (!file.exists()) {
+            return null;
+        }
+        Tracer.Span span = Tracer.begin("storage", "readDocument");
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            StringBuilder text = new StringBuilder((int) Math.min(file.length(), maxChars));
+            char[] buffer = new char[8192];
+            int read;
+            while (text.length() < maxChars
+                    && (read = reader.read(buffer, 0, Math.min(buffer.length, maxChars - text.length()))) > 0) {
+                text.append(buffer, 0, read);
+            }
+            span.setDetail(text.length() + " chars");
+            return text.toString();
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading document " + hash + ": " + e.getMessage());
+            return null;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * File for an artifact derived from a document (summaries, indexes, ...). Deleted with it.
+     */
+    public File getArtifactFile(String hash, String artifactName) {
+        return new File(documentDir(hash), artifactName);
+    }
+
+    /**
+     * Register an owner of a document, which keeps it from being collected
+     */
+    public synchronized void acquire(String hash, String owner) {
+        Entry entry = hash != null ? index.get(hash) : null;
+        if (entry != null && entry.owners.add(owner)) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Remove an owner of a document. Once it has none it is collected after the grace period.
+     */
+    public synchronized void release(String hash, String owner) {
+        Entry entry = hash != null ? index.get(hash) : null;
+        if (entry != null && entry.owners.remove(owner)) {
+            if (entry.owners.isEmpty()) {
+                entry.releasedAt = System.currentTimeMillis();
+            }
+            saveIndex();
+        }
+    }
+
+    /**
+     * Move an owner from one document to another (either may be null)
+     */
+    public synchronized void replace(String oldHash, String newHash, String owner) {
+        if (oldHash != null && oldHash.equals(newHash)) {
+            return;
+        }
+        release(oldHash, owner);
+        acquire(newHash, owner);
+    }
+
+    /**
+     * Remove an owner from every document, e.g. when a chat session is deleted
+     */
+    public synchronized void releaseAll(String owner) {
+        boolean changed = false;
+        long now = System.currentTimeMillis();
+        for (Entry entry : index.values()) {
+            if (entry.owners.remove(owner)) {
+                changed = true;
+                if (entry.owners.isEmpty()) {
+                    entry.releasedAt = now;
+                }
+            }
+        }
+        if (changed) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Delete documents that have had no owner for longer than the grace period
+     *
+     * @return number of documents deleted
+     */
+    public synchronized int collectGarbage() {
+        Tracer.Span span = Tracer.begin("storage", "collectDocuments");
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> item = it.next();
+            Entry entry = item.getValue();
+            if (entry.owners.isEmpty() && now - entry.releasedAt > GC_GRACE_PERIOD_MS) {
+                deleteDir(documentDir(item.getKey()));
+                textCache.remove(item.getKey());
+                it.remove();
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            saveIndex();
+            Log.i(TAG, "Collected " + deleted + " unused documents");
+        }
+        span.setDetail(deleted + " deleted, " + index.size() + " kept");
+        span.end();
+        return deleted;
+    }
+
+    private Map<String, Entry> loadIndex() {
+        if (!indexFile.getBaseFile().exists()) {
+            return new HashMap<>();
+        }
+        try (Reader reader = new InputStreamReader(indexFile.openRead(), StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<HashMap<String, Entry>>(){}.getType();
+            Map<String, Entry> loaded = gson.fromJson(reader, type);
+            if (loaded == null) {
+                return new HashMap<>();
+            }
+            for (Entry entry : loaded.values()) {
+                if (entry.owners == null) {
+                    entry.owners = new HashSet<>();
+                }
+            }
+            return loaded;
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading document index: " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private void saveIndex() {
+        if (!root.exists() && !root.mkdirs()) {
+            Log.e(TAG, "Unable to create " + root);
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = indexFile.startWrite();
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(index, writer);
+            writer.flush();
+            indexFile.finishWrite(out);
+        } catch (IOException e) {
+            if (out != null) {
+                indexFile.failWrite(out);
+            }
+            Log.e(TAG, "Error saving document index: " + e.getMessage());
+        }
+    }
+
+    private File documentDir(String hash) {
+        return new File(root, hash);
+    }
+
+    private File textFile(String hash) {
+        return new File(documentDir(hash), TEXT_FILE);
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * SHA-256 of a stream's bytes as lowercase hex
+     */
+    public static String hash(InputStream input) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String hash(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Entry - Metadata of a stored document
+     */
+    public static final class Entry {
+        private String kind;
+        private String name;
+        private int charCount;
+        private int pageCount;
+        private boolean complete;  // False if extraction stopped early; see importPdf
+        private boolean recognized;  // Extracted with pages without a text layer recognized by OCR
+        private Set<String> owners = new HashSet<>();
+        private long createdAt;
+        private long releasedAt;  // When the last owner was released
+
+        Entry() {
+        }
+
+        Entry(Entry other) {
+            kind = other.kind;
+            name = other.name;
+            charCount = other.charCount;
+            pageCount = other.pageCount;
+            complete = other.complete;
+            recognized = other.recognized;
+            owners = new HashSet<>(other.owners);
+            createdAt = other.createdAt;
+            releasedAt = other.releasedAt;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCharCount() {
+            return charCount;
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+}
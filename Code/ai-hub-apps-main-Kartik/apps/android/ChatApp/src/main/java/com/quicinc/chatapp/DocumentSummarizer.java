@@ -0,0 +1,298 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * DocumentSummarizer - A tree of summaries of a document, so prompts can carry the whole of a
+ * long document at the size they can afford instead of its first page
+ *
+ * Level 0 summarizes each LEAF_CHARS section of the text; each higher level summarizes FAN_IN
+ * summaries of the level below, up to a single document summary of about ROOT_WORDS words. The
+ * model writes one node per inference task at background priority, so chat and quiz prompts run
+ * between nodes, and the tree is saved next to the document in DocumentStore after every node:
+ * an interrupted build continues where it stopped. A tree built from a partial text is rebuilt
+ * once the full text is stored.
+ *
+ * getSummary() returns the most detailed complete level that fits a budget.
+ */
+public class DocumentSummarizer {
+
+    private static final String TAG = "DocumentSummarizer";
+    private static final String SUMMARIES_ARTIFACT = "summaries.json";
+    private static final int LEAF_CHARS = 2400;  // Like a quiz section: leaves room for the prompt
+    private static final int MIN_LEAF_CHARS = 1000;
+    private static final int FAN_IN = 4;
+    private static final int LEAF_WORDS = 60;
+    private static final int SECTION_WORDS = 90;
+    private static final int ROOT_WORDS = 150;  // ~200 tokens
+    private static final String LEVEL_SEPARATOR = "\n\n";
+
+    private static DocumentSummarizer instance;
+
+    private final DocumentStore documentStore;
+    private final Gson gson = new Gson();
+    private final LruCache<String, Tree> trees = new LruCache<>(8);
+    private final Map<String, Build> builds = new HashMap<>();
+
+    public static synchronized DocumentSummarizer get(Context context) {
+        if (instance == null) {
+            instance = new DocumentSummarizer(DocumentStore.get(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    private DocumentSummarizer(DocumentStore documentStore) {
+        this.documentStore = documentStore;
+    }
+
+    /**
+     * Build the summaries of a stored document that are missing, one model call at a time on the
+     * inference lane. Returns at once; calling it again during a build joins that build.
+     *
+     * @param cancelled checked before each node; the build stops once every caller that started
+     *                  or joined it is cancelled, and resumes on the next call
+     * @return completes when the tree is done, cancelled or failed
+     */
+    public CompletableFuture<Void> summarizeInBackground(String hash, BooleanSupplier cancelled) {
+        synchronized (builds) {
+            Build running = builds.get(hash);
+            if (running != null) {
+                running.callers.add(cancelled);
+                return running.future;
+            }
+            Build build = new Build(cancelled);
+            CompletableFuture<Void> future = build.future;
+            builds.put(hash, build);
+            future.whenComplete((result, error) -> {
+                synchronized (builds) {
+                    builds.remove(hash);
+                }
+            });
+            AppExecutors.get().io().execute(() -> {
+                String text = documentStore.getText(hash);
+                Tree tree = text != null ? loadTree(hash, text.length()) : null;
+                if (tree == null) {
+                    future.complete(null);
+                    return;
+                }
+                if (tree.levels.isEmpty()) {
+                    tree = newTree(text);
+                }
+                buildNext(hash, text, tree, build);
+            });
+            return future;
+        }
+    }
+
+    /**
+     * The most detailed complete summary level of a document that fits in maxChars
+     *
+     * @return the summary, or null if no level is built or none fits
+     */
+    public String getSummary(String hash, int maxChars) {
+        DocumentStore.Entry entry = documentStore.getEntry(hash);
+        Tree tree = entry != null ? loadTree(hash, entry.getCharCount()) : null;
+        if (tree == null) {
+            return null;
+        }
+        synchronized (tree) {
+            for (List<String> level : tree.levels) {
+                if (level.contains(null)) {
+                    continue;
+                }
+                String joined = String.join(LEVEL_SEPARATOR, level);
+                if (joined.length() <= maxChars) {
+                    return joined;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queue the first missing node; its task saves it and queues the next one
+     */
+    private void buildNext(String hash, String text, Tree tree, Build build) {
+        CompletableFuture<Void> future = build.future;
+        int[] next = tree.nextMissing();
+        if (next == null) {
+            future.complete(null);
+            return;
+        }
+        AppExecutors.get().submitInference(() -> {
+            if (build.isCancelled()) {
+                future.complete(null);
+                return;
+            }
+            int level = next[0];
+            int node = next[1];
+            try (Tracer.Span span = Tracer.begin("summary", "summarizeNode")) {
+                span.setDetail("level " + level + ", node " + node);
+                StringBuilder response = new StringBuilder();
+                GenieWrapper.getShared().getResponseForPrompt(
+                        buildPrompt(tree, text, level, node), response::append);
+                String summary = GenieWrapper.stripMetrics(response.toString()).trim();
+                if (summary.isEmpty()) {
+                    throw new IOException("Empty summary");
+                }
+                synchronized (tree) {
+                    tree.levels.get(level).set(node, summary);
+                    saveTree(hash, tree);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error summarizing " + hash.substring(0, 12) + ": " + e.getMessage(), e);
+                future.complete(null);
+                return;
+            }
+            buildNext(hash, text, tree, build);
+        }, AppExecutors.PRIORITY_BACKGROUND);
+    }
+
+    private static String buildPrompt(Tree tree, String text, int level, int node) {
+        int words = tree.levels.get(level).size() == 1 ? ROOT_WORDS : level == 0 ? LEAF_WORDS : SECTION_WORDS;
+        String content;
+        if (level == 0) {
+            content = PromptCompressor.compress(text.substring(tree.leafStarts[node], tree.leafEnds[node]),
+                    PromptCompressor.DEFAULT_KEEP_RATIO, null);
+        } else {
+            List<String> below = tree.levels.get(level - 1);
+            content = String.join(LEVEL_SEPARATOR,
+                    below.subList(node * FAN_IN, Math.min(below.size(), (node + 1) * FAN_IN)));
+        }
+        return String.format(
+            "Summarize the following %s in at most %d words. Keep the key terms, definitions and " +
+            "facts; do not add anything that is not in it.\n\n%s\n\nSummary:",
+            level == 0 ? "part of a document" : "summaries of consecutive parts of a document",
+            words,
+            content
+        );
+    }
+
+    /**
+     * An empty tree for the text: one leaf per section, FAN_IN times fewer nodes per level above
+     */
+    private static Tree newTree(String text) {
+        DocumentRetriever.Chunks leaves = DocumentRetriever.split(text, LEAF_CHARS, MIN_LEAF_CHARS);
+        Tree tree = new Tree();
+        tree.textLength = text.length();
+        tree.leafStarts = leaves.starts;
+        tree.leafEnds = leaves.ends;
+        int count = leaves.starts.length;
+        while (count > 0) {
+            List<String> level = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                level.add(null);
+            }
+            tree.levels.add(level);
+            if (count == 1) {
+                break;
+            }
+            count = (count + FAN_IN - 1) / FAN_IN;
+        }
+        return tree;
+    }
+
+    /**
+     * The saved tree if it was built from a text of this length, else an empty one
+     */
+    private Tree loadTree(String hash, int textLength) {
+        Tree tree = trees.get(hash);
+        if (tree == null) {
+            File file = documentStore.getArtifactFile(hash, SUMMARIES_ARTIFACT);
+            if (file.exists()) {
+                try (Reader reader = new InputStreamReader(new AtomicFile(file).openRead(), StandardCharsets.UTF_8)) {
+                    tree = gson.fromJson(reader, Tree.class);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error reading summaries of " + hash.substring(0, 12) + ": " + e.getMessage());
+                }
+            }
+        }
+        if (tree == null || tree.levels == null || tree.textLength != textLength) {
+            tree = new Tree();
+        }
+        trees.put(hash, tree);
+        return tree;
+    }
+
+    private void saveTree(String hash, Tree tree) throws IOException {
+        AtomicFile file = new AtomicFile(documentStore.getArtifactFile(hash, SUMMARIES_ARTIFACT));
+        FileOutputStream out = file.startWrite();
+        try {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(tree, writer);
+            writer.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            file.failWrite(out);
+            throw e;
+        }
+        trees.put(hash, tree);
+    }
+
+    /**
+     * A running build and the cancel checks of everyone waiting for it
+     */
+    private static final class Build {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final List<BooleanSupplier> callers = new CopyOnWriteArrayList<>();
+
+        Build(BooleanSupplier cancelled) {
+            callers.add(cancelled);
+        }
+
+        boolean isCancelled() {
+            for (BooleanSupplier cancelled : callers) {
+                if (!cancelled.getAsBoolean()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Summaries by level, from the leaves (levels[0]) up to the document summary; null until built
+     */
+    private static final class Tree {
+        int textLength;
+        int[] leafStarts;
+        int[] leafEnds;
+        List<List<String>> levels = new ArrayList<>();
+
+        /** Level and index of the first node not built yet, lowest level first, or null */
+        int[] nextMissing() {
+            for (int level = 0; level < levels.size(); level++) {
+                int node = levels.get(level).indexOf(null);
+                if (node >= 0) {
+                    return new int[] { level, node };
+                }
+            }
+            return null;
+        }
+    }
+}
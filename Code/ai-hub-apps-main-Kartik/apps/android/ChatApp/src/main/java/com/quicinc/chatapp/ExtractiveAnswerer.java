@@ -0,0 +1,223 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ExtractiveAnswerer - Answers lookup questions ("what is X", "define X", "what does the document
+ * say X is") with the document's own sentence, without a model call
+ *
+ * The term is taken from the question, and the document's sentences that mention it are tested
+ * against definition patterns: the term as the subject of "is", "refers to", "is defined as"
+ * and the like, or introduced by "called" / "known as". Only such a match counts as an answer;
+ * anything else returns null and goes to the model as before. When several sentences match, the
+ * one closest to the question under SentenceEmbedder wins if the model is installed, else the
+ * first in the document (where terms are usually introduced).
+ *
+ * Runs in milliseconds on a background thread; never touches the inference lane.
+ */
+public class ExtractiveAnswerer {
+
+    private static final String TAG = "ExtractiveAnswerer";
+    private static final int MAX_TERM_WORDS = 5;
+    private static final int MAX_OCCURRENCES = 50;  // Mentions of the term checked per question
+    private static final int MIN_SENTENCE_CHARS = 25;
+    private static final int MAX_SENTENCE_CHARS = 400;
+    private static final int SHORT_SENTENCE_CHARS = 100;  // Followed by the next sentence if it continues it
+    private static final String ARTICLE = "(?:an?\\s+|the\\s+)?";
+    private static final Pattern CONTINUATION = Pattern.compile("^\\s*(?:it|its|this|these|they|their)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern[] QUESTIONS = {
+            Pattern.compile("^what\\s+does\\s+the\\s+(?:document|text|pdf|book|chapter|paper|notes?)\\s+say\\s+"
+                    + "(?:about\\s+)?" + ARTICLE + "(.+?)(?:\\s+(?:is|are|means?))?$"),
+            Pattern.compile("^(?:what|who)\\s+(?:is|are|was|were)\\s+" + ARTICLE + "(.+?)$"),
+            Pattern.compile("^(?:define|definition\\s+of|meaning\\s+of|what\\s+is\\s+meant\\s+by|"
+                    + "what\\s+do\\s+you\\s+mean\\s+by)\\s+" + ARTICLE + "(.+?)$"),
+            Pattern.compile("^what\\s+does\\s+" + ARTICLE + "(.+?)\\s+(?:mean|stand\\s+for)$"),
+    };
+    // Terms that make a question more than a lookup: comparisons, pronouns, the document itself
+    private static final Pattern NOT_A_TERM = Pattern.compile(
+            "\\b(and|or|between|vs|versus|difference|relationship|this|that|it|these|those|"
+            + "document|chapter|pdf|book|paper|example|examples|about)\\b|,");
+    private static final Pattern MORE_REQUEST = Pattern.compile(
+            "^(?:(?:please\\s+)?(?:tell\\s+me\\s+)?more|(?:can\\s+you\\s+)?(?:explain|elaborate)"
+            + "(?:\\s+(?:that|it|this))?(?:\\s+(?:more|further|in\\s+detail))?|go\\s+on|more\\s+details?|why)"
+            + "(?:\\s+please)?[.!?]*$",
+            Pattern.CASE_INSENSITIVE);
+    private static final String DEFINING_VERBS =
+            "(?:is|are|was|were|refers\\s+to|means|denotes|describes|stands\\s+for|"
+            + "(?:can\\s+be|is|are)\\s+defined\\s+as|is\\s+known\\s+as|is\\s+called)\\b";
+
+    private ExtractiveAnswerer() {
+    }
+
+    /**
+     * Whether a message asks to go further into the previous answer ("tell me more", "explain")
+     */
+    public static boolean isMoreRequest(String message) {
+        return MORE_REQUEST.matcher(message.trim()).matches();
+    }
+
+    /**
+     * The document's answer to a lookup question, ready to show
+     *
+     * @return the answer, or null if the question is not a lookup or the document has no
+     *         sentence that clearly answers it
+     */
+    public static String answer(Context context, String documentHash, String question) {
+        String term = extractTerm(question);
+        if (term == null) {
+            return null;
+        }
+        String text = DocumentStore.get(context).getText(documentHash);
+        if (text == null) {
+            return null;
+        }
+        try (Tracer.Span span = Tracer.begin("chat", "extractiveAnswer")) {
+            List<int[]> candidates = findDefinitions(text, term);
+            span.setDetail(candidates.size() + " definitions of \"" + term + "\"");
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            int[] best = pick(context, text, question, candidates);
+            return "The document says:\n\n\"" + text.substring(best[0], best[1]).replaceAll("\\s+", " ")
+                    + "\"\n\nAsk \"tell me more\" for a fuller explanation.";
+        }
+    }
+
+    /**
+     * The term a lookup question asks about, or null if it is not a lookup question
+     */
+    static String extractTerm(String question) {
+        String normalized = question.trim().toLowerCase(Locale.ROOT).replaceAll("[?.!]+$", "").trim();
+        for (Pattern pattern : QUESTIONS) {
+            Matcher matcher = pattern.matcher(normalized);
+            if (!matcher.matches()) {
+                continue;
+            }
+            String term = matcher.group(1).replaceAll("^[\"'“”]+|[\"'“”]+$", "").trim();
+            if (term.isEmpty() || term.split("\\s+").length > MAX_TERM_WORDS || NOT_A_TERM.matcher(term).find()) {
+                return null;
+            }
+            return term;
+        }
+        return null;
+    }
+
+    /**
+     * Sentence ranges of the text that define the term, in document order
+     */
+    static List<int[]> findDefinitions(String text, String term) {
+        String quoted = Pattern.quote(term);
+        Pattern mention = Pattern.compile("(?<![\\p{L}\\p{Nd}])" + quoted + "(?![\\p{L}\\p{Nd}])",
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        // Up to three words before the term ("The", "In biology,"), then the term as subject,
+        // optionally followed by a parenthesis or an appositive
+        Pattern subject = Pattern.compile("^(?:[\\p{L}\\p{Nd}'-]+,?\\s+){0,3}?" + quoted
+                + "s?\\s*(?:\\([^)]{0,60}\\)\\s*)?(?:,[^,]{0,60},\\s*)?" + DEFINING_VERBS,
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        Pattern introduced = Pattern.compile("\\b(?:called|known\\s+as|termed|referred\\s+to\\s+as)\\s+"
+                + ARTICLE + "[\"'“]?" + quoted + "(?![\\p{L}\\p{Nd}])",
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+        List<int[]> definitions = new ArrayList<>();
+        Matcher matcher = mention.matcher(text);
+        int lastStart = -1;
+        for (int n = 0; n < MAX_OCCURRENCES && matcher.find(); n++) {
+            int start = sentenceStart(text, matcher.start());
+            if (start == lastStart) {
+                continue;
+            }
+            lastStart = start;
+            int end = sentenceEnd(text, matcher.end());
+            int length = end - start;
+            if (length < MIN_SENTENCE_CHARS || length > MAX_SENTENCE_CHARS) {
+                continue;
+            }
+            String sentence = text.substring(start, end);
+            if (subject.matcher(sentence).find() || introduced.matcher(sentence).find()) {
+                if (length < SHORT_SENTENCE_CHARS && end < text.length()) {
+                    int next = sentenceEnd(text, Math.min(text.length(), end + 1));
+                    String following = text.substring(end, next);
+                    if (next - start <= MAX_SENTENCE_CHARS && !following.contains("\n\n")
+                            && CONTINUATION.matcher(following).find()) {
+                        end = next;
+                    }
+                }
+                definitions.add(new int[] { start, end });
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * The candidate closest to the question, or the first if there is no embedding model
+     */
+    private static int[] pick(Context context, String text, String question, List<int[]> candidates) {
+        SentenceEmbedder embedder = candidates.size() > 1 ? SentenceEmbedder.get(context) : null;
+        if (embedder == null) {
+            return candidates.get(0);
+        }
+        try {
+            float[] query = embedder.embed(question);
+            int[] best = candidates.get(0);
+            float bestScore = -Float.MAX_VALUE;
+            for (int[] candidate : candidates) {
+                float[] vector = embedder.embed(text.substring(candidate[0], candidate[1]));
+                float score = 0;
+                for (int i = 0; i < vector.length; i++) {
+                    score += vector[i] * query[i];
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = candidate;
+                }
+            }
+            return best;
+        } catch (Exception e) {
+            Log.w(TAG, "Ranking definitions without embeddings: " + e.getMessage());
+            return candidates.get(0);
+        }
+    }
+
+    private static int sentenceStart(String text, int from) {
+        for (int i = from - 1; i > 0; i--) {
+            char c = text.charAt(i);
+            if (c == '\n' && text.charAt(i - 1) == '\n') {
+                return i + 1;
+            }
+            if (Character.isWhitespace(c) && isSentenceEnd(text.charAt(i - 1))) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int sentenceEnd(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isSentenceEnd(c) && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1)))) {
+                return i + 1;
+            }
+            if (c == '\n' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '?' || c == '!';
+    }
+}
@@ -0,0 +1,164 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * FlashcardGenerator - Builds the flashcard generation prompt, parses the model's answer and
+ * saves generated sets. Shared by FlashcardPdfGeneratorActivity and the background
+ * GemPrefetchJobService.
+ */
+public final class FlashcardGenerator {
+
+    private static final String TAG = "FlashcardGenerator";
+    static final int FLASHCARD_COUNT = 10;
+
+    private FlashcardGenerator() {
+    }
+
+    /**
+     * Prompt for count flashcards on the content
+     *
+     * @param avoidPrompt from ItemDeduplicator.getAvoidPrompt, or ""
+     */
+    public static String buildPrompt(int count, String avoidPrompt, String content) {
+        return String.format(
+            "Generate exactly %d flashcards from this document. " +
+            "Format each flashcard EXACTLY as:\n" +
+            "Q: [question]\n" +
+            "A: [answer]\n\n" +
+            "Make questions clear and concise. Make answers detailed but focused.%s\n\n" +
+            "Document content:\n%s",
+            count,
+            avoidPrompt,
+            content
+        );
+    }
+
+    /**
+     * Parse Q:/A: flashcards out of a response, trying looser formats if there are none
+     *
+     * @return the flashcards (never null)
+     */
+    public static ArrayList<Flashcard> parse(String response) {
+        ArrayList<Flashcard> flashcards = new ArrayList<>();
+        
+        Log.d(TAG, "=== Parsing Flashcards ===");
+        Log.d(TAG, "Response length: " + response.length());
+        Log.d(TAG, "Response preview: " + (response.length() > 500 ? response.substring(0, 500) : response));
+        
+        // Pattern to match Q: ... A: ... format
+        Pattern pattern = Pattern.compile("Q:\\s*(.+?)\\s*A:\\s*(.+?)(?=Q:|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+        Matcher matcher = pattern.matcher(response);
+
+        int matchCount = 0;
+        while (matcher.find()) {
+            matchCount++;
+            String question = matcher.group(1).trim();
+            String answer = matcher.group(2).trim();
+            
+            // Clean up question and answer
+            question = question.replaceAll("\\n+", " ").trim();
+            answer = answer.replaceAll("\\n+", " ").trim();
+            
+            Log.d(TAG, "Match " + matchCount + " - Q: " + question.substring(0, Math.min(50, question.length())));
+            Log.d(TAG, "Match " + matchCount + " - A: " + answer.substring(0, Math.min(50, answer.length())));
+            
+            if (!question.isEmpty() && !answer.isEmpty()) {
+                flashcards.add(new Flashcard(question, answer));
+            }
+        }
+
+        Log.d(TAG, "Parsed " + flashcards.size() + " flashcards from response");
+        
+        // If no flashcards parsed, try alternative formats
+        if (flashcards.isEmpty()) {
+            Log.d(TAG, "Trying alternative parsing methods...");
+            flashcards = parseAlternativeFormat(response);
+        }
+        
+        return flashcards;
+    }
+    
+    /**
+     * Try alternative parsing formats in case the AI doesn't follow Q:/A: format
+     */
+    private static ArrayList<Flashcard> parseAlternativeFormat(String response) {
+        ArrayList<Flashcard> flashcards = new ArrayList<>();
+        
+        // Try format: "Question: ... Answer: ..."
+        Pattern pattern1 = Pattern.compile("Question:\\s*(.+?)\\s*Answer:\\s*(.+?)(?=Question:|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+        Matcher matcher1 = pattern1.matcher(response);
+        
+        while (matcher1.find()) {
+            String question = matcher1.group(1).trim().replaceAll("\\n+", " ");
+            String answer = matcher1.group(2).trim().replaceAll("\\n+", " ");
+            if (!question.isEmpty() && !answer.isEmpty()) {
+                flashcards.add(new Flashcard(question, answer));
+                Log.d(TAG, "Alternative format match found");
+            }
+        }
+        
+        // Try format: numbered list "1. ... Answer: ..."
+        if (flashcards.isEmpty()) {
+            Pattern pattern2 = Pattern.compile("\\d+\\.\\s*(.+?)(?:Answer|A):\\s*(.+?)(?=\\d+\\.|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+            Matcher matcher2 = pattern2.matcher(response);
+            
+            while (matcher2.find()) {
+                String question = matcher2.group(1).trim().replaceAll("\\n+", " ");
+                String answer = matcher2.group(2).trim().replaceAll("\\n+", " ");
+                if (!question.isEmpty() && !answer.isEmpty()) {
+                    flashcards.add(new Flashcard(question, answer));
+                    Log.d(TAG, "Numbered format match found");
+                }
+            }
+        }
+        
+        Log.d(TAG, "Alternative parsing found " + flashcards.size() + " flashcards");
+        return flashcards;
+    }
+
+    /**
+     * Add a set to the user's saved flashcard sets
+     */
+    public static void saveSet(SharedPreferences preferences, String currentUser, FlashcardSet flashcardSet) {
+        Tracer.Span span = Tracer.begin("storage", "saveFlashcardSet");
+        String key = "flashcard_sets_" + currentUser;
+        
+        Log.d(TAG, "Saving flashcard set: " + flashcardSet.getTitle());
+        Log.d(TAG, "Number of cards in set: " + flashcardSet.getFlashcardCount());
+        
+        String storageString = flashcardSet.toStorageString();
+        Log.d(TAG, "Storage string length: " + storageString.length());
+        Log.d(TAG, "Storage string preview: " + (storageString.length() > 200 ? storageString.substring(0, 200) + "..." : storageString));
+        
+        Set<String> sets = preferences.getStringSet(key, new HashSet<>());
+        // Create a new HashSet to avoid SharedPreferences issues
+        Set<String> updatedSets = new HashSet<>();
+        if (sets != null) {
+            updatedSets.addAll(sets);
+        }
+        updatedSets.add(storageString);
+        
+        // Clear the old set first, then save the new one
+        preferences.edit()
+            .remove(key)
+            .apply();
+        preferences.edit()
+            .putStringSet(key, updatedSets)
+            .commit(); // Use commit() to ensure it's saved immediately
+        
+        Log.d(TAG, "Saved flashcard set for user: " + currentUser + ". Total sets: " + updatedSets.size());
+        span.end();
+    }
+}
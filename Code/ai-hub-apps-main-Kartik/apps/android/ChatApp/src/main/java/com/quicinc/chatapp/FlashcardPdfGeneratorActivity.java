@@ -20,16 +20,9 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.textfield.TextInputEditText;
 import com.tom_roush.pdfbox.android.PDFBoxResourceLoader;
-import com.tom_roush.pdfbox.pdmodel.PDDocument;
-import com.tom_roush.pdfbox.text.PDFTextStripper;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
 
 /**
  * FlashcardPdfGeneratorActivity - Generate flashcards from PDF using AI
@@ -38,6 +31,8 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
 
     private static final int PICK_PDF_REQUEST = 101;
     private static final String TAG = "FlashcardPdfGenerator";
+    // Model context is 1024 tokens (~3000-4000 chars); this leaves room for the generation prompt
+    static final int FLASHCARD_CONTENT_LIMIT = 2500;
 
     private MaterialToolbar toolbar;
     private TextInputEditText setTitleInput;
@@ -47,13 +42,17 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
     private ProgressBar progressBar;
     private TextView progressText;
     private SharedPreferences preferences;
+    private TaskScope taskScope;  // Background work, cancelled when this screen is destroyed
 
     private String pdfContent = "";
     private String pdfFileName = "";
+    private String pdfDocHash;  // DocumentStore hash of the PDF, once loaded
+    private ItemDeduplicator itemDeduplicator;  // Questions this user was already asked on the PDF
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        taskScope = new TaskScope(this);
         setContentView(R.layout.activity_flashcard_pdf_generator);
 
         // Initialize PDFBox
@@ -110,14 +109,19 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
         progressText.setText("Loading PDF...");
         progressText.setVisibility(android.view.View.VISIBLE);
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
+        taskScope.io(() -> {
+            Tracer.Span loadSpan = Tracer.begin("pdf", "loadPdf");
             try {
-                PDDocument document = PDDocument.load(getContentResolver().openInputStream(pdfUri));
-                PDFTextStripper stripper = new PDFTextStripper();
-                
-                String fullText = stripper.getText(document);
-                int pageCount = document.getNumberOfPages();
+                // Reuse the document if it is already in the store; only the start of it
+                // goes into the flashcard prompt
+                DocumentStore documentStore = DocumentStore.get(this);
+                String hash = documentStore.importPdf(pdfUri, pdfUri.getLastPathSegment(), FLASHCARD_CONTENT_LIMIT);
+                String fullText = documentStore.getTextPrefix(hash, FLASHCARD_CONTENT_LIMIT);
+                int pageCount = documentStore.getEntry(hash).getPageCount();
+                pdfDocHash = hash;
+                itemDeduplicator = ItemDeduplicator.load(this, hash,
+                        preferences.getString("current_user_name", "default_user"));
+                loadSpan.setDetail(hash.substring(0, 12) + ", " + pageCount + " pages, " + fullText.length() + " chars");
                 
                 // Get filename
                 String[] pathSegments = pdfUri.getPath().split("/");
@@ -126,11 +130,7 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
                     pdfFileName = pdfFileName.substring(0, pdfFileName.length() - 4);
                 }
 
-                document.close();
-
-                // Limit content size to fit model context (1024 tokens ~= 3000-4000 chars)
-                // Using 2500 to leave room for flashcard generation prompt
-                pdfContent = fullText.length() > 2500 ? fullText.substring(0, 2500) : fullText;
+                pdfContent = fullText.length() > FLASHCARD_CONTENT_LIMIT ? fullText.substring(0, FLASHCARD_CONTENT_LIMIT) : fullText;
 
                 runOnUiThread(() -> {
                     pdfStatusText.setText(String.format("✓ %s (%d pages)", pdfFileName, pageCount));
@@ -145,6 +145,16 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
                     }
                 });
 
+                // Flashcards draw on sections of the whole document; extract the rest of it now
+                DocumentStore.Entry entry = documentStore.getEntry(hash);
+                if (!entry.isComplete()) {
+                    try {
+                        documentStore.importPdf(pdfUri, entry.getName(), PdfTextExtractor.NO_LIMIT);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Flashcards limited to the start of the PDF: " + e.getMessage());
+                    }
+                }
+
             } catch (Exception e) {
                 Log.e(TAG, "Error loading PDF: " + e.getMessage(), e);
                 runOnUiThread(() -> {
@@ -152,6 +162,8 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
                     progressText.setVisibility(android.view.View.GONE);
                     Toast.makeText(this, "Error loading PDF: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 });
+            } finally {
+                loadSpan.end();
             }
         });
     }
@@ -173,195 +185,121 @@ public class FlashcardPdfGeneratorActivity extends AppCompatActivity {
         progressText.setVisibility(android.view.View.VISIBLE);
         generateButton.setEnabled(false);
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            try {
-                String prompt = String.format(
-                    "Generate exactly 10 flashcards from this document. " +
-                    "Format each flashcard EXACTLY as:\n" +
-                    "Q: [question]\n" +
-                    "A: [answer]\n\n" +
-                    "Make questions clear and concise. Make answers detailed but focused.\n\n" +
-                    "Document content:\n%s",
-                    pdfContent
-                );
-
-                GenieWrapper genie = new GenieWrapper("/data/local/tmp/genie_bundle", "genie_config.json");
-                final StringBuilder response = new StringBuilder();
-
-                genie.getResponseForPrompt(prompt, new StringCallback() {
-                    @Override
-                    public void onNewString(String text) {
-                        response.append(text);
-                    }
-                });
-
-                // Parse flashcards from response
-                ArrayList<Flashcard> flashcards = parseFlashcards(response.toString());
+        // Steer away from questions on earlier flashcards and quizzes of this PDF
+        ItemDeduplicator deduplicator = itemDeduplicator;
+        String hash = pdfDocHash;
+        String content = pdfContent;
 
-                if (flashcards.isEmpty()) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(this, "Failed to generate flashcards. Please try again.", Toast.LENGTH_LONG).show();
-                        progressBar.setVisibility(android.view.View.GONE);
-                        progressText.setVisibility(android.view.View.GONE);
-                        generateButton.setEnabled(true);
-                    });
-                    return;
-                }
+        taskScope.io(() -> {
+            String avoidPrompt = deduplicator != null ? deduplicator.getAvoidPrompt() : "";
 
-                // Create flashcard set
-                FlashcardSet flashcardSet = new FlashcardSet(title, "Generated from " + pdfFileName, "PDF");
-                for (Flashcard fc : flashcards) {
-                    flashcardSet.addFlashcard(fc);
-                }
-                
-                // Verify flashcards were added
-                int cardCount = flashcardSet.getFlashcardCount();
-                Log.d(TAG, "FlashcardSet created with " + cardCount + " cards");
-                
-                if (cardCount == 0) {
-                    Log.e(TAG, "ERROR: Flashcard set has 0 cards after adding!");
-                    runOnUiThread(() -> {
-                        Toast.makeText(this, "Error: Failed to create flashcard set", Toast.LENGTH_LONG).show();
-                        progressBar.setVisibility(android.view.View.GONE);
-                        progressText.setVisibility(android.view.View.GONE);
-                        generateButton.setEnabled(true);
+            // Cards come from sections across the document, each a short request of its own;
+            // until the full text is extracted that is just the start of it
+            String text = DocumentStore.get(this).getText(hash);
+            if (text == null || text.isEmpty()) {
+                text = content;
+            }
+            SectionedGenerator<Flashcard> generator = new SectionedGenerator<>("flashcards", FLASHCARD_CONTENT_LIMIT,
+                    (section, count) -> FlashcardGenerator.buildPrompt(count, avoidPrompt, section),
+                    FlashcardGenerator::parse, Flashcard::getQuestion);
+            Tracer.Span generateSpan = Tracer.begin("flashcards", "generateFlashcards");
+            generator.generate(text, FlashcardGenerator.FLASHCARD_COUNT, AppExecutors.PRIORITY_INTERACTIVE,
+                    taskScope::isClosed, (items, done, total) -> runOnUiThread(() ->
+                            progressText.setText(String.format("Generating flashcards with AI... (%d/%d)", done, total))))
+                    .thenAccept(ranked -> saveFlashcards(title, ranked, deduplicator, generateSpan))
+                    .exceptionally(error -> {
+                        Log.e(TAG, "Error generating flashcards: " + error.getMessage(), error);
+                        generateSpan.end();
+                        if (!taskScope.isClosed()) {
+                            runOnUiThread(() -> {
+                                progressBar.setVisibility(android.view.View.GONE);
+                                progressText.setVisibility(android.view.View.GONE);
+                                generateButton.setEnabled(true);
+                                Toast.makeText(this, "Failed to generate flashcards. Please try again.", Toast.LENGTH_LONG).show();
+                            });
+                        }
+                        return null;
                     });
-                    return;
-                }
+        });
+    }
 
-                // Save to SharedPreferences
-                saveFlashcardSet(flashcardSet);
+    /**
+     * Keep the first FLASHCARD_COUNT new cards of a generation, save them as a set and open it.
+     * Runs on the I/O pool.
+     */
+    private void saveFlashcards(String title, List<Flashcard> ranked, ItemDeduplicator deduplicator, Tracer.Span generateSpan) {
+        try {
+            // Drop repeats of questions this user has already been asked on the PDF; if every
+            // card is a repeat, keep them rather than make no set. The generator ranks cards
+            // so the first ones cover the most sections.
+            List<Flashcard> fresh = deduplicator != null
+                    ? deduplicator.filter(ranked, Flashcard::getQuestion, FlashcardGenerator.FLASHCARD_COUNT) : ranked;
+            if (fresh.isEmpty()) {
+                fresh = ranked;
+            }
+            List<Flashcard> flashcards = new ArrayList<>(
+                    fresh.subList(0, Math.min(FlashcardGenerator.FLASHCARD_COUNT, fresh.size())));
+            generateSpan.setDetail(flashcards.size() + " of " + ranked.size() + " flashcards");
+            if (taskScope.isClosed()) {
+                return;
+            }
 
+            if (flashcards.isEmpty()) {
                 runOnUiThread(() -> {
+                    Toast.makeText(this, "Failed to generate flashcards. Please try again.", Toast.LENGTH_LONG).show();
                     progressBar.setVisibility(android.view.View.GONE);
                     progressText.setVisibility(android.view.View.GONE);
-                    Toast.makeText(this, "Generated " + flashcards.size() + " flashcards!", Toast.LENGTH_SHORT).show();
-                    
-                    // Navigate to study mode
-                    Intent intent = new Intent(FlashcardPdfGeneratorActivity.this, FlashcardStudyActivity.class);
-                    intent.putExtra("flashcard_set", flashcardSet);
-                    startActivity(intent);
-                    finish();
+                    generateButton.setEnabled(true);
                 });
+                return;
+            }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Error generating flashcards: " + e.getMessage(), e);
+            // Create flashcard set
+            FlashcardSet flashcardSet = new FlashcardSet(title, "Generated from " + pdfFileName, "PDF");
+            for (Flashcard fc : flashcards) {
+                flashcardSet.addFlashcard(fc);
+            }
+            
+            // Verify flashcards were added
+            int cardCount = flashcardSet.getFlashcardCount();
+            Log.d(TAG, "FlashcardSet created with " + cardCount + " cards");
+            
+            if (cardCount == 0) {
+                Log.e(TAG, "ERROR: Flashcard set has 0 cards after adding!");
                 runOnUiThread(() -> {
+                    Toast.makeText(this, "Error: Failed to create flashcard set", Toast.LENGTH_LONG).show();
                     progressBar.setVisibility(android.view.View.GONE);
                     progressText.setVisibility(android.view.View.GONE);
                     generateButton.setEnabled(true);
-                    Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 });
+                return;
             }
-        });
-    }
-
-    private ArrayList<Flashcard> parseFlashcards(String response) {
-        ArrayList<Flashcard> flashcards = new ArrayList<>();
-        
-        Log.d(TAG, "=== Parsing Flashcards ===");
-        Log.d(TAG, "Response length: " + response.length());
-        Log.d(TAG, "Response preview: " + (response.length() > 500 ? response.substring(0, 500) : response));
-        
-        // Pattern to match Q: ... A: ... format
-        Pattern pattern = Pattern.compile("Q:\\s*(.+?)\\s*A:\\s*(.+?)(?=Q:|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(response);
-
-        int matchCount = 0;
-        while (matcher.find()) {
-            matchCount++;
-            String question = matcher.group(1).trim();
-            String answer = matcher.group(2).trim();
-            
-            // Clean up question and answer
-            question = question.replaceAll("\\n+", " ").trim();
-            answer = answer.replaceAll("\\n+", " ").trim();
-            
-            Log.d(TAG, "Match " + matchCount + " - Q: " + question.substring(0, Math.min(50, question.length())));
-            Log.d(TAG, "Match " + matchCount + " - A: " + answer.substring(0, Math.min(50, answer.length())));
-            
-            if (!question.isEmpty() && !answer.isEmpty()) {
-                flashcards.add(new Flashcard(question, answer));
-            }
-        }
 
-        Log.d(TAG, "Parsed " + flashcards.size() + " flashcards from response");
-        
-        // If no flashcards parsed, try alternative formats
-        if (flashcards.isEmpty()) {
-            Log.d(TAG, "Trying alternative parsing methods...");
-            flashcards = parseAlternativeFormat(response);
-        }
-        
-        return flashcards;
-    }
-    
-    /**
-     * Try alternative parsing formats in case the AI doesn't follow Q:/A: format
-     */
-    private ArrayList<Flashcard> parseAlternativeFormat(String response) {
-        ArrayList<Flashcard> flashcards = new ArrayList<>();
-        
-        // Try format: "Question: ... Answer: ..."
-        Pattern pattern1 = Pattern.compile("Question:\\s*(.+?)\\s*Answer:\\s*(.+?)(?=Question:|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher1 = pattern1.matcher(response);
-        
-        while (matcher1.find()) {
-            String question = matcher1.group(1).trim().replaceAll("\\n+", " ");
-            String answer = matcher1.group(2).trim().replaceAll("\\n+", " ");
-            if (!question.isEmpty() && !answer.isEmpty()) {
-                flashcards.add(new Flashcard(question, answer));
-                Log.d(TAG, "Alternative format match found");
-            }
-        }
-        
-        // Try format: numbered list "1. ... Answer: ..."
-        if (flashcards.isEmpty()) {
-            Pattern pattern2 = Pattern.compile("\\d+\\.\\s*(.+?)(?:Answer|A):\\s*(.+?)(?=\\d+\\.|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-            Matcher matcher2 = pattern2.matcher(response);
-            
-            while (matcher2.find()) {
-                String question = matcher2.group(1).trim().replaceAll("\\n+", " ");
-                String answer = matcher2.group(2).trim().replaceAll("\\n+", " ");
-                if (!question.isEmpty() && !answer.isEmpty()) {
-                    flashcards.add(new Flashcard(question, answer));
-                    Log.d(TAG, "Numbered format match found");
-                }
-            }
-        }
-        
-        Log.d(TAG, "Alternative parsing found " + flashcards.size() + " flashcards");
-        return flashcards;
-    }
+            // Save to SharedPreferences
+            FlashcardGenerator.saveSet(preferences, preferences.getString("current_user_name", "default_user"), flashcardSet);
 
-    private void saveFlashcardSet(FlashcardSet flashcardSet) {
-        String currentUser = preferences.getString("current_user_name", "default_user");
-        String key = "flashcard_sets_" + currentUser;
-        
-        Log.d(TAG, "Saving flashcard set: " + flashcardSet.getTitle());
-        Log.d(TAG, "Number of cards in set: " + flashcardSet.getFlashcardCount());
-        
-        String storageString = flashcardSet.toStorageString();
-        Log.d(TAG, "Storage string length: " + storageString.length());
-        Log.d(TAG, "Storage string preview: " + (storageString.length() > 200 ? storageString.substring(0, 200) + "..." : storageString));
-        
-        Set<String> sets = preferences.getStringSet(key, new HashSet<>());
-        // Create a new HashSet to avoid SharedPreferences issues
-        Set<String> updatedSets = new HashSet<>();
-        if (sets != null) {
-            updatedSets.addAll(sets);
+            runOnUiThread(() -> {
+                progressBar.setVisibility(android.view.View.GONE);
+                progressText.setVisibility(android.view.View.GONE);
+                Toast.makeText(this, "Generated " + flashcards.size() + " flashcards!", Toast.LENGTH_SHORT).show();
+                
+                // Navigate to study mode
+                Intent intent = new Intent(FlashcardPdfGeneratorActivity.this, FlashcardStudyActivity.class);
+                intent.putExtra("flashcard_set", flashcardSet);
+                startActivity(intent);
+                finish();
+            });
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error generating flashcards: " + e.getMessage(), e);
+            runOnUiThread(() -> {
+                progressBar.setVisibility(android.view.View.GONE);
+                progressText.setVisibility(android.view.View.GONE);
+                generateButton.setEnabled(true);
+                Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            });
+        } finally {
+            generateSpan.end();
         }
-        updatedSets.add(storageString);
-        
-        // Clear the old set first, then save the new one
-        preferences.edit()
-            .remove(key)
-            .apply();
-        preferences.edit()
-            .putStringSet(key, updatedSets)
-            .commit(); // Use commit() to ensure it's saved immediately
-        
-        Log.d(TAG, "Saved flashcard set for user: " + currentUser + ". Total sets: " + updatedSets.size());
     }
 }
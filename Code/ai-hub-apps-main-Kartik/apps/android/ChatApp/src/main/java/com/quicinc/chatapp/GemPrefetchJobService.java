@@ -0,0 +1,238 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * GemPrefetchJobService - Prepares saved gems while the device is idle or charging, so opening
+ * a gem does not wait on extraction or generation
+ *
+ * For each gem it imports the full PDF text and the image text into DocumentStore and builds the
+ * retrieval index (on the I/O pool, since extraction waits on OCR), then, through the shared
+ * model at background priority, builds the PDF's summaries, fills its QuestionBank up to
+ * PREFETCH_QUESTIONS at the quiz screen's default difficulty and saves one flashcard set for the
+ * current user. Work already done is skipped, so a run over prepared gems is cheap.
+ *
+ * JobScheduler constraints combine with AND, so "idle or charging" is two periodic jobs running
+ * the same work; only one run happens at a time.
+ */
+public class GemPrefetchJobService extends JobService {
+
+    private static final String TAG = "GemPrefetchJob";
+    private static final int JOB_ID_IDLE = 4601;
+    private static final int JOB_ID_CHARGING = 4602;
+    private static final long PERIOD_MS = 6 * 60 * 60 * 1000L;
+    private static final int PREFETCH_QUESTIONS = 10;
+    private static final String PREFETCH_DIFFICULTY = "Medium";  // QuizActivity's default
+    private static final String PREFETCHED_FLASHCARDS_KEY = "prefetched_flashcards_";  // + user: hashes with a set
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile boolean stopped = false;
+
+    /**
+     * Schedule the idle and charging jobs unless they already are. Safe to call on every start.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        ComponentName service = new ComponentName(context, GemPrefetchJobService.class);
+        if (scheduler.getPendingJob(JOB_ID_IDLE) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, service)
+                    .setRequiresDeviceIdle(true)
+                    .setRequiresBatteryNotLow(true)
+                    .setRequiresStorageNotLow(true)
+                    .setPeriodic(PERIOD_MS)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (scheduler.getPendingJob(JOB_ID_CHARGING) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, service)
+                    .setRequiresCharging(true)
+                    .setRequiresStorageNotLow(true)
+                    .setPeriodic(PERIOD_MS)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (!running.compareAndSet(false, true)) {
+            return false;  // The other job is already preparing the gems
+        }
+        stopped = false;
+        AppExecutors.get().io().execute(() -> {
+            List<CompletableFuture<Void>> summaries = new ArrayList<>();
+            try {
+                prefetchGems(summaries);
+            } catch (Exception e) {
+                Log.e(TAG, "Error preparing gems: " + e.getMessage(), e);
+            }
+            // Generation queued by prefetchGems() runs first: same priority, submitted earlier.
+            // Summaries queue one node at a time, so wait for them to finish first.
+            CompletableFuture.allOf(summaries.toArray(new CompletableFuture[0])).whenComplete((result, error) ->
+                    AppExecutors.get().submitInference(() -> {
+                        running.set(false);
+                        jobFinished(params, false);
+                    }, AppExecutors.PRIORITY_BACKGROUND));
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Queued steps see the flag and return, then the last one clears running and calls
+        // jobFinished(). No reschedule: the next periodic run continues where this one stopped.
+        stopped = true;
+        return false;
+    }
+
+    private void prefetchGems(List<CompletableFuture<Void>> summaries) {
+        SharedPreferences preferences = getSharedPreferences("TutorAppPrefs", MODE_PRIVATE);
+        String currentUser = preferences.getString("current_user_name", "default_user");
+        Set<String> gems = new HashSet<>(preferences.getStringSet("user_gems", new HashSet<>()));
+
+        for (String gemData : gems) {
+            if (stopped) {
+                return;
+            }
+            GemsAdapter.Gem gem = GemsAdapter.Gem.fromString(gemData);
+            Tracer.Span span = Tracer.begin("prefetch", "prefetchGem");
+            try {
+                importImage(gem);
+                String hash = importPdf(gem);
+                if (hash == null || stopped) {
+                    continue;
+                }
+                DocumentRetriever.get(this).ensureIndexed(hash);
+                summaries.add(DocumentSummarizer.get(this).summarizeInBackground(hash, () -> stopped));
+                prefetchQuestions(hash, currentUser);
+                prefetchFlashcards(gem, hash, preferences, currentUser);
+                span.setDetail(gem.getName());
+            } catch (Exception e) {
+                // Typically a URI whose read permission did not survive a restart
+                Log.w(TAG, "Skipping gem " + gem.getName() + ": " + e.getMessage());
+            } finally {
+                span.end();
+            }
+        }
+    }
+
+    /**
+     * The gem's PDF with its full text in the store, or null if it has none or it is unreadable
+     */
+    private String importPdf(GemsAdapter.Gem gem) throws Exception {
+        DocumentStore documentStore = DocumentStore.get(this);
+        Uri uri = gem.getPdfUri().isEmpty() ? null : Uri.parse(gem.getPdfUri());
+        String hash = gem.getPdfDocHash();
+        if (hash.isEmpty() || !documentStore.contains(hash)) {
+            if (uri == null) {
+                return null;
+            }
+            hash = documentStore.importPdf(uri, gem.getName(), PdfTextExtractor.NO_LIMIT);
+            documentStore.acquire(hash, DocumentStore.gemOwner(gem.getName()));
+            return hash;
+        }
+        DocumentStore.Entry entry = documentStore.getEntry(hash);
+        if (entry != null && !entry.isComplete() && uri != null) {
+            documentStore.importPdf(uri, entry.getName(), PdfTextExtractor.NO_LIMIT);
+        }
+        return hash;
+    }
+
+    /**
+     * Recognize the gem's image, so the chat finds its text cached
+     */
+    private void importImage(GemsAdapter.Gem gem) throws InterruptedException {
+        if (gem.getImageUri().isEmpty()) {
+            return;
+        }
+        try {
+            BatchOcrImporter.importImages(this, Collections.singletonList(Uri.parse(gem.getImageUri())),
+                    Collections.singletonList(gem.getName()), (done, total) -> { }).get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Skipping image of gem " + gem.getName() + ": " + e.getCause());
+        }
+    }
+
+    /**
+     * Queue generation of the questions the bank is short of at the default difficulty
+     */
+    private void prefetchQuestions(String hash, String currentUser) {
+        QuestionBank bank = QuestionBank.get(this, hash);
+        int missing = PREFETCH_QUESTIONS - bank.count(PREFETCH_DIFFICULTY);
+        if (missing <= 0) {
+            return;
+        }
+        String text = DocumentStore.get(this).getText(hash);
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        String avoidPrompt = ItemDeduplicator.load(this, hash, currentUser).getAvoidPrompt();
+        SectionedGenerator<QuizQuestion> generator = new SectionedGenerator<>("prefetch", QuizActivity.QUIZ_CONTENT_LIMIT,
+                (section, count) -> QuizGenerator.buildPrompt(count, PREFETCH_DIFFICULTY, "", avoidPrompt, section),
+                QuizGenerator::parse, q -> q.question);
+
+        generator.generate(text, missing, AppExecutors.PRIORITY_BACKGROUND, () -> stopped, null)
+                .thenAccept(questions -> {
+                    int added = bank.add(questions, PREFETCH_DIFFICULTY);
+                    bank.save();
+                    Log.i(TAG, "Banked " + added + " questions for " + hash.substring(0, 12));
+                });
+    }
+
+    /**
+     * Queue generation of one flashcard set per document and user
+     */
+    private void prefetchFlashcards(GemsAdapter.Gem gem, String hash, SharedPreferences preferences, String currentUser) {
+        String key = PREFETCHED_FLASHCARDS_KEY + currentUser;
+        if (preferences.getStringSet(key, new HashSet<>()).contains(hash)) {
+            return;
+        }
+        String text = DocumentStore.get(this).getText(hash);
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        String avoidPrompt = ItemDeduplicator.load(this, hash, currentUser).getAvoidPrompt();
+        SectionedGenerator<Flashcard> generator = new SectionedGenerator<>("prefetch", FlashcardPdfGeneratorActivity.FLASHCARD_CONTENT_LIMIT,
+                (section, count) -> FlashcardGenerator.buildPrompt(count, avoidPrompt, section),
+                FlashcardGenerator::parse, Flashcard::getQuestion);
+
+        generator.generate(text, FlashcardGenerator.FLASHCARD_COUNT, AppExecutors.PRIORITY_BACKGROUND, () -> stopped, null)
+                .thenAccept(ranked -> {
+                    if (ranked.isEmpty()) {
+                        return;  // Tried again on the next run
+                    }
+                    List<Flashcard> flashcards = ranked.subList(0, Math.min(FlashcardGenerator.FLASHCARD_COUNT, ranked.size()));
+                    FlashcardSet flashcardSet = new FlashcardSet(gem.getName(), "Generated from " + gem.getName(), "PDF");
+                    for (Flashcard flashcard : flashcards) {
+                        flashcardSet.addFlashcard(flashcard);
+                    }
+                    FlashcardGenerator.saveSet(preferences, currentUser, flashcardSet);
+
+                    Set<String> prefetched = new HashSet<>(preferences.getStringSet(key, new HashSet<>()));
+                    prefetched.add(hash);
+                    preferences.edit().putStringSet(key, prefetched).apply();
+                });
+    }
+}
@@ -85,6 +85,9 @@ public class GemsAdapter extends RecyclerView.Adapter<GemsAdapter.GemViewHolder>
         if (!gem.getPdfUri().isEmpty()) {
             intent.putExtra("pdf_uri", gem.getPdfUri());
         }
+        if (!gem.getPdfDocHash().isEmpty()) {
+            intent.putExtra("pdf_doc_hash", gem.getPdfDocHash());
+        }
         if (!gem.getImageUri().isEmpty()) {
             intent.putExtra("image_uri", gem.getImageUri());
         }
@@ -97,6 +100,9 @@ public class GemsAdapter extends RecyclerView.Adapter<GemsAdapter.GemViewHolder>
         if (!gem.getPdfUri().isEmpty()) {
             intent.putExtra("pdf_uri", gem.getPdfUri());
         }
+        if (!gem.getPdfDocHash().isEmpty()) {
+            intent.putExtra("pdf_doc_hash", gem.getPdfDocHash());
+        }
         context.startActivity(intent);
     }
 
@@ -128,12 +134,18 @@ public class GemsAdapter extends RecyclerView.Adapter<GemsAdapter.GemViewHolder>
         private String description;
         private String pdfUri;
         private String imageUri;
+        private String pdfDocHash;  // DocumentStore hash of the PDF, empty for gems saved before it
 
         public Gem(String name, String description, String pdfUri, String imageUri) {
+            this(name, description, pdfUri, imageUri, "");
+        }
+
+        public Gem(String name, String description, String pdfUri, String imageUri, String pdfDocHash) {
             this.name = name;
             this.description = description;
             this.pdfUri = pdfUri;
             this.imageUri = imageUri;
+            this.pdfDocHash = pdfDocHash;
         }
 
         // Getters
@@ -141,9 +153,13 @@ public class GemsAdapter extends RecyclerView.Adapter<GemsAdapter.GemViewHolder>
         public String getDescription() { return description; }
         public String getPdfUri() { return pdfUri; }
         public String getImageUri() { return imageUri; }
+        public String getPdfDocHash() { return pdfDocHash; }
         
         public static Gem fromString(String gemData) {
-            String[] parts = gemData.split("\\|");
+            String[] parts = gemData.split("\\|", -1);
+            if (parts.length >= 5) {
+                return new Gem(parts[0], parts[1], parts[2], parts[3], parts[4]);
+            }
             if (parts.length >= 4) {
                 return new Gem(parts[0], parts[1], parts[2], parts[3]);
             }
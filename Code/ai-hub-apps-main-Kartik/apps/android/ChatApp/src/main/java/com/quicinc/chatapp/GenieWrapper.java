@@ -14,6 +14,11 @@ import java.io.OutputStreamWriter;
  * OPTIMIZED VERSION: Uses persistent genie-app process to eliminate reload overhead
  */
 public class GenieWrapper {
+    static final String DEFAULT_MODEL_DIR = "/data/local/tmp/genie_bundle";
+    static final String DEFAULT_CONFIG = "genie_config.json";
+
+    private static GenieWrapper shared = null;
+
     long genieWrapperNativeHandle;
 
     private String workingDirectory;
@@ -25,6 +30,19 @@ public class GenieWrapper {
     private boolean isInitialized = false;
     private final Object processLock = new Object();
     
+    /**
+     * The process-wide instance on the default bundle, started on first use. Chat, quizzes,
+     * flashcards and background pre-generation share it rather than each starting (and
+     * loading the model into) its own genie-app process. Blocks while the process starts;
+     * call off the main thread where possible.
+     */
+    public static synchronized GenieWrapper getShared() {
+        if (shared == null) {
+            shared = new GenieWrapper(DEFAULT_MODEL_DIR, DEFAULT_CONFIG);
+        }
+        return shared;
+    }
+
     /**
      * GenieWrapper: Loads model at provided path with provided htp config
      *
@@ -37,8 +55,8 @@ public class GenieWrapper {
         genieWrapperNativeHandle = 0; // Dummy value
         
         // Store paths for use in getResponseForPrompt
-        this.workingDirectory = modelDirPath != null ? modelDirPath : "/data/local/tmp/genie_bundle";
-        this.configFile = htpConfigPath != null ? htpConfigPath : "genie_config.json";
+        this.workingDirectory = modelDirPath != null ? modelDirPath : DEFAULT_MODEL_DIR;
+        this.configFile = htpConfigPath != null ? htpConfigPath : DEFAULT_CONFIG;
         
         android.util.Log.d("GenieWrapper", "Initialized with working directory: " + workingDirectory);
         android.util.Log.d("GenieWrapper", "Config file: " + configFile);
@@ -52,6 +70,7 @@ public class GenieWrapper {
      */
     private void initPersistentProcess() {
         synchronized(processLock) {
+            Tracer.Span initSpan = Tracer.begin("genie", "initPersistentProcess");
             try {
                 android.util.Log.d("GenieWrapper", "Starting persistent genie-app process...");
                 
@@ -120,6 +139,8 @@ public class GenieWrapper {
                 android.util.Log.e("GenieWrapper", "Failed to start persistent process: " + e.getMessage(), e);
                 isInitialized = false;
                 cleanupPersistentProcess();
+            } finally {
+                initSpan.setDetail(isInitialized ? "ready" : "failed").end();
             }
         }
     }
@@ -149,6 +170,18 @@ public class GenieWrapper {
         }
     }
 
+    /**
+     * Remove the performance line that is streamed after every answer
+     */
+    public static String stripMetrics(String response) {
+        int index = response.lastIndexOf("\n\n[");
+        if (index >= 0 && (response.startsWith("[⚡ Persistent Mode:", index + 2)
+                || response.startsWith("[Metrics:", index + 2))) {
+            return response.substring(0, index).trim();
+        }
+        return response.trim();
+    }
+
     /**
      * getResponseForPrompt: Generates response for provided user input
      *
@@ -170,7 +203,10 @@ public class GenieWrapper {
      * Use the persistent process (FAST - no reload overhead!)
      */
     private void getResponsePersistent(String userInput, StringCallback callback) {
+        Tracer.Span lockSpan = Tracer.begin("genie", "lockWait");
         synchronized(processLock) {
+            lockSpan.end();
+            Tracer.Span generateSpan = Tracer.begin("genie", "generatePersistent");
             try {
                 long startTime = System.currentTimeMillis();
                 long firstTokenTime = 0;
@@ -208,6 +244,7 @@ public class GenieWrapper {
                                     if (!word.isEmpty()) {
                                         if (firstTokenTime == 0) {
                                             firstTokenTime = System.currentTimeMillis();
+                                            Tracer.instant("genie", "firstToken");
                                         }
                                         callback.onNewString(word + " ");
                                         tokenCount++;
@@ -223,6 +260,7 @@ public class GenieWrapper {
                             if (!word.isEmpty()) {
                                 if (firstTokenTime == 0) {
                                     firstTokenTime = System.currentTimeMillis();
+                                    Tracer.instant("genie", "firstToken");
                                 }
                                 callback.onNewString(word + " ");
                                 tokenCount++;
@@ -243,12 +281,15 @@ public class GenieWrapper {
                 String metrics = String.format("\n\n[⚡ Persistent Mode: %d tokens, %.1f tok/s, TTFT: %dms]",
                         tokenCount, tokensPerSecond, timeToFirstToken);
                 callback.onNewString(metrics);
+                generateSpan.setDetail(tokenCount + " tokens, TTFT " + timeToFirstToken + "ms");
                 
             } catch (Exception e) {
                 android.util.Log.e("GenieWrapper", "Persistent mode failed: " + e.getMessage(), e);
                 callback.onNewString("\n\nError in persistent mode: " + e.getMessage());
                 // Mark as not initialized to trigger fallback next time
                 isInitialized = false;
+            } finally {
+                generateSpan.end();
             }
         }
     }
@@ -257,6 +298,7 @@ public class GenieWrapper {
      * Fallback one-shot mode (SLOW - reloads model each time)
      */
     private void getResponseOneShot(String userInput, StringCallback callback) {
+        Tracer.Span generateSpan = Tracer.begin("genie", "generateOneShot");
         try {
             long startTime = System.currentTimeMillis();
             long firstTokenTime = 0;
@@ -328,6 +370,7 @@ public class GenieWrapper {
                                 if (!word.isEmpty()) {
                                     if (firstTokenTime == 0) {
                                         firstTokenTime = System.currentTimeMillis();
+                                        Tracer.instant("genie", "firstToken");
                                     }
                                     callback.onNewString(word + " ");
                                     tokenCount++;
@@ -344,6 +387,7 @@ public class GenieWrapper {
                         if (!word.isEmpty()) {
                             if (firstTokenTime == 0) {
                                 firstTokenTime = System.currentTimeMillis();
+                                Tracer.instant("genie", "firstToken");
                             }
                             callback.onNewString(word + " ");
                             tokenCount++;
@@ -375,6 +419,7 @@ public class GenieWrapper {
             String metrics = String.format("\n\n[Metrics: %d tokens in %.2fs (%.1f tok/s), TTFT: %dms]", 
                     tokenCount, totalTime/1000.0, tokensPerSecond, timeToFirstToken);
             callback.onNewString(metrics);
+            generateSpan.setDetail(tokenCount + " tokens, TTFT " + timeToFirstToken + "ms, exit " + exitCode);
 
             // Check for errors
             if (tokenCount == 0 && errorBuilder.length() > 0) {
@@ -387,6 +432,8 @@ public class GenieWrapper {
             android.util.Log.e("GenieWrapper", "Exception: " + e.getMessage(), e);
             e.printStackTrace();
             callback.onNewString("Error: " + e.getMessage());
+        } finally {
+            generateSpan.end();
         }
     }
 
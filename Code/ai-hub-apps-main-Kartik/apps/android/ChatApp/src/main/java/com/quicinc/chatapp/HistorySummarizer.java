@@ -0,0 +1,106 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * HistorySummarizer - Folds turns that fell out of the conversation window, or out of the
+ * prompt's history budget, into a rolling summary
+ *
+ * Runs on the inference queue at background priority, so it only uses the model when no
+ * interactive request is waiting. The summary replaces those turns in the prompt, which
+ * keeps prompt size (and prefill time) bounded however long the chat gets.
+ */
+public class HistorySummarizer {
+
+    private static final String TAG = "HistorySummarizer";
+    private static final int MAX_TURNS_PER_PASS = 4;
+    private static final int MAX_CHARS_PER_MESSAGE = 600;  // Bounds the summarization prompt
+    private static final int MAX_SUMMARY_CHARS = 1200;  // ~300 tokens in every later prompt
+
+    private final ConversationHistory history;
+    private final TaskScope taskScope;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean running = false;
+
+    public HistorySummarizer(ConversationHistory history, TaskScope taskScope) {
+        this.history = history;
+        this.taskScope = taskScope;
+    }
+
+    /**
+     * Queue a summary pass if turns are waiting that the prompt no longer carries. Call on the
+     * main thread after a turn is added; onUpdated runs on the main thread when a new summary
+     * has been applied.
+     */
+    public void summarizeIfNeeded(GenieWrapper genieWrapper, Runnable onUpdated) {
+        if (running || genieWrapper == null) {
+            return;
+        }
+        ConversationHistory.SummaryWork work = history.beginSummary(MAX_TURNS_PER_PASS);
+        if (work == null) {
+            return;
+        }
+        running = true;
+
+        taskScope.inference(() -> {
+            String summary = null;
+            try (Tracer.Span span = Tracer.begin("chat", "summarizeHistory")) {
+                StringBuilder response = new StringBuilder();
+                genieWrapper.getResponseForPrompt(buildPrompt(work), response::append);
+                String raw = response.toString();
+                if (!raw.startsWith("Error") && !raw.contains("\n\nError")) {
+                    summary = clip(GenieWrapper.stripMetrics(raw), MAX_SUMMARY_CHARS);
+                    span.setDetail(work.turns.size() + " turns, " + summary.length() + " chars");
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Summarization failed: " + e.getMessage());
+            }
+
+            final String result = summary;
+            mainHandler.post(() -> {
+                running = false;
+                if (result == null || result.isEmpty()) {
+                    return;  // Turns stay pending and are retried after the next turn
+                }
+                if (history.applySummary(work, result)) {
+                    Log.d(TAG, "Folded " + work.turns.size() + " turns into summary (" + result.length() + " chars)");
+                    onUpdated.run();
+                }
+            });
+        }, AppExecutors.PRIORITY_BACKGROUND);
+    }
+
+    private static String buildPrompt(ConversationHistory.SummaryWork work) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Summarize this tutoring conversation in at most 5 short sentences. ");
+        prompt.append("Keep the topics, key facts, formulas and anything the student struggled with.\n\n");
+        if (!work.previousSummary.isEmpty()) {
+            prompt.append("Summary so far:\n").append(work.previousSummary).append("\n\n");
+        }
+        prompt.append("Conversation to add:\n");
+        for (ConversationHistory.Turn turn : work.turns) {
+            prompt.append("User: ").append(clip(turn.getUser(), MAX_CHARS_PER_MESSAGE)).append("\n");
+            prompt.append("Assistant: ").append(clip(GenieWrapper.stripMetrics(turn.getAssistant()), MAX_CHARS_PER_MESSAGE)).append("\n");
+        }
+        prompt.append("\nUpdated summary:");
+        return prompt.toString();
+    }
+
+    /**
+     * Cut text to at most maxChars, at the last sentence end when there is one
+     */
+    private static String clip(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        String cut = text.substring(0, maxChars);
+        int sentenceEnd = Math.max(cut.lastIndexOf(". "), Math.max(cut.lastIndexOf("! "), cut.lastIndexOf("? ")));
+        return sentenceEnd > maxChars / 2 ? cut.substring(0, sentenceEnd + 1) : cut + "...";
+    }
+}
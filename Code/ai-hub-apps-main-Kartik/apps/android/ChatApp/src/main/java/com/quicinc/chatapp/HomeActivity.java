@@ -6,12 +6,15 @@ package com.quicinc.chatapp;
 
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -19,6 +22,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.appbar.MaterialToolbar;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -69,6 +73,13 @@ public class HomeActivity extends AppCompatActivity {
         // Load and display performance metrics
         loadPerformanceMetrics();
         loadSavedGems();
+
+        // Delete documents no chat or gem has used for a while
+        DocumentStore documentStore = DocumentStore.get(this);
+        AppExecutors.get().io().execute(documentStore::collectGarbage);
+
+        // Prepare saved gems' documents, quizzes and flashcards when the device is idle or charging
+        GemPrefetchJobService.schedule(this);
         
         chatCard.setOnClickListener(v -> {
             Intent intent = new Intent(HomeActivity.this, Conversation.class);
@@ -115,6 +126,10 @@ public class HomeActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.home_menu, menu);
+        
+        // Trace export is a debugging aid, keep it out of release builds
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        menu.setGroupVisible(R.id.debug_menu_group, debuggable);
         return true;
     }
     
@@ -123,10 +138,50 @@ public class HomeActivity extends AppCompatActivity {
         if (item.getItemId() == R.id.action_logout) {
             performLogout();
             return true;
+        } else if (item.getItemId() == R.id.action_export_trace) {
+            exportTrace();
+            return true;
+        } else if (item.getItemId() == R.id.action_clear_trace) {
+            Tracer.clear();
+            Toast.makeText(this, "Trace cleared", Toast.LENGTH_SHORT).show();
+            return true;
+        } else if (item.getItemId() == R.id.action_executor_stats) {
+            AppExecutors.get().logMetrics();
+            new AlertDialog.Builder(this)
+                    .setTitle("Executor Stats")
+                    .setMessage(AppExecutors.get().getMetricsSummary())
+                    .setPositiveButton("OK", null)
+                    .show();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
     
+    /**
+     * Export recorded tracing spans as Chrome/Perfetto trace JSON
+     * Open the file at ui.perfetto.dev (pull it with: adb pull <path>)
+     */
+    private void exportTrace() {
+        File traceDir = getExternalFilesDir("traces");
+        if (traceDir == null) {
+            traceDir = new File(getFilesDir(), "traces");
+        }
+        final File directory = traceDir;
+        
+        AppExecutors.get().io().execute(() -> {
+            try {
+                File file = Tracer.exportToFile(directory);
+                runOnUiThread(() -> Toast.makeText(this,
+                        "Trace exported (" + Tracer.size() + " events):\n" + file.getAbsolutePath(),
+                        Toast.LENGTH_LONG).show());
+            } catch (Exception e) {
+                Log.e("HomeActivity", "Error exporting trace: " + e.getMessage(), e);
+                runOnUiThread(() -> Toast.makeText(this,
+                        "Error exporting trace: " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        });
+    }
+    
     private void performLogout() {
         // Get current user before clearing
         String currentUser = preferences.getString("current_user_name", "");
@@ -0,0 +1,287 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * ItemDeduplicator - Remembers the questions a user has been shown for a document and drops
+ * generated quiz questions and flashcards that repeat them
+ *
+ * Each question is reduced to a MinHash signature over the character shingles of its content
+ * words; two questions whose estimated Jaccard similarity reaches DUPLICATE_THRESHOLD are treated
+ * as the same question, which catches rewordings ("What is X?" / "What does X mean?") as well as
+ * exact repeats. The history is kept per user and document (quizzes and flashcards share it) in its
+ * own file, so it outlives the document in DocumentStore and reattaches when the same PDF is
+ * opened again.
+ *
+ * Thread-safe. load() and filter() touch files and must not be called on the main thread.
+ */
+public class ItemDeduplicator {
+
+    private static final String TAG = "ItemDeduplicator";
+    private static final String HISTORY_DIR = "item_history";
+    private static final int NUM_HASHES = 128;
+    private static final int SHINGLE_CHARS = 3;
+    static final double DUPLICATE_THRESHOLD = 0.6;
+    private static final int MAX_ITEMS = 300;  // Oldest items are forgotten beyond this
+    private static final int AVOID_PROMPT_ITEMS = 5;
+    private static final int AVOID_PROMPT_ITEM_CHARS = 70;  // Keeps the list to ~100 tokens
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "of", "in", "on", "at", "to", "for", "from", "by", "with", "and", "or",
+            "is", "are", "was", "were", "be", "been", "what", "which", "who", "whom", "whose", "when",
+            "where", "why", "how", "does", "do", "did", "can", "could", "would", "should", "will",
+            "this", "that", "these", "those", "it", "its", "as", "into", "about", "main", "primary",
+            "known", "called", "name", "describe", "define", "explain", "mean", "means", "meaning",
+            "role", "purpose", "function", "following"));
+
+    private static final Gson gson = new Gson();
+
+    private final AtomicFile file;
+    private final History history;
+
+    private ItemDeduplicator(AtomicFile file, History history) {
+        this.file = file;
+        this.history = history;
+    }
+
+    /**
+     * Load the history of a user's items for a document (empty if there is none)
+     */
+    public static ItemDeduplicator load(Context context, String documentHash, String userName) {
+        File dir = new File(context.getFilesDir(), HISTORY_DIR);
+        String key = documentHash + "_" + DocumentStore.hash(userName.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        AtomicFile file = new AtomicFile(new File(dir, key + ".json"));
+
+        History history = null;
+        if (file.getBaseFile().exists()) {
+            try (Reader reader = new InputStreamReader(file.openRead(), StandardCharsets.UTF_8)) {
+                history = gson.fromJson(reader, History.class);
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading item history: " + e.getMessage());
+            }
+        }
+        if (history == null || history.items == null) {
+            history = new History();
+        }
+        return new ItemDeduplicator(file, history);
+    }
+
+    /**
+     * Keep the items that are not near-duplicates of earlier items or of each other, and record
+     * them as seen
+     *
+     * @param textOf the text an item is compared by (its question)
+     * @return the new items, in their original order
+     */
+    public <T> List<T> filter(List<T> items, Function<T, String> textOf) {
+        return filter(items, textOf, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like filter(items, textOf), but keeps (and records) at most limit items, for when only
+     * that many will be shown
+     */
+    public synchronized <T> List<T> filter(List<T> items, Function<T, String> textOf, int limit) {
+        List<T> kept = new ArrayList<>();
+        if (items == null || items.isEmpty()) {
+            return kept;
+        }
+        try (Tracer.Span span = Tracer.begin("dedup", "filterItems")) {
+            for (T item : items) {
+                if (kept.size() >= limit) {
+                    break;
+                }
+                String text = textOf.apply(item);
+                int[] signature = signature(text);
+                if (signature == null || isDuplicate(signature)) {
+                    continue;
+                }
+                kept.add(item);
+                Item seen = new Item();
+                seen.text = text.trim();
+                seen.signature = signature;
+                history.items.add(seen);
+            }
+            while (history.items.size() > MAX_ITEMS) {
+                history.items.remove(0);
+            }
+            span.setDetail(kept.size() + " of " + items.size() + " kept, " + history.items.size() + " seen");
+        }
+        if (kept.size() < Math.min(limit, items.size())) {
+            Log.d(TAG, "Dropped repeated items: kept " + kept.size() + " of " + items.size());
+        }
+        if (!kept.isEmpty()) {
+            save();
+        }
+        return kept;
+    }
+
+    /**
+     * Record items as seen without filtering them (e.g. questions served from the QuestionBank),
+     * so later generations steer away from them
+     */
+    public <T> void record(List<T> items, Function<T, String> textOf) {
+        filter(items, textOf);
+    }
+
+    /**
+     * Prompt addition listing the most recent questions, so the model asks about other material
+     *
+     * @return the addition, or "" if nothing has been asked yet
+     */
+    public synchronized String getAvoidPrompt() {
+        if (history.items.isEmpty()) {
+            return "";
+        }
+        StringBuilder prompt = new StringBuilder("\n\nThe user has already been asked these; cover different material:\n");
+        int from = Math.max(0, history.items.size() - AVOID_PROMPT_ITEMS);
+        for (int i = history.items.size() - 1; i >= from; i--) {
+            String text = history.items.get(i).text;
+            if (text.length() > AVOID_PROMPT_ITEM_CHARS) {
+                text = text.substring(0, AVOID_PROMPT_ITEM_CHARS) + "...";
+            }
+            prompt.append("- ").append(text).append("\n");
+        }
+        return prompt.toString();
+    }
+
+    private boolean isDuplicate(int[] signature) {
+        for (Item item : history.items) {
+            int[] seen = item.signature();
+            if (seen != null && similarity(signature, seen) >= DUPLICATE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void save() {
+        File dir = file.getBaseFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Unable to create " + dir);
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(history, writer);
+            writer.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving item history: " + e.getMessage());
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    /**
+     * MinHash signature of the text's character shingles: for each of NUM_HASHES hash functions,
+     * the minimum hash over all shingles
+     *
+     * @return the signature, or null if the text has no content words
+     */
+    static int[] signature(String text) {
+        Set<String> shingles = shingles(text);
+        if (shingles.isEmpty()) {
+            return null;
+        }
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String shingle : shingles) {
+            int base = shingle.hashCode();
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int h = mix(base ^ (0x9E3779B9 * (i + 1)));
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimated Jaccard similarity: the fraction of hash functions whose minimums agree
+     */
+    static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / NUM_HASHES;
+    }
+
+    /**
+     * Character SHINGLE_CHARS-grams of each content word, padded with spaces so short words and
+     * word edges count. Question phrasing ("what is the main...") is dropped first; otherwise it
+     * dominates short questions and "the role of ATP" would match "the role of DNA".
+     */
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{Nd}]+")) {
+            if (word.isEmpty() || STOP_WORDS.contains(word)) {
+                continue;
+            }
+            String padded = " " + word + " ";
+            if (padded.length() <= SHINGLE_CHARS) {
+                shingles.add(padded);
+            }
+            for (int i = 0; i + SHINGLE_CHARS <= padded.length(); i++) {
+                shingles.add(padded.substring(i, i + SHINGLE_CHARS));
+            }
+        }
+        return shingles;
+    }
+
+    /** MurmurHash3 finalizer */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static final class History {
+        List<Item> items = new ArrayList<>();
+    }
+
+    private static final class Item {
+        String text;
+        transient int[] signature;  // Recomputed after loading rather than stored
+
+        int[] signature() {
+            if (signature == null) {
+                signature = ItemDeduplicator.signature(text);
+            }
+            return signature;
+        }
+    }
+}
@@ -5,6 +5,8 @@
 package com.quicinc.chatapp;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -15,10 +17,15 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class Message_RecyclerViewAdapter extends RecyclerView.Adapter<Message_RecyclerViewAdapter.MyViewHolder> {
 
+    // Partial-change payload: only the streamed bot text changed, layout and visibility are unchanged
+    public static final Object PAYLOAD_BOT_TEXT = new Object();
+
     Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     ArrayList<ChatMessage> messages = new ArrayList<ChatMessage>(1000);
 
     public Message_RecyclerViewAdapter(Context context, ArrayList<ChatMessage> messages) {
@@ -44,63 +51,93 @@ public class Message_RecyclerViewAdapter extends RecyclerView.Adapter<Message_Re
             holder.mRightChatLayout.setVisibility(View.VISIBLE);
         } else {
             // Format bot message with better structure
-            String formattedMessage = formatBotMessage(msg.getMessage());
-            holder.mBotMessage.setText(formattedMessage);
+            holder.mBotMessage.setText(getBotDisplayText(msg));
             holder.mLeftChatLayout.setVisibility(View.VISIBLE);
             holder.mRightChatLayout.setVisibility(View.GONE);
         }
     }
-    
+
+    @Override
+    public void onBindViewHolder(@NonNull Message_RecyclerViewAdapter.MyViewHolder holder, int position, @NonNull List<Object> payloads) {
+        ChatMessage msg = messages.get(position);
+        if (!msg.isMessageFromUser() && !payloads.isEmpty() && payloads.contains(PAYLOAD_BOT_TEXT)) {
+            // Streaming update: refresh the bot text only
+            holder.mBotMessage.setText(getBotDisplayText(msg));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
     /**
-     * Format bot message for better readability
-     * - Handles formulas and mathematical expressions
-     * - Adds proper spacing after punctuation
-     * - Ensures consistent line breaks
-     * - Improves overall structure for lists and equations
+     * Text to show for a bot message right now. Formatting never runs on the main thread:
+     * if the cache is stale, the last formatted text (or the raw text) is shown and the
+     * row is rebound once the background format finishes.
      */
-    private String formatBotMessage(String message) {
-        if (message == null || message.isEmpty()) {
-            return message;
+    private CharSequence getBotDisplayText(ChatMessage msg) {
+        if (msg.isFormattedTextCurrent()) {
+            return msg.mFormatted;
+        }
+        requestFormat(msg);
+        return msg.mFormatted != null ? msg.mFormatted : msg.getText();
+    }
+
+    /**
+     * Bring the formatted text of a bot message up to date on the CPU pool.
+     * At most one format per message is in flight; text streamed in meanwhile is picked
+     * up by a follow-up format, which only processes the newly appended part.
+     */
+    private void requestFormat(ChatMessage msg) {
+        if (msg.mFormatPending || msg.isMessageFromUser()) {
+            return;
+        }
+        if (msg.mFormatState == null) {
+            msg.mFormatState = new BotMessageFormatter.IncrementalState();
+        }
+        msg.mFormatPending = true;
+        final String source = msg.getMessage();  // Immutable snapshot, the buffer keeps growing on the main thread
+        final BotMessageFormatter.IncrementalState state = msg.mFormatState;
+
+        AppExecutors.get().cpu().execute(() -> {
+            String formatted;
+            try (Tracer.Span span = Tracer.begin("ui", "formatBotMessage")) {
+                formatted = BotMessageFormatter.formatIncremental(state, source);
+                span.setDetail(source.length() + " chars");
+            }
+            mainHandler.post(() -> {
+                msg.mFormatPending = false;
+                msg.mFormatted = formatted;
+                msg.mFormattedLength = source.length();
+
+                int position = messages.lastIndexOf(msg);
+                if (position < 0) {
+                    return;  // Message list was replaced (new or loaded chat)
+                }
+                notifyItemChanged(position, PAYLOAD_BOT_TEXT);
+                if (!msg.isFormattedTextCurrent()) {
+                    requestFormat(msg);
+                }
+            });
+        });
+    }
+
+    /**
+     * Streamed text was appended to the given bot message.
+     * Its row, wherever it is now, is rebound when its formatted text is ready.
+     */
+    public void onBotMessageStreamed(ChatMessage msg) {
+        requestFormat(msg);
+    }
+
+    /**
+     * Format all bot messages in the background, e.g. after loading a saved chat,
+     * so scrolling through a long conversation binds cached text only
+     */
+    public void prefetchFormatting() {
+        for (ChatMessage msg : messages) {
+            if (!msg.isMessageFromUser() && !msg.isFormattedTextCurrent()) {
+                requestFormat(msg);
+            }
         }
-        
-        // Normalize line endings
-        message = message.replaceAll("\\r\\n", "\n");
-        message = message.replaceAll("\\r", "\n");
-        
-        // Remove excessive whitespace while preserving intentional line breaks
-        message = message.replaceAll("[ \\t]+", " ");
-        
-        // Normalize multiple consecutive line breaks (3+ becomes 2)
-        message = message.replaceAll("\\n{3,}", "\n\n");
-        
-        // Ensure proper spacing after sentence-ending punctuation
-        message = message.replaceAll("([.!?])([A-Z])", "$1 $2");
-        
-        // Format numbered lists with proper line breaks (only if not already on new line)
-        message = message.replaceAll("([^\\n])\\s*([0-9]+\\.)\\s+", "$1\n$2 ");
-        
-        // Format bullet points with proper line breaks (only if not already on new line)
-        message = message.replaceAll("([^\\n])\\s*([•\\-\\*])\\s+([A-Z])", "$1\n$2 $3");
-        
-        // Add spacing before section headers (capitalized text ending with colon)
-        // But only if it's a reasonable header length (5-50 chars)
-        message = message.replaceAll("([^\\n])\n([A-Z][^:\\n]{4,49}:)", "$1\n\n$2");
-        
-        // Add line break before "The formula is:" or similar patterns
-        message = message.replaceAll("([^\\n])(The formula [^\\n]{0,20}:)", "$1\n\n$2");
-        
-        // Keep formulas on single lines - remove line breaks within mathematical expressions
-        // This fixes the broken formula display
-        message = message.replaceAll("(\\bformula[^:]{0,20}:)\\s*\\n+\\s*([^\\n]+)", "$1 $2");
-        
-        // Clean up leading/trailing whitespace on each line
-        message = message.replaceAll("(?m)^[ \\t]+", "");
-        message = message.replaceAll("(?m)[ \\t]+$", "");
-        
-        // Clean up any leading/trailing whitespace
-        message = message.trim();
-        
-        return message;
     }
 
     @Override
@@ -113,40 +150,40 @@ public class Message_RecyclerViewAdapter extends RecyclerView.Adapter<Message_Re
     }
 
     /**
-     * updateBotMessage: updates / inserts message on behalf of Bot
+     * updateBotMessage: appends streamed text to the last bot message, or inserts a new one
      *
-     * @param bot_message message to update or insert
-     * @return newly added message
+     * @param bot_message text to append or insert
      */
-    public String updateBotMessage(String bot_message) {
-        boolean lastMessageFromBot = false;
-        ChatMessage lastMessage;
-
-        if (messages.size() > 1) {
-            lastMessage = messages.get(messages.size() - 1);
+    public void updateBotMessage(String bot_message) {
+        if (!messages.isEmpty()) {
+            ChatMessage lastMessage = messages.get(messages.size() - 1);
             if (lastMessage.mSender == MessageSender.BOT) {
-                lastMessageFromBot = true;
+                lastMessage.append(bot_message);
+                return;
             }
-        } else {
-            addMessage(new ChatMessage(bot_message, MessageSender.BOT));
         }
+        addMessage(new ChatMessage(bot_message, MessageSender.BOT));
+    }
 
-        if (lastMessageFromBot) {
-            messages.get(messages.size() - 1).mMessage = messages.get(messages.size() - 1).mMessage + bot_message;
-        } else {
-            addMessage(new ChatMessage(bot_message, MessageSender.BOT));
-        }
-        return messages.get(messages.size() - 1).mMessage;
+    /**
+     * Add an empty bot message for an answer to stream into. It counts as streaming until it
+     * is frozen, so the window keeps it in memory.
+     */
+    public ChatMessage addStreamingBotMessage() {
+        ChatMessage msg = new ChatMessage("", MessageSender.BOT);
+        msg.append("");  // Switches to the growable buffer
+        addMessage(msg);
+        return msg;
     }
-    
+
     /**
-     * Get the last bot message for conversation history
+     * Get the last bot message for conversation history (not copied)
      */
-    public String getLastBotMessage() {
+    public CharSequence getLastBotMessage() {
         if (messages.size() > 0) {
             ChatMessage lastMessage = messages.get(messages.size() - 1);
             if (lastMessage.mSender == MessageSender.BOT) {
-                return lastMessage.mMessage;
+                return lastMessage.getText();
             }
         }
         return "";
@@ -0,0 +1,223 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * OcrPipeline - Decodes images at the resolution OCR needs and recognizes their text
+ *
+ * - Images are decoded with inSampleSize chosen from their bounds, so the longest side is at
+ *   most MAX_OCR_SIDE: a 12 MP photo decodes to ~12 MB instead of ~48 MB
+ * - Decoded bitmaps are returned to a small pool and reused as inBitmap for the next image
+ * - One ML Kit recognizer serves the whole app
+ * - Results are delivered through a CompletableFuture; no thread waits for ML Kit. The future
+ *   is completed on ML Kit's own thread, not a shared pool, so a caller that blocks on it from
+ *   a pool thread (PdfTextExtractor) cannot starve its own completion.
+ */
+public class OcrPipeline {
+
+    private static final String TAG = "OcrPipeline";
+    // ML Kit needs ~16-24 px per character; 2048 keeps small print on a full page readable
+    static final int MAX_OCR_SIDE = 2048;
+    private static final int POOL_SIZE = 2;
+    // Listeners only complete a future; run them where ML Kit finishes instead of queueing them
+    private static final Executor DIRECT = Runnable::run;
+
+    private static OcrPipeline instance;
+
+    private final ContentResolver contentResolver;
+    private final TextRecognizer recognizer;
+    private final ArrayDeque<Bitmap> bitmapPool = new ArrayDeque<>(POOL_SIZE);
+
+    public static synchronized OcrPipeline get(Context context) {
+        if (instance == null) {
+            instance = new OcrPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private OcrPipeline(Context context) {
+        contentResolver = context.getContentResolver();
+        recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+    }
+
+    /**
+     * Decode an image on the I/O pool and recognize its text
+     */
+    public CompletableFuture<Result> recognize(Uri uri) {
+        return CompletableFuture
+                .supplyAsync(() -> decode(uri), AppExecutors.get().io())
+                .thenCompose(this::recognizeDecoded);
+    }
+
+    /**
+     * Recognize the text of a bitmap the caller owns (e.g. a rendered PDF page)
+     */
+    public CompletableFuture<Result> recognize(Bitmap bitmap) {
+        return recognize(bitmap, bitmap.getWidth(), bitmap.getHeight(), false);
+    }
+
+    private CompletableFuture<Result> recognizeDecoded(Decoded decoded) {
+        return recognize(decoded.bitmap, decoded.width, decoded.height, true);
+    }
+
+    private CompletableFuture<Result> recognize(Bitmap bitmap, int width, int height, boolean pooled) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        Tracer.Span span = Tracer.begin("ocr", "recognize");
+        span.setDetail(bitmap.getWidth() + "x" + bitmap.getHeight());
+        recognizer.process(InputImage.fromBitmap(bitmap, 0))
+                .addOnSuccessListener(DIRECT, text -> {
+                    span.end();
+                    if (pooled) {
+                        release(bitmap);
+                    }
+                    future.complete(new Result(text.getText(), text.getTextBlocks().size(), width, height));
+                })
+                .addOnFailureListener(DIRECT, e -> {
+                    span.end();
+                    if (pooled) {
+                        release(bitmap);
+                    }
+                    future.completeExceptionally(e);
+                });
+        return future;
+    }
+
+    /**
+     * Decode with the smallest power-of-two sample size that brings the longest side down to
+     * MAX_OCR_SIDE, reusing a pooled bitmap when one is large enough
+     */
+    private Decoded decode(Uri uri) {
+        try (Tracer.Span span = Tracer.begin("ocr", "decodeImage")) {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            try (InputStream input = contentResolver.openInputStream(uri)) {
+                BitmapFactory.decodeStream(input, null, bounds);
+            }
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                throw new IOException("Unable to load image for analysis.");
+            }
+
+            int sampleSize = 1;
+            while (Math.max(bounds.outWidth, bounds.outHeight) / sampleSize > MAX_OCR_SIDE) {
+                sampleSize *= 2;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            int targetWidth = (bounds.outWidth + sampleSize - 1) / sampleSize;
+            int targetHeight = (bounds.outHeight + sampleSize - 1) / sampleSize;
+            options.inBitmap = acquire(targetWidth * targetHeight * 4);
+
+            Bitmap bitmap;
+            try {
+                bitmap = decodeStream(uri, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap could not be reused for this image
+                options.inBitmap = null;
+                bitmap = decodeStream(uri, options);
+            }
+            if (bitmap == null) {
+                throw new IOException("Unable to load image for analysis.");
+            }
+            span.setDetail(bounds.outWidth + "x" + bounds.outHeight + " / " + sampleSize
+                    + (options.inBitmap != null ? ", reused" : ""));
+            return new Decoded(bitmap, bounds.outWidth, bounds.outHeight);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream input = contentResolver.openInputStream(uri)) {
+            return BitmapFactory.decodeStream(input, null, options);
+        }
+    }
+
+    private synchronized Bitmap acquire(int byteCount) {
+        Iterator<Bitmap> it = bitmapPool.iterator();
+        while (it.hasNext()) {
+            Bitmap bitmap = it.next();
+            if (bitmap.getAllocationByteCount() >= byteCount) {
+                it.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void release(Bitmap bitmap) {
+        if (bitmap.isMutable() && !bitmap.isRecycled() && bitmapPool.size() < POOL_SIZE) {
+            bitmapPool.push(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Drop pooled bitmaps, e.g. when the screen that used OCR goes away
+     */
+    public synchronized void trimMemory() {
+        for (Bitmap bitmap : bitmapPool) {
+            bitmap.recycle();
+        }
+        if (!bitmapPool.isEmpty()) {
+            Log.d(TAG, "Released " + bitmapPool.size() + " pooled bitmaps");
+        }
+        bitmapPool.clear();
+    }
+
+    private static final class Decoded {
+        final Bitmap bitmap;
+        final int width;  // Original image size, before sampling
+        final int height;
+
+        Decoded(Bitmap bitmap, int width, int height) {
+            this.bitmap = bitmap;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Result - Recognized text of one image
+     */
+    public static final class Result {
+        public final String text;
+        public final int blockCount;
+        public final int width;  // Original image size
+        public final int height;
+
+        Result(String text, int blockCount, int width, int height) {
+            this.text = text != null ? text : "";
+            this.blockCount = blockCount;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean hasText() {
+            return !text.trim().isEmpty();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PagedMessageSource - Keeps a bounded window of a chat session's messages in memory
+ *
+ * The window is the message list shown by the adapter and always covers whole pages of
+ * ChatSessionManager.PAGE_SIZE messages (the newest page may be partial). Opening a session
+ * loads only the newest page(s); older pages are read as the user scrolls up, and pages
+ * furthest from the visible area are dropped once MAX_WINDOW_PAGES are loaded.
+ *
+ * New messages are only ever added at the end of the session, so callers must call
+ * ensureTail() before adding a message. Only pages that changed are written on save.
+ *
+ * Page files are read and written on the I/O pool, one at a time in the order they were
+ * requested (see enqueuePageWork), so a read never sees a page that is being written and
+ * writes of the same page land in order. Writes take a copy of the page, so they are not
+ * affected by later changes to the window, and are not cancelled with the activity.
+ * All methods must be called on the main thread.
+ */
+public class PagedMessageSource {
+
+    private static final String TAG = "PagedMessageSource";
+    private static final int PAGE_SIZE = ChatSessionManager.PAGE_SIZE;
+    private static final int MAX_WINDOW_PAGES = 6;  // At most 300 messages in memory
+    private static final int PREFETCH_DISTANCE = 10;  // Load the next page this many rows before the edge
+
+    private final ChatSessionManager sessionManager;
+    private final List<ChatMessage> window;
+    private final RecyclerView.Adapter<?> adapter;
+    private final TaskScope taskScope;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private String sessionId;
+    private int firstIndex = 0;  // Session index of window.get(0)
+    private int totalCount = 0;  // Messages in the session, as of the last sync
+    private boolean atTail = true;  // Window ends with the newest message
+    private boolean loading = false;
+    private boolean tailLoading = false;  // Tail pages are being read; messages added meanwhile follow them
+    private List<ChatMessage> savedTail;  // Newest page while scrolled away from it, so ensureTail() need not read it
+    private CompletableFuture<Void> pageWork = CompletableFuture.completedFuture(null);
+    private int generation = 0;  // Bumped on open(), so loads for a previous session are dropped
+    private final TreeSet<Integer> dirtyPages = new TreeSet<>();
+
+    public PagedMessageSource(ChatSessionManager sessionManager, List<ChatMessage> window,
+                              RecyclerView.Adapter<?> adapter, TaskScope taskScope) {
+        this.sessionManager = sessionManager;
+        this.window = window;
+        this.adapter = adapter;
+        this.taskScope = taskScope;
+    }
+
+    /**
+     * Show a session: the window is replaced with its newest messages
+     */
+    public void open(ChatSession session) {
+        open(session, null);
+    }
+
+    /**
+     * Show a session and run onOpened on the main thread once its newest messages are in the
+     * window (not at all if another session is opened first)
+     */
+    public void open(ChatSession session, Runnable onOpened) {
+        generation++;
+        loading = false;
+        dirtyPages.clear();
+        savedTail = null;
+        sessionId = session.getSessionId();
+        totalCount = session.getMessageCount();
+        loadTailWindow(onOpened);
+    }
+
+    /**
+     * Make sure the window ends with the newest message, so a message can be added
+     */
+    public void ensureTail() {
+        if (atTail) {
+            return;
+        }
+        generation++;
+        loading = false;
+        flushDirtyPages();
+        if (savedTail != null) {
+            // The newest page was dropped while scrolling up; it is still in memory
+            window.clear();
+            window.addAll(savedTail);
+            firstIndex = totalCount - savedTail.size();
+            savedTail = null;
+            atTail = true;
+            adapter.notifyDataSetChanged();
+        } else {
+            loadTailWindow(null);
+        }
+    }
+
+    /**
+     * Empty the window and read the newest page(s) on the I/O pool. Messages added before the
+     * read finishes stay at the end of the window, after the loaded ones.
+     */
+    private void loadTailWindow(Runnable onLoaded) {
+        window.clear();
+        atTail = true;
+        tailLoading = false;
+        adapter.notifyDataSetChanged();
+        if (totalCount == 0) {
+            firstIndex = 0;
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+            return;
+        }
+        // Newest page, plus the one before it if the newest page is nearly empty
+        int lastPage = (totalCount - 1) / PAGE_SIZE;
+        int firstPage = (totalCount - lastPage * PAGE_SIZE < PAGE_SIZE / 2) ? Math.max(0, lastPage - 1) : lastPage;
+        firstIndex = firstPage * PAGE_SIZE;
+        tailLoading = true;
+        loading = true;
+        final int loadGeneration = generation;
+        final String loadSessionId = sessionId;
+        enqueuePageWork(() -> {
+            List<ChatMessage> messages = new ArrayList<>();
+            for (int page = firstPage; page <= lastPage; page++) {
+                messages.addAll(sessionManager.loadPage(loadSessionId, page));
+            }
+            mainHandler.post(() -> {
+                if (loadGeneration != generation || taskScope.isClosed()) {
+                    return;  // Another session was opened meanwhile
+                }
+                tailLoading = false;
+                loading = false;
+                // Guard against pages shorter than the recorded count (e.g. an interrupted save)
+                totalCount = firstIndex + messages.size();
+                window.addAll(0, messages);
+                adapter.notifyItemRangeInserted(0, messages.size());
+                Log.d(TAG, "Opened " + loadSessionId + ": " + window.size() + " of " + totalCount + " messages loaded");
+                if (onLoaded != null) {
+                    onLoaded.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * Call from the RecyclerView scroll listener with the visible adapter positions
+     */
+    public void onVisibleRangeChanged(int firstVisible, int lastVisible) {
+        if (loading || sessionId == null) {
+            return;
+        }
+        if (firstVisible >= 0 && firstVisible <= PREFETCH_DISTANCE && firstIndex > 0) {
+            loadPage(firstIndex / PAGE_SIZE - 1, true);
+        } else if (!atTail && lastVisible >= window.size() - 1 - PREFETCH_DISTANCE) {
+            loadPage((firstIndex + window.size()) / PAGE_SIZE, false);
+        }
+    }
+
+    private void loadPage(int page, boolean older) {
+        loading = true;
+        final int loadGeneration = generation;
+        final String loadSessionId = sessionId;
+        enqueuePageWork(() -> {
+            List<ChatMessage> messages = sessionManager.loadPage(loadSessionId, page);
+            mainHandler.post(() -> {
+                if (loadGeneration != generation || taskScope.isClosed()) {
+                    return;  // Another session was opened meanwhile
+                }
+                loading = false;
+                if (older) {
+                    prependPage(messages);
+                } else {
+                    appendPage(messages);
+                }
+            });
+        });
+    }
+
+    private void prependPage(List<ChatMessage> messages) {
+        window.addAll(0, messages);
+        firstIndex -= messages.size();
+        adapter.notifyItemRangeInserted(0, messages.size());
+        if (pageCount() > MAX_WINDOW_PAGES) {
+            dropNewestPage();
+        }
+    }
+
+    private void appendPage(List<ChatMessage> messages) {
+        int start = window.size();
+        window.addAll(messages);
+        adapter.notifyItemRangeInserted(start, messages.size());
+        atTail = firstIndex + window.size() >= totalCount;
+        if (atTail) {
+            savedTail = null;
+        }
+        if (pageCount() > MAX_WINDOW_PAGES) {
+            dropOldestPage();
+        }
+    }
+
+    private void dropOldestPage() {
+        flushDirtyPages();
+        window.subList(0, PAGE_SIZE).clear();
+        firstIndex += PAGE_SIZE;
+        adapter.notifyItemRangeRemoved(0, PAGE_SIZE);
+    }
+
+    private void dropNewestPage() {
+        int lastPageStart = ((firstIndex + window.size() - 1) / PAGE_SIZE) * PAGE_SIZE - firstIndex;
+        if (atTail && hasStreaming(lastPageStart)) {
+            return;  // A turn is pending: keep the tail its answer streams into in the window
+        }
+        syncTail();
+        flushDirtyPages();
+        int removed = window.size() - lastPageStart;
+        if (atTail) {
+            savedTail = new ArrayList<>(window.subList(lastPageStart, window.size()));
+        }
+        window.subList(lastPageStart, window.size()).clear();
+        atTail = false;
+        adapter.notifyItemRangeRemoved(lastPageStart, removed);
+    }
+
+    private boolean hasStreaming(int from) {
+        for (int i = Math.max(0, from); i < window.size(); i++) {
+            if (window.get(i).isStreaming()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int pageCount() {
+        if (window.isEmpty()) {
+            return 0;
+        }
+        return (firstIndex + window.size() - 1) / PAGE_SIZE - firstIndex / PAGE_SIZE + 1;
+    }
+
+    /**
+     * Pick up messages added at the end of the window and mark their pages for saving.
+     * The newest page is always marked, since a streamed answer changes in place.
+     */
+    private void syncTail() {
+        if (!atTail || tailLoading || window.isEmpty()) {
+            return;
+        }
+        int newCount = firstIndex + window.size();
+        int fromPage = Math.min(totalCount, newCount - 1) / PAGE_SIZE;
+        for (int page = Math.max(fromPage, firstIndex / PAGE_SIZE); page <= (newCount - 1) / PAGE_SIZE; page++) {
+            dirtyPages.add(page);
+        }
+        totalCount = newCount;
+    }
+
+    /**
+     * Queue writes of the changed pages, each a copy of the page as it is now
+     */
+    private void flushDirtyPages() {
+        final String saveSessionId = sessionId;
+        for (int page : dirtyPages) {
+            int start = page * PAGE_SIZE - firstIndex;
+            int end = Math.min(window.size(), start + PAGE_SIZE);
+            if (start < 0 || start >= end) {
+                continue;  // Not in the window; pages are flushed before they are dropped
+            }
+            List<ChatMessage> snapshot = new ArrayList<>(end - start);
+            for (ChatMessage message : window.subList(start, end)) {
+                snapshot.add(new ChatMessage(message.getMessage(), message.mSender));
+            }
+            enqueuePageWork(() -> sessionManager.savePage(saveSessionId, page, snapshot));
+        }
+        dirtyPages.clear();
+    }
+
+    /**
+     * Run page file work on the I/O pool after all page work queued before it
+     */
+    private void enqueuePageWork(Runnable work) {
+        pageWork = pageWork.thenRunAsync(work, AppExecutors.get().io())
+                .exceptionally(e -> {
+                    Log.e(TAG, "Page I/O failed: " + e.getMessage(), e);
+                    return null;
+                });
+    }
+
+    /**
+     * Write changed pages and the message count into the session's storage
+     */
+    public void save(ChatSession session) {
+        if (sessionId == null || !sessionId.equals(session.getSessionId())) {
+            return;
+        }
+        syncTail();
+        flushDirtyPages();
+        session.setMessageCount(totalCount);
+    }
+
+    /**
+     * Messages currently in memory (the adapter's list)
+     */
+    public List<ChatMessage> getWindow() {
+        return window;
+    }
+
+    public int getTotalCount() {
+        if (tailLoading) {
+            return totalCount + window.size();
+        }
+        return atTail ? firstIndex + window.size() : totalCount;
+    }
+}
@@ -0,0 +1,172 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.tom_roush.pdfbox.pdmodel.PDDocument;
+import com.tom_roush.pdfbox.pdmodel.common.PDRectangle;
+import com.tom_roush.pdfbox.rendering.ImageType;
+import com.tom_roush.pdfbox.rendering.PDFRenderer;
+import com.tom_roush.pdfbox.text.PDFTextStripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PdfTextExtractor - Extracts a PDF's text page by page into a PdfTextNormalizer
+ *
+ * Shared by the chat, quiz and flashcard screens. Pages are normalized as they are extracted,
+ * so the whole raw text is never held at once, and extraction stops early once enough text
+ * for the caller's context limit has been produced.
+ *
+ * Pages without a text layer (scans) are rendered and recognized with OcrPipeline. Rendering
+ * happens on the calling thread, one page at a time, while up to MAX_OCR_IN_FLIGHT rendered
+ * pages are recognized; page texts still reach the normalizer in page order.
+ *
+ * Extraction blocks until the recognized pages are back. Call it from the I/O pool or another
+ * thread that can wait, never from the CPU pool or the main thread.
+ */
+public final class PdfTextExtractor {
+
+    private static final String TAG = "PdfTextExtractor";
+
+    /** Read every page */
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    // Extra chars read past the limit, so the kept prefix is unaffected by the lines buffered
+    // at the end of the normalizer (hyphen joins, formula blocks)
+    private static final int LIMIT_MARGIN = 256;
+
+    // A page with fewer visible chars than this has no usable text layer (scan, page number only)
+    private static final int MIN_TEXT_LAYER_CHARS = 24;
+    // 200 DPI keeps body text at ~25 px per line for ML Kit; pages are capped to MAX_OCR_SIDE
+    private static final float OCR_DPI = 200f;
+    private static final int MAX_OCR_IN_FLIGHT = 2;  // Rendered bitmaps alive at once (~13 MB each)
+
+    private PdfTextExtractor() {
+    }
+
+    /**
+     * Extract and normalize text, stopping after the page that takes it past charLimit.
+     * The returned text may be longer than charLimit; callers cut it to size.
+     */
+    public static Result extract(InputStream input, int charLimit) throws IOException {
+        return extract(input, charLimit, null);
+    }
+
+    /**
+     * Extract and normalize text, recognizing pages without a text layer with ocr (if not null)
+     */
+    public static Result extract(InputStream input, int charLimit, OcrPipeline ocr) throws IOException {
+        try (PDDocument document = PDDocument.load(input)) {
+            int pageCount = document.getNumberOfPages();
+            PDFTextStripper stripper = new PDFTextStripper();
+            PDFRenderer renderer = ocr != null ? new PDFRenderer(document) : null;
+            PdfTextNormalizer normalizer = new PdfTextNormalizer();
+            ArrayDeque<CompletableFuture<String>> pages = new ArrayDeque<>();
+            long stopAt = (long) charLimit + LIMIT_MARGIN;
+
+            int pagesRead = 0;
+            int ocrPages = 0;
+            while (pagesRead < pageCount && normalizer.length() < stopAt) {
+                pagesRead++;
+                stripper.setStartPage(pagesRead);
+                stripper.setEndPage(pagesRead);
+                String text = stripper.getText(document);
+                if (renderer != null && visibleChars(text) < MIN_TEXT_LAYER_CHARS) {
+                    pages.add(recognizePage(document, renderer, pagesRead - 1, ocr));
+                    ocrPages++;
+                } else {
+                    pages.add(CompletableFuture.completedFuture(text));
+                }
+
+                // Feed finished pages in order; wait for the oldest scan when too many are running
+                while (!pages.isEmpty() && (pages.peek().isDone() || running(pages) >= MAX_OCR_IN_FLIGHT)) {
+                    normalizer.append(pages.poll().join());
+                }
+            }
+            while (!pages.isEmpty()) {
+                normalizer.append(pages.poll().join());
+            }
+            if (ocrPages > 0) {
+                Log.i(TAG, "Recognized " + ocrPages + " of " + pagesRead + " pages without a text layer");
+            }
+            return new Result(normalizer.finish(), pageCount, pagesRead, ocrPages);
+        }
+    }
+
+    /**
+     * Render one page at OCR_DPI (less for very large pages) and start recognizing it. Never
+     * completes exceptionally; a page that cannot be recognized contributes no text.
+     */
+    private static CompletableFuture<String> recognizePage(PDDocument document, PDFRenderer renderer,
+                                                           int pageIndex, OcrPipeline ocr) {
+        Bitmap bitmap;
+        try (Tracer.Span span = Tracer.begin("ocr", "renderPage")) {
+            PDRectangle box = document.getPage(pageIndex).getCropBox();
+            float longestSide = Math.max(box.getWidth(), box.getHeight());  // In points, 72 per inch
+            float scale = Math.min(OCR_DPI / 72f, OcrPipeline.MAX_OCR_SIDE / longestSide);
+            bitmap = renderer.renderImage(pageIndex, scale, ImageType.RGB);
+            span.setDetail("page " + (pageIndex + 1) + ", " + bitmap.getWidth() + "x" + bitmap.getHeight());
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error rendering page " + (pageIndex + 1) + ": " + e.getMessage());
+            return CompletableFuture.completedFuture("");
+        }
+        return ocr.recognize(bitmap).handle((result, error) -> {
+            bitmap.recycle();
+            if (error != null) {
+                Log.e(TAG, "OCR failed for page " + (pageIndex + 1) + ": " + error.getMessage());
+                return "";
+            }
+            return result.text + "\n\n";
+        });
+    }
+
+    private static int running(ArrayDeque<CompletableFuture<String>> pages) {
+        int count = 0;
+        for (CompletableFuture<String> page : pages) {
+            if (!page.isDone()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int visibleChars(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Result - Normalized text and how much of the document it covers
+     */
+    public static final class Result {
+        public final String text;
+        public final int pageCount;
+        public final int pagesRead;
+        public final int ocrPages;  // Pages read without a text layer and recognized instead
+
+        Result(String text, int pageCount, int pagesRead, int ocrPages) {
+            this.text = text;
+            this.pageCount = pageCount;
+            this.pagesRead = pagesRead;
+            this.ocrPages = ocrPages;
+        }
+
+        /** Whether extraction stopped before the last page */
+        public boolean isPartial() {
+            return pagesRead < pageCount;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PdfTextNormalizer - Cleans up text extracted from PDFs in a single streaming pass
+ *
+ * - Normalizes line endings and collapses 3+ line breaks into 2
+ * - Trims spaces at the start and end of lines, collapses runs of spaces
+ * - Sets formula lines (e.g. "F = m a") and short section headers apart with blank lines
+ * - Joins words hyphenated across line ends
+ *
+ * Text can be appended in pieces (e.g. one page at a time as it is extracted). Each character
+ * is scanned a constant number of times; only the current line and the few lines a formula can
+ * span (one that ends in "=" continues on the next line) are buffered, instead of one
+ * full-document copy per rule.
+ */
+public class PdfTextNormalizer {
+
+    private static final int FORMULA_MAX_PREFIX = 5;  // Chars allowed before the formula's left side
+    private static final int HEADER_MIN_LENGTH = 3;
+    private static final int HEADER_MAX_LENGTH = 41;
+
+    // Results of the formula lookahead besides a line index
+    private static final int NO_MATCH = -1;
+    private static final int NEED_MORE_LINES = -2;
+
+    private final StringBuilder out;
+    private final StringBuilder line = new StringBuilder(256);  // Current raw line
+    private final List<String> pendingLines = new ArrayList<>();  // Trimmed lines awaiting the formula rule
+    private boolean lastWasCarriageReturn = false;
+    private int consecutiveNewlines = 0;  // Raw line breaks in a row, for the 3+ -> 2 rule
+    private boolean firstLine = true;
+    private boolean lastLineJoinable = false;  // Last emitted line ends with '-' and nothing after it
+    private boolean finished = false;
+
+    public PdfTextNormalizer() {
+        this(4096);
+    }
+
+    public PdfTextNormalizer(int expectedLength) {
+        out = new StringBuilder(expectedLength);
+    }
+
+    /**
+     * Normalize a complete text in one call
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        PdfTextNormalizer normalizer = new PdfTextNormalizer(text.length());
+        normalizer.append(text);
+        return normalizer.finish();
+    }
+
+    /**
+     * Feed the next piece of text. Pieces may split lines anywhere.
+     */
+    public PdfTextNormalizer append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                lastWasCarriageReturn = true;
+                endLine();
+            } else if (c == '\n') {
+                if (lastWasCarriageReturn) {
+                    lastWasCarriageReturn = false;  // Second half of "\r\n"
+                    continue;
+                }
+                endLine();
+            } else {
+                lastWasCarriageReturn = false;
+                line.append(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Length of the normalized text so far (excluding the few lines still buffered)
+     */
+    public int length() {
+        return out.length();
+    }
+
+    /**
+     * Flush the buffered lines and return the normalized, trimmed text
+     */
+    public String finish() {
+        if (line.length() > 0) {
+            pendingLines.add(trim(line));
+            line.setLength(0);
+        }
+        finished = true;
+        drain();
+        int start = 0;
+        int end = out.length();
+        while (start < end && out.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && out.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return out.substring(start, end);
+    }
+
+    private void endLine() {
+        if (line.length() == 0 && consecutiveNewlines > 0) {
+            // Empty line inside a run of line breaks, of which at most 2 are kept
+            consecutiveNewlines++;
+            if (consecutiveNewlines <= 2) {
+                pendingLines.add("");
+            }
+        } else {
+            pendingLines.add(trim(line));
+            consecutiveNewlines = 1;
+        }
+        line.setLength(0);
+        drain();
+    }
+
+    private static String trim(CharSequence raw) {
+        int start = 0;
+        int end = raw.length();
+        while (start < end && isSpace(raw.charAt(start))) {
+            start++;
+        }
+        while (end > start && isSpace(raw.charAt(end - 1))) {
+            end--;
+        }
+        return raw.subSequence(start, end).toString();
+    }
+
+    /**
+     * Emit buffered lines whose formula status is known
+     */
+    private void drain() {
+        while (!pendingLines.isEmpty()) {
+            int blockEnd = findFormulaEnd();
+            if (blockEnd == NEED_MORE_LINES) {
+                return;
+            }
+            if (blockEnd == NO_MATCH) {
+                emitLine(pendingLines.remove(0), 0, 0);
+                continue;
+            }
+            // Lines 0..blockEnd form one formula, set apart as a block
+            for (int i = 0; i <= blockEnd; i++) {
+                emitLine(pendingLines.get(i), i == 0 ? 1 : 0, i == blockEnd ? 1 : 0);
+            }
+            pendingLines.subList(0, blockEnd + 1).clear();
+        }
+    }
+
+    /**
+     * Whether a formula ("x = 2y + 1") starts at the first buffered line, and on which line it
+     * ends: up to 5 leading chars, a run of letters, digits or brackets, a comparison operator
+     * and more text. Whitespace around the operator may include line breaks, so "x =" continues
+     * on the next non-empty line. Candidates are tried in the order a backtracking regex would.
+     */
+    private int findFormulaEnd() {
+        String first = pendingLines.get(0);
+        int length = first.length();
+        for (int prefix = Math.min(FORMULA_MAX_PREFIX, length - 1); prefix >= 0; prefix--) {
+            if (!isOperand(first.charAt(prefix))) {
+                continue;
+            }
+            int runEnd = prefix;
+            while (runEnd < length && isOperand(first.charAt(runEnd))) {
+                runEnd++;
+            }
+            int op = runEnd;
+            while (op < length && isWhitespace(first.charAt(op))) {
+                op++;
+            }
+
+            int end;
+            if (op < length) {
+                if (!isOperator(first.charAt(op))) {
+                    continue;
+                }
+                end = op < length - 1 ? 0 : nextNonEmptyLine(1);
+            } else {
+                // Left side ends the line, the operator may start the next one
+                int next = nextNonEmptyLine(1);
+                if (next < 0) {
+                    end = next;
+                } else if (!isOperator(pendingLines.get(next).charAt(0))) {
+                    continue;
+                } else {
+                    end = pendingLines.get(next).length() > 1 ? next : nextNonEmptyLine(next + 1);
+                }
+            }
+            if (end == NEED_MORE_LINES) {
+                return NEED_MORE_LINES;
+            }
+            if (end != NO_MATCH) {
+                return end;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private int nextNonEmptyLine(int from) {
+        for (int i = from; i < pendingLines.size(); i++) {
+            if (!pendingLines.get(i).isEmpty()) {
+                return i;
+            }
+        }
+        return finished ? NO_MATCH : NEED_MORE_LINES;
+    }
+
+    private void emitLine(String text, int formulaBefore, int formulaAfter) {
+        int header = isHeaderLine(text) ? 1 : 0;
+        int before = formulaBefore + header;
+        int after = formulaAfter + header;
+
+        // Join "hyphen-\nated" words: only across a plain line break into a lowercase letter
+        if (!firstLine) {
+            if (lastLineJoinable && before == 0 && !text.isEmpty() && isLowercase(text.charAt(0))) {
+                out.setLength(out.length() - 1);  // Drop the hyphen
+            } else {
+                out.append('\n');
+            }
+        }
+        firstLine = false;
+
+        appendNewlines(before);
+        int spaceRun = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isSpace(c)) {
+                spaceRun++;
+                if (spaceRun == 1) {
+                    out.append(c);
+                } else if (spaceRun == 2) {
+                    out.setCharAt(out.length() - 1, ' ');  // Runs of 2+ become a single space
+                }
+            } else {
+                spaceRun = 0;
+                out.append(c);
+            }
+        }
+        appendNewlines(after);
+        lastLineJoinable = after == 0 && out.length() > 0 && out.charAt(out.length() - 1) == '-';
+    }
+
+    private void appendNewlines(int count) {
+        for (int i = 0; i < count; i++) {
+            out.append('\n');
+        }
+    }
+
+    /**
+     * A short line starting with a capital letter and without sentence punctuation
+     */
+    private static boolean isHeaderLine(String text) {
+        int length = text.length();
+        if (length < HEADER_MIN_LENGTH || length > HEADER_MAX_LENGTH || !isUppercase(text.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '!' || c == '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+    }
+
+    private static boolean isOperator(char c) {
+        return c == '=' || c == '≈' || c == '≠' || c == '<' || c == '>' || c == '≤' || c == '≥';
+    }
+
+    private static boolean isOperand(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '(' || c == ')' || c == '[' || c == ']';
+    }
+
+    private static boolean isUppercase(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLowercase(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+}
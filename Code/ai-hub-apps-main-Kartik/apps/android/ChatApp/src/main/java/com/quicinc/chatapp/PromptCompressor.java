@@ -0,0 +1,241 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PromptCompressor - Shrinks document text to a target share of its length before it goes into
+ * a prompt, dropping what carries the least information, so prefill has fewer tokens to process
+ *
+ * Two passes:
+ * - Page furniture is removed: page numbers ("Page 3", "3 of 10", and bare numbers on their own
+ *   line that count up like page numbers), running headers and footers (short lines repeated
+ *   MIN_REPEATS times or more), citation markers after a space or at the end of a line, URLs
+ *   and dot leaders
+ * - If the text is still over the target, sentences are ranked by self-information, the mean of
+ *   -log2(frequency in the text) over their words with stopwords counting zero, plus a bonus per
+ *   word shared with the question. The best are kept up to the target and put back in document
+ *   order.
+ *
+ * Text shorter than MIN_COMPRESS_CHARS only loses its furniture: too few sentences are left to
+ * rank, and dropping one of them loses more than it saves.
+ *
+ * Stateless and cheap (one pass to count words, one to score); safe on any thread.
+ */
+public final class PromptCompressor {
+
+    // Share of the text kept: a 40% cut, in the 30-50% range that keeps answers grounded
+    public static final double DEFAULT_KEEP_RATIO = 0.6;
+
+    private static final int MIN_COMPRESS_CHARS = 600;
+    private static final int MIN_REPEATS = 3;
+    private static final int MAX_FURNITURE_LINE = 80;
+    private static final int MIN_SENTENCE_WORDS = 4;  // Shorter fragments score as if this long
+    private static final double QUERY_WORD_BONUS = 2.0;
+
+    // "Page 3", "page 3 of 10", "3 of 10", "3/10", "- 3 -"
+    private static final Pattern PAGE_LABEL = Pattern.compile(
+            "(?i)[-–\\s]*(page\\s+\\d{1,4}(\\s*(of|/)\\s*\\d{1,4})?|\\d{1,4}\\s*(of|/)\\s*\\d{1,4}"
+            + "|[-–]\\s*\\d{1,4}\\s*[-–])[-–\\s]*");
+    private static final Pattern BARE_NUMBER = Pattern.compile("\\d{1,4}");
+    // "[3]", "[1, 4]", "[2-5]" after a space or at the end of a line, not "a[0]"
+    private static final Pattern CITATION = Pattern.compile(
+            "(?m)[ \\t]\\[\\d+(\\s*[,–-]\\s*\\d+)*\\]|\\[\\d+(\\s*[,–-]\\s*\\d+)*\\](?=[ \\t]*$)");
+    private static final Pattern URL = Pattern.compile("https?://\\S+|www\\.\\S+");
+    private static final Pattern LEADER = Pattern.compile("[ ]?[._·]{4,}[ ]?");
+    private static final Pattern SPACES = Pattern.compile("[ \\t]{2,}");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{Nd}]+");
+    private static final Pattern LETTER = Pattern.compile("\\p{L}");
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "of", "in", "on", "at", "to", "for", "from", "by", "with", "and", "or",
+            "but", "not", "no", "is", "are", "was", "were", "be", "been", "being", "has", "have",
+            "had", "do", "does", "did", "can", "could", "would", "should", "will", "may", "might",
+            "this", "that", "these", "those", "it", "its", "as", "into", "about", "such", "so",
+            "than", "then", "also", "which", "who", "what", "when", "where", "how", "there",
+            "their", "they", "we", "our", "you", "your", "he", "she", "his", "her", "i", "if"));
+
+    private PromptCompressor() {
+    }
+
+    /**
+     * The text compressed to at most keepRatio of its length
+     *
+     * @param query the question the text is for, or null; sentences sharing its words are kept
+     */
+    public static String compress(String text, double keepRatio, String query) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        try (Tracer.Span span = Tracer.begin("prompt", "compressContext")) {
+            String cleaned = removeFurniture(text);
+            int target = (int) (text.length() * keepRatio);
+            String compressed = cleaned.length() <= target || text.length() < MIN_COMPRESS_CHARS
+                    ? cleaned : keepInformativeSentences(cleaned, target, query);
+            span.setDetail(text.length() + " -> " + compressed.length() + " chars");
+            return compressed;
+        }
+    }
+
+    /**
+     * Drop page numbers, repeated header/footer lines and inline clutter
+     */
+    private static String removeFurniture(String text) {
+        String[] lines = text.split("\n", -1);
+        Map<String, Integer> repeats = new HashMap<>();
+        for (String line : lines) {
+            String key = line.trim();
+            if (!key.isEmpty() && key.length() <= MAX_FURNITURE_LINE) {
+                repeats.merge(key, 1, Integer::sum);
+            }
+        }
+
+        boolean[] pageNumbers = findBarePageNumbers(lines);
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String key = line.trim();
+            boolean repeated = repeats.getOrDefault(key, 0) >= MIN_REPEATS && LETTER.matcher(key).find();
+            if (!key.isEmpty() && (repeated || pageNumbers[i] || PAGE_LABEL.matcher(key).matches())) {
+                continue;
+            }
+            out.append(line).append('\n');
+        }
+        String cleaned = CITATION.matcher(out).replaceAll("");
+        cleaned = URL.matcher(cleaned).replaceAll("");
+        cleaned = LEADER.matcher(cleaned).replaceAll(" ");
+        cleaned = SPACES.matcher(cleaned).replaceAll(" ");
+        cleaned = BLANK_LINES.matcher(cleaned).replaceAll("\n\n");
+        return cleaned.trim();
+    }
+
+    /**
+     * Lines holding only a number, between blank lines, that continue or start a count by one
+     * with the next or previous such line: page numbers, unlike table cells and results, which
+     * sit next to other lines and do not count up
+     */
+    private static boolean[] findBarePageNumbers(String[] lines) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) {
+            boolean isolated = (i == 0 || lines[i - 1].trim().isEmpty())
+                    && (i == lines.length - 1 || lines[i + 1].trim().isEmpty());
+            if (isolated && BARE_NUMBER.matcher(lines[i].trim()).matches()) {
+                candidates.add(i);
+            }
+        }
+        boolean[] pageNumbers = new boolean[lines.length];
+        for (int c = 0; c + 1 < candidates.size(); c++) {
+            int line = candidates.get(c);
+            int next = candidates.get(c + 1);
+            if (Integer.parseInt(lines[next].trim()) == Integer.parseInt(lines[line].trim()) + 1) {
+                pageNumbers[line] = true;
+                pageNumbers[next] = true;
+            }
+        }
+        return pageNumbers;
+    }
+
+    /**
+     * Keep the most informative sentences up to target chars, in document order, keeping
+     * paragraph breaks between the ones left
+     */
+    private static String keepInformativeSentences(String text, int target, String query) {
+        List<String> sentences = new ArrayList<>();
+        List<Integer> paragraphOf = new ArrayList<>();
+        String[] paragraphs = text.split("\n\n");
+        for (int p = 0; p < paragraphs.length; p++) {
+            for (String sentence : SENTENCE_END.split(paragraphs[p].trim())) {
+                if (!sentence.isEmpty()) {
+                    sentences.add(sentence);
+                    paragraphOf.add(p);
+                }
+            }
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        int totalWords = 0;
+        for (String sentence : sentences) {
+            Matcher words = WORD.matcher(sentence.toLowerCase(Locale.ROOT));
+            while (words.find()) {
+                frequencies.merge(words.group(), 1, Integer::sum);
+                totalWords++;
+            }
+        }
+        Set<String> queryWords = new HashSet<>();
+        if (query != null) {
+            Matcher words = WORD.matcher(query.toLowerCase(Locale.ROOT));
+            while (words.find()) {
+                if (!STOP_WORDS.contains(words.group())) {
+                    queryWords.add(words.group());
+                }
+            }
+        }
+
+        double[] scores = new double[sentences.size()];
+        Integer[] order = new Integer[sentences.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = score(sentences.get(i), frequencies, totalWords, queryWords);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        boolean[] keep = new boolean[sentences.size()];
+        int used = 0;
+        for (int i : order) {
+            int length = sentences.get(i).length() + 1;
+            if (used + length > target) {
+                continue;
+            }
+            keep[i] = true;
+            used += length;
+        }
+
+        StringBuilder out = new StringBuilder(used + paragraphs.length * 2);
+        int lastParagraph = -1;
+        for (int i = 0; i < sentences.size(); i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            if (out.length() > 0) {
+                out.append(paragraphOf.get(i) != lastParagraph ? "\n\n" : " ");
+            }
+            out.append(sentences.get(i));
+            lastParagraph = paragraphOf.get(i);
+        }
+        return out.toString();
+    }
+
+    private static double score(String sentence, Map<String, Integer> frequencies, int totalWords,
+                                Set<String> queryWords) {
+        Matcher words = WORD.matcher(sentence.toLowerCase(Locale.ROOT));
+        double information = 0;
+        int count = 0;
+        int shared = 0;
+        while (words.find()) {
+            String word = words.group();
+            count++;
+            if (STOP_WORDS.contains(word)) {
+                continue;
+            }
+            information += Math.log((double) totalWords / frequencies.get(word)) / Math.log(2);
+            if (queryWords.contains(word)) {
+                shared++;
+            }
+        }
+        return information / Math.max(MIN_SENTENCE_WORDS, count) + QUERY_WORD_BONUS * shared;
+    }
+}
@@ -0,0 +1,220 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * QuestionBank - Every valid quiz question generated for a document, so later quizzes can be
+ * served from it and the model is asked only for the shortfall
+ *
+ * Questions are kept per document hash with the difficulty they were generated at and their
+ * topic (as QuizResult derives it). take() prefers questions on the user's weak topics, then the
+ * ones served least recently, so consecutive quizzes rotate through the bank. Near-duplicates of
+ * banked questions (see ItemDeduplicator) are not added twice.
+ *
+ * Like the item history, the bank is stored outside DocumentStore so it outlives the cached
+ * document text. Thread-safe; get() and save() must not be called on the main thread.
+ */
+public class QuestionBank {
+
+    private static final String TAG = "QuestionBank";
+    private static final String BANK_DIR = "question_bank";
+    private static final int MAX_QUESTIONS = 500;  // Oldest are dropped beyond this
+
+    private static final Gson gson = new Gson();
+    private static final LruCache<String, QuestionBank> banks = new LruCache<>(8);
+
+    private final AtomicFile file;
+    private final Bank bank;
+    private boolean dirty = false;
+
+    private QuestionBank(AtomicFile file, Bank bank) {
+        this.file = file;
+        this.bank = bank;
+    }
+
+    /**
+     * The bank of a document (empty if none has been generated yet), loading it on first use.
+     * Screens and the background prefetch get the same instance, so neither overwrites the
+     * other's questions.
+     */
+    public static QuestionBank get(Context context, String documentHash) {
+        synchronized (banks) {
+            QuestionBank bank = banks.get(documentHash);
+            if (bank == null) {
+                bank = load(context, documentHash);
+                banks.put(documentHash, bank);
+            }
+            return bank;
+        }
+    }
+
+    private static QuestionBank load(Context context, String documentHash) {
+        AtomicFile file = new AtomicFile(new File(new File(context.getFilesDir(), BANK_DIR), documentHash + ".json"));
+        Bank bank = null;
+        if (file.getBaseFile().exists()) {
+            try (Reader reader = new InputStreamReader(file.openRead(), StandardCharsets.UTF_8)) {
+                bank = gson.fromJson(reader, Bank.class);
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading question bank: " + e.getMessage());
+            }
+        }
+        if (bank == null || bank.questions == null) {
+            bank = new Bank();
+        }
+        return new QuestionBank(file, bank);
+    }
+
+    /**
+     * Number of banked questions of a difficulty
+     */
+    public synchronized int count(String difficulty) {
+        int count = 0;
+        for (Entry entry : bank.questions) {
+            if (entry.difficulty.equalsIgnoreCase(difficulty)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Take up to count questions of a difficulty for a quiz and mark them served
+     *
+     * @param weakTopics topics to prefer (from WeakTopicsAnalyzer.getWeakTopics)
+     * @return the questions, possibly fewer than count
+     */
+    public synchronized List<QuizQuestion> take(String difficulty, int count, Set<String> weakTopics) {
+        List<Entry> matching = new ArrayList<>();
+        for (Entry entry : bank.questions) {
+            if (entry.difficulty.equalsIgnoreCase(difficulty)) {
+                matching.add(entry);
+            }
+        }
+        // Shuffle first so questions served equally long ago come out in a different order
+        Collections.shuffle(matching);
+        matching.sort((a, b) -> {
+            boolean aWeak = weakTopics.contains(a.topic);
+            boolean bWeak = weakTopics.contains(b.topic);
+            if (aWeak != bWeak) {
+                return aWeak ? -1 : 1;
+            }
+            return Long.compare(a.lastServed, b.lastServed);
+        });
+
+        List<QuizQuestion> taken = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < Math.min(count, matching.size()); i++) {
+            Entry entry = matching.get(i);
+            entry.lastServed = now;
+            taken.add(entry.question);
+        }
+        dirty |= !taken.isEmpty();
+        return taken;
+    }
+
+    /**
+     * Bank newly generated questions, skipping near-duplicates of banked ones
+     *
+     * @return number of questions added
+     */
+    public synchronized int add(List<QuizQuestion> questions, String difficulty) {
+        int added = 0;
+        for (QuizQuestion question : questions) {
+            int[] signature = ItemDeduplicator.signature(question.question);
+            if (signature == null || contains(signature, difficulty)) {
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.question = question;
+            entry.difficulty = difficulty;
+            entry.topic = QuizResult.extractTopicFromQuestion(question.question);
+            bank.questions.add(entry);
+            added++;
+        }
+        if (bank.questions.size() > MAX_QUESTIONS) {
+            bank.questions.subList(0, bank.questions.size() - MAX_QUESTIONS).clear();
+        }
+        dirty |= added > 0;
+        return added;
+    }
+
+    private boolean contains(int[] signature, String difficulty) {
+        for (Entry entry : bank.questions) {
+            int[] banked = entry.signature();
+            if (entry.difficulty.equalsIgnoreCase(difficulty) && banked != null
+                    && ItemDeduplicator.similarity(signature, banked) >= ItemDeduplicator.DUPLICATE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the bank if take() or add() changed it
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File dir = file.getBaseFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Unable to create " + dir);
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(bank, writer);
+            writer.flush();
+            file.finishWrite(out);
+            dirty = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving question bank: " + e.getMessage());
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    private static final class Bank {
+        List<Entry> questions = new ArrayList<>();
+    }
+
+    private static final class Entry {
+        QuizQuestion question;
+        String difficulty;
+        String topic;
+        long lastServed;  // 0 until first served
+        transient int[] signature;  // Recomputed after loading rather than stored
+
+        int[] signature() {
+            if (signature == null) {
+                signature = ItemDeduplicator.signature(question.question);
+            }
+            return signature;
+        }
+    }
+}
@@ -26,10 +26,8 @@ import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
 import com.tom_roush.pdfbox.android.PDFBoxResourceLoader;
-import com.tom_roush.pdfbox.pdmodel.PDDocument;
-import com.tom_roush.pdfbox.text.PDFTextStripper;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -37,13 +35,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class QuizActivity extends AppCompatActivity {
 
+    // Model has 1024 token context, roughly 3000-4000 chars including prompt overhead
+    static final int QUIZ_CONTENT_LIMIT = 2500;  // Leaves room for prompt + quiz format
     private static final int PICK_PDF_REQUEST = 1;
     
     private MaterialToolbar toolbar;
@@ -56,6 +52,9 @@ public class QuizActivity extends AppCompatActivity {
     private RadioGroup optionsGroup;
     
     private Uri pdfUri;
+    private String pdfDocHash;  // DocumentStore hash of the PDF, once known
+    private ItemDeduplicator itemDeduplicator;  // Questions this user was already asked on the PDF
+    private QuestionBank questionBank;  // Questions generated for the PDF so far
     private String pdfContent;
     private String pdfFileName = ""; // Store PDF filename for QuizResult
     private List<QuizQuestion> questions;
@@ -64,11 +63,13 @@ public class QuizActivity extends AppCompatActivity {
     private String selectedDifficulty = "Medium";
     private int selectedNumber = 5;
     private SharedPreferences preferences;
+    private TaskScope taskScope;  // Background work, cancelled when this screen is destroyed
     private QuizResult currentQuizResult;  // Track current quiz for saving
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        taskScope = new TaskScope(this);
         
         // Initialize PDFBox
         PDFBoxResourceLoader.init(getApplicationContext());
@@ -109,11 +110,12 @@ public class QuizActivity extends AppCompatActivity {
         Intent intent = getIntent();
         String gemName = intent.getStringExtra("gem_name");
         String pdfUriString = intent.getStringExtra("pdf_uri");
+        pdfDocHash = intent.getStringExtra("pdf_doc_hash");
         
-        if (pdfUriString != null && !pdfUriString.isEmpty()) {
+        if ((pdfUriString != null && !pdfUriString.isEmpty()) || pdfDocHash != null) {
             // Auto-load PDF from gem
             try {
-                pdfUri = Uri.parse(pdfUriString);
+                pdfUri = pdfUriString != null && !pdfUriString.isEmpty() ? Uri.parse(pdfUriString) : null;
                 String fileName = gemName != null ? gemName + ".pdf" : "Document.pdf";
                 pdfFileName = fileName; // Store filename
                 pdfNameText.setText(fileName);
@@ -182,6 +184,7 @@ public class QuizActivity extends AppCompatActivity {
         if (requestCode == PICK_PDF_REQUEST && resultCode == Activity.RESULT_OK) {
             if (data != null) {
                 pdfUri = data.getData();
+                pdfDocHash = null;
                 String fileName = pdfUri.getLastPathSegment();
                 pdfFileName = fileName != null ? fileName : "Unknown.pdf"; // Store filename
                 pdfNameText.setText("📄 " + fileName);
@@ -197,29 +200,49 @@ public class QuizActivity extends AppCompatActivity {
     private void loadPdfContent() {
         progressBar.setVisibility(View.VISIBLE);
         
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
+        taskScope.io(() -> {
+            Tracer.Span loadSpan = Tracer.begin("pdf", "loadPdf");
             try {
-                InputStream input = getContentResolver().openInputStream(pdfUri);
-                PDDocument document = PDDocument.load(input);
-                
-                PDFTextStripper stripper = new PDFTextStripper();
-                pdfContent = stripper.getText(document);
-                
-                document.close();
-                input.close();
+                // Reuse the document if it is already in the store; only the start of it
+                // goes into the quiz prompt
+                DocumentStore documentStore = DocumentStore.get(this);
+                String hash = pdfDocHash;
+                if (hash == null || !documentStore.contains(hash)) {
+                    if (pdfUri == null) {
+                        throw new IOException("Document is no longer available");
+                    }
+                    hash = documentStore.importPdf(pdfUri, pdfFileName, QUIZ_CONTENT_LIMIT);
+                }
+                pdfDocHash = hash;
+                pdfContent = documentStore.getTextPrefix(hash, QUIZ_CONTENT_LIMIT + 1);
+                itemDeduplicator = ItemDeduplicator.load(this, hash,
+                        preferences.getString("current_user_name", "default_user"));
+                questionBank = QuestionBank.get(this, hash);
+                loadSpan.setDetail(hash.substring(0, 12) + ", " + pdfContent.length() + " chars");
                 
                 runOnUiThread(() -> {
                     progressBar.setVisibility(View.GONE);
                     Toast.makeText(this, "PDF loaded successfully", Toast.LENGTH_SHORT).show();
                 });
                 
+                // Quizzes draw on sections of the whole document; extract the rest of it now
+                DocumentStore.Entry entry = documentStore.getEntry(hash);
+                if (entry != null && !entry.isComplete() && pdfUri != null) {
+                    try {
+                        documentStore.importPdf(pdfUri, entry.getName(), PdfTextExtractor.NO_LIMIT);
+                    } catch (IOException e) {
+                        Log.w("QuizActivity", "Quizzes limited to the start of the PDF: " + e.getMessage());
+                    }
+                }
+                
             } catch (Exception e) {
                 Log.e("QuizActivity", "Error loading PDF", e);
                 runOnUiThread(() -> {
                     progressBar.setVisibility(View.GONE);
                     Toast.makeText(this, "Error loading PDF", Toast.LENGTH_SHORT).show();
                 });
+            } finally {
+                loadSpan.end();
             }
         });
     }
@@ -238,243 +261,142 @@ public class QuizActivity extends AppCompatActivity {
         
         // Get weak topics for personalization
         String weakTopicsPrompt = WeakTopicsAnalyzer.getWeakTopicsPrompt(preferences, currentUser);
-        
-        // Set content limit based on model context window
-        // Model has 1024 token context, roughly 3000-4000 chars including prompt overhead
-        int contentLimit = 2500; // Conservative limit to leave room for prompt + quiz format
-        String pdfContentForQuiz = pdfContent.length() > contentLimit ? 
-            pdfContent.substring(0, contentLimit) + "..." : pdfContent;
-        
-        // Create prompt for quiz generation with personalization
-        String prompt = String.format(
-            "You are a quiz generator. You MUST generate EXACTLY %d multiple choice questions. " +
-            "No more, no less than %d questions. " +
-            "Difficulty: %s. " +
-            "CRITICAL: Follow this EXACT format for each question:\n\n" +
-            "Q1: What is the main topic?\n" +
-            "A) Option one\n" +
-            "B) Option two\n" +
-            "C) Option three\n" +
-            "D) Option four\n" +
-            "Correct: A\n\n" +
-            "Q2: What is another concept?\n" +
-            "A) Another option\n" +
-            "B) Different option\n" +
-            "C) Third option\n" +
-            "D) Fourth option\n" +
-            "Correct: B\n\n" +
-            "%s" + // Weak topics personalization
-            "REMEMBER: Generate exactly %d questions, numbered Q1 through Q%d.\n" +
-            "Generate the questions based on this text:\n%s",
-            selectedNumber, selectedNumber,
-            selectedDifficulty,
-            weakTopicsPrompt,
-            selectedNumber, selectedNumber,
-            pdfContentForQuiz
-        );
-        
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            GenieWrapper genie = new GenieWrapper("/data/local/tmp/genie_bundle", "genie_config.json");
-            
-            final StringBuilder quizResponse = new StringBuilder();
-            
-            genie.getResponseForPrompt(prompt, new StringCallback() {
-                @Override
-                public void onNewString(String response) {
-                    quizResponse.append(response);
-                }
-            });
-            
-            // Parse the generated quiz
-            questions = parseQuizQuestions(quizResponse.toString());
-            
-            // If parsing failed, try a simpler fallback approach
-            if (questions == null || questions.isEmpty()) {
-                android.util.Log.d("QuizActivity", "Primary parsing failed, trying fallback");
-                questions = parseQuizQuestionsFallback(quizResponse.toString());
-            }
-            
-            // Validate question count and retry if needed
-            if (questions != null && questions.size() != selectedNumber) {
-                android.util.Log.d("QuizActivity", String.format("Expected %d questions, got %d. Response: %s", 
-                    selectedNumber, questions.size(), quizResponse.toString()));
-                
-                // If we got fewer questions, pad with additional ones if we have enough content
-                if (questions.size() < selectedNumber && questions.size() > 0) {
-                    // Keep what we have for now - could implement retry logic here
-                    android.util.Log.d("QuizActivity", "Using partial quiz with " + questions.size() + " questions");
-                }
-            }
-            
-            runOnUiThread(() -> {
-                progressBar.setVisibility(View.GONE);
-                generateQuizButton.setEnabled(true);
-                
-                if (questions != null && !questions.isEmpty()) {
-                    setupCard.setVisibility(View.GONE);
-                    quizCard.setVisibility(View.VISIBLE);
-                    currentQuestionIndex = 0;
-                    score = 0;
-                    
-                    // Initialize QuizResult for tracking with PDF source
-                    String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
-                    currentQuizResult = new QuizResult(timestamp, selectedDifficulty, questions.size(), 0, pdfFileName);
-                    
-                    showQuestion();
-                } else {
-                    // Show the actual response for debugging
-                    String debugMsg = "Failed to generate quiz. Response was: " + 
-                        (quizResponse.length() > 200 ? quizResponse.substring(0, 200) + "..." : quizResponse.toString());
-                    android.util.Log.e("QuizActivity", debugMsg);
-                    Toast.makeText(this, "Failed to generate quiz. Check logs for details.", Toast.LENGTH_LONG).show();
+        Set<String> weakTopics = WeakTopicsAnalyzer.getWeakTopics(preferences, currentUser);
+        
+        // Serve what the bank already has for this PDF and difficulty; generate only the rest
+        QuestionBank bank = questionBank;
+        ItemDeduplicator deduplicator = itemDeduplicator;
+        String difficulty = selectedDifficulty;
+        int total = selectedNumber;
+        List<QuizQuestion> banked = bank != null ? bank.take(difficulty, total, weakTopics) : new ArrayList<>();
+        int shortfall = total - banked.size();
+        
+        if (shortfall == 0) {
+            Log.d("QuizActivity", "Quiz of " + total + " served from the question bank");
+            taskScope.io(() -> {
+                bank.save();
+                if (deduplicator != null) {
+                    deduplicator.record(banked, q -> q.question);
                 }
             });
-        });
-    }
-    
-    private List<QuizQuestion> parseQuizQuestions(String response) {
-        List<QuizQuestion> parsedQuestions = new ArrayList<>();
+            progressBar.setVisibility(View.GONE);
+            generateQuizButton.setEnabled(true);
+            startQuiz(banked, difficulty);
+            return;
+        }
         
-        try {
-            android.util.Log.d("QuizActivity", "Raw quiz response length: " + response.length());
-            android.util.Log.d("QuizActivity", "Raw quiz response: " + response);
-            
-            // Split response into individual questions first
-            String[] questionBlocks = response.split("(?=Q\\d+)");
+        // Spans the whole generation: model start-up, generation of every section and parsing
+        Tracer.Span quizSpan = Tracer.begin("quiz", "generateQuiz");
+        quizSpan.setDetail(banked.size() + " banked, " + shortfall + " to generate");
+        String hash = pdfDocHash;
+        String content = pdfContent;
+        
+        taskScope.io(() -> {
+            try {
+                // Steer away from questions asked on earlier quizzes of this PDF and the banked
+                // questions in this one
+                String avoidPrompt = "";
+                if (deduplicator != null) {
+                    deduplicator.record(banked, q -> q.question);
+                    avoidPrompt = deduplicator.getAvoidPrompt();
+                }
+                final String avoid = avoidPrompt;
             
-            for (String block : questionBlocks) {
-                if (block.trim().isEmpty()) continue;
-                
-                android.util.Log.d("QuizActivity", "Processing block: " + block);
-                
-                // Extract question
-                Pattern questionPattern = Pattern.compile("Q\\d+[:.)]?\\s*(.+?)(?=A\\))", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-                Matcher questionMatcher = questionPattern.matcher(block);
-                
-                if (!questionMatcher.find()) {
-                    android.util.Log.d("QuizActivity", "No question found in block");
-                    continue;
+                // Questions come from sections across the document, each a short request of its own;
+                // until the full text is extracted that is just the start of it
+                String text = DocumentStore.get(this).getText(hash);
+                if (text == null || text.isEmpty()) {
+                    text = content;
                 }
+                SectionedGenerator<QuizQuestion> generator = new SectionedGenerator<>("quiz", QUIZ_CONTENT_LIMIT,
+                        (section, count) -> QuizGenerator.buildPrompt(count, difficulty, weakTopicsPrompt, avoid, section),
+                        QuizGenerator::parse, q -> q.question);
+                generator.generate(text, shortfall, AppExecutors.PRIORITY_INTERACTIVE, taskScope::isClosed, null)
+                        .thenAccept(generated -> {
+                    // Bank every valid question, including any beyond what this quiz needs
+                    if (bank != null) {
+                        bank.add(generated, difficulty);
+                        bank.save();
+                    }
                 
-                String question = questionMatcher.group(1).trim();
-                
-                // Extract options A, B, C, D
-                String optionA = extractOption(block, "A");
-                String optionB = extractOption(block, "B");
-                String optionC = extractOption(block, "C");
-                String optionD = extractOption(block, "D");
-                
-                // Extract correct answer - try multiple patterns
-                String correct = extractCorrectAnswer(block);
-                
-                if (question.isEmpty() || optionA.isEmpty() || optionB.isEmpty() || 
-                    optionC.isEmpty() || optionD.isEmpty() || correct.isEmpty()) {
-                    android.util.Log.d("QuizActivity", "Incomplete question data, skipping");
-                    continue;
-                }
+                    // Drop repeats of questions this user has already been asked on the PDF; if every
+                    // question is a repeat and nothing came from the bank, show them anyway rather than
+                    // no quiz. The generator ranks questions so the first ones cover the most sections.
+                    List<QuizQuestion> fresh = deduplicator != null
+                            ? deduplicator.filter(generated, q -> q.question, shortfall) : generated;
+                    if (fresh.isEmpty() && banked.isEmpty()) {
+                        fresh = generated;
+                    }
+                    List<QuizQuestion> quiz = new ArrayList<>(banked);
+                    quiz.addAll(fresh.subList(0, Math.min(shortfall, fresh.size())));
                 
-                android.util.Log.d("QuizActivity", String.format("Parsed Question: %s (Correct: %s)", question, correct));
+                    if (quiz.size() != total) {
+                        Log.d("QuizActivity", String.format("Expected %d questions, got %d (%d generated)",
+                            total, quiz.size(), generated.size()));
+                    }
+                    if (taskScope.isClosed()) {
+                        return;
+                    }
                 
-                parsedQuestions.add(new QuizQuestion(
-                    question, optionA, optionB, optionC, optionD, correct.toUpperCase()
-                ));
+                    runOnUiThread(() -> {
+                        progressBar.setVisibility(View.GONE);
+                        generateQuizButton.setEnabled(true);
+                    
+                        if (!quiz.isEmpty()) {
+                            if (quiz.size() < total) {
+                                Toast.makeText(this, String.format(Locale.getDefault(),
+                                        "Only %d of %d questions could be generated", quiz.size(), total),
+                                        Toast.LENGTH_LONG).show();
+                            }
+                            startQuiz(quiz, difficulty);
+                        } else {
+                            Log.e("QuizActivity", "Failed to generate quiz: no questions could be parsed");
+                            Toast.makeText(this, "Failed to generate quiz. Check logs for details.", Toast.LENGTH_LONG).show();
+                        }
+                    });
+                }).whenComplete((result, error) -> {
+                    quizSpan.end();
+                    if (error != null) {
+                        onQuizGenerationFailed(error);
+                    }
+                });
+            } catch (RuntimeException e) {
+                quizSpan.end();
+                onQuizGenerationFailed(e);
             }
-            
-            android.util.Log.d("QuizActivity", "Total questions parsed: " + parsedQuestions.size());
-            
-        } catch (Exception e) {
-            android.util.Log.e("QuizActivity", "Error parsing quiz", e);
-        }
-        
-        return parsedQuestions;
-    }
-    
-    private String extractOption(String text, String option) {
-        Pattern pattern = Pattern.compile(option + "\\)\\s*(.+?)(?=[ABCD]\\)|Correct|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(text);
-        if (matcher.find()) {
-            return matcher.group(1).trim();
-        }
-        return "";
+        });
     }
     
-    private String extractCorrectAnswer(String text) {
-        // Try multiple patterns for correct answer
-        String[] patterns = {
-            "Correct:\\s*([A-Da-d])\\)",  // Correct: A)
-            "Correct:\\s*([A-Da-d])",    // Correct: A
-            "Answer:\\s*([A-Da-d])\\)",  // Answer: A)
-            "Answer:\\s*([A-Da-d])",     // Answer: A
-            "Correct\\s*Answer:\\s*([A-Da-d])\\)", // Correct Answer: A)
-            "Correct\\s*Answer:\\s*([A-Da-d])"     // Correct Answer: A
-        };
-        
-        for (String patternStr : patterns) {
-            Pattern pattern = Pattern.compile(patternStr, Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(text);
-            if (matcher.find()) {
-                return matcher.group(1).toUpperCase();
-            }
+    /**
+     * Restore the setup screen after generation failed, so another quiz can be requested
+     */
+    private void onQuizGenerationFailed(Throwable error) {
+        Log.e("QuizActivity", "Error generating quiz: " + error.getMessage(), error);
+        if (taskScope.isClosed()) {
+            return;
         }
-        
-        android.util.Log.d("QuizActivity", "No correct answer found in: " + text);
-        return "";
+        runOnUiThread(() -> {
+            progressBar.setVisibility(View.GONE);
+            generateQuizButton.setEnabled(true);
+            Toast.makeText(this, "Failed to generate quiz. Please try again.", Toast.LENGTH_LONG).show();
+        });
     }
     
-    private List<QuizQuestion> parseQuizQuestionsFallback(String response) {
-        List<QuizQuestion> parsedQuestions = new ArrayList<>();
+    /**
+     * Show a quiz of the given questions, starting from the first
+     */
+    private void startQuiz(List<QuizQuestion> quizQuestions, String difficulty) {
+        questions = quizQuestions;
+        setupCard.setVisibility(View.GONE);
+        quizCard.setVisibility(View.VISIBLE);
+        currentQuestionIndex = 0;
+        score = 0;
+        
+        // Initialize QuizResult for tracking with PDF source
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
+        currentQuizResult = new QuizResult(timestamp, difficulty, questions.size(), 0, pdfFileName);
         
-        try {
-            android.util.Log.d("QuizActivity", "Using fallback parsing method");
-            
-            // Very simple line-by-line parsing as fallback
-            String[] lines = response.split("\n");
-            String currentQuestion = "";
-            String optionA = "", optionB = "", optionC = "", optionD = "";
-            String correct = "";
-            
-            for (String line : lines) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                
-                if (line.matches("Q\\d+.*")) {
-                    // New question found, save previous if complete
-                    if (!currentQuestion.isEmpty() && !correct.isEmpty()) {
-                        parsedQuestions.add(new QuizQuestion(currentQuestion, optionA, optionB, optionC, optionD, correct));
-                    }
-                    // Reset for new question
-                    currentQuestion = line.replaceFirst("Q\\d+[:.)]?\\s*", "");
-                    optionA = optionB = optionC = optionD = correct = "";
-                } else if (line.startsWith("A)")) {
-                    optionA = line.substring(2).trim();
-                } else if (line.startsWith("B)")) {
-                    optionB = line.substring(2).trim();
-                } else if (line.startsWith("C)")) {
-                    optionC = line.substring(2).trim();
-                } else if (line.startsWith("D)")) {
-                    optionD = line.substring(2).trim();
-                } else if (line.toLowerCase().contains("correct")) {
-                    // Extract just the letter
-                    if (line.contains("A")) correct = "A";
-                    else if (line.contains("B")) correct = "B";
-                    else if (line.contains("C")) correct = "C";
-                    else if (line.contains("D")) correct = "D";
-                }
-            }
-            
-            // Don't forget the last question
-            if (!currentQuestion.isEmpty() && !correct.isEmpty()) {
-                parsedQuestions.add(new QuizQuestion(currentQuestion, optionA, optionB, optionC, optionD, correct));
-            }
-            
-            android.util.Log.d("QuizActivity", "Fallback parsing found: " + parsedQuestions.size() + " questions");
-            
-        } catch (Exception e) {
-            android.util.Log.e("QuizActivity", "Error in fallback parsing", e);
-        }
-        
-        return parsedQuestions;
+        showQuestion();
     }
     
     private void showQuestion() {
@@ -620,6 +542,7 @@ public class QuizActivity extends AppCompatActivity {
     }
     
     private void saveQuizResult(QuizResult result) {
+        Tracer.Span span = Tracer.begin("storage", "saveQuizResult");
         try {
             String currentUser = preferences.getString("current_user_name", "default_user");
             String key = "quiz_history_" + currentUser;
@@ -640,6 +563,8 @@ public class QuizActivity extends AppCompatActivity {
         } catch (Exception e) {
             Log.e("QuizActivity", "Error saving quiz result: " + e.getMessage());
             Toast.makeText(this, "Error saving quiz result", Toast.LENGTH_SHORT).show();
+        } finally {
+            span.end();
         }
     }
     
@@ -648,20 +573,4 @@ public class QuizActivity extends AppCompatActivity {
         finish();
         return true;
     }
-    
-    // Inner class for quiz questions
-    private static class QuizQuestion {
-        String question;
-        String optionA, optionB, optionC, optionD;
-        String correctAnswer;
-        
-        QuizQuestion(String question, String optionA, String optionB, String optionC, String optionD, String correctAnswer) {
-            this.question = question;
-            this.optionA = optionA;
-            this.optionB = optionB;
-            this.optionC = optionC;
-            this.optionD = optionD;
-            this.correctAnswer = correctAnswer;
-        }
-    }
 }
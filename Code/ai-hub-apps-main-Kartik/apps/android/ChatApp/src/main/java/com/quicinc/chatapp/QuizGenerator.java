@@ -0,0 +1,220 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * QuizGenerator - Builds the quiz generation prompt and parses the model's answer into
+ * questions. Shared by QuizActivity and the background GemPrefetchJobService.
+ */
+public final class QuizGenerator {
+    
+    private static final String TAG = "QuizGenerator";
+    
+    private QuizGenerator() {
+    }
+    
+    /**
+     * Prompt for count multiple choice questions on the content
+     *
+     * @param weakTopicsPrompt from WeakTopicsAnalyzer.getWeakTopicsPrompt, or ""
+     * @param avoidPrompt from ItemDeduplicator.getAvoidPrompt, or ""
+     */
+    public static String buildPrompt(int count, String difficulty, String weakTopicsPrompt, String avoidPrompt, String content) {
+        return String.format(
+            "You are a quiz generator. You MUST generate EXACTLY %d multiple choice questions. " +
+            "No more, no less than %d questions. " +
+            "Difficulty: %s. " +
+            "CRITICAL: Follow this EXACT format for each question:\n\n" +
+            "Q1: What is the main topic?\n" +
+            "A) Option one\n" +
+            "B) Option two\n" +
+            "C) Option three\n" +
+            "D) Option four\n" +
+            "Correct: A\n\n" +
+            "Q2: What is another concept?\n" +
+            "A) Another option\n" +
+            "B) Different option\n" +
+            "C) Third option\n" +
+            "D) Fourth option\n" +
+            "Correct: B\n\n" +
+            "%s" + // Weak topics personalization
+            "%s" + // Previously asked questions
+            "REMEMBER: Generate exactly %d questions, numbered Q1 through Q%d.\n" +
+            "Generate the questions based on this text:\n%s",
+            count, count,
+            difficulty,
+            weakTopicsPrompt,
+            avoidPrompt,
+            count, count,
+            content
+        );
+    }
+    
+    /**
+     * Parse the questions out of a response, trying a simpler line-based format if the
+     * strict one finds none
+     *
+     * @return the complete questions (never null)
+     */
+    public static List<QuizQuestion> parse(String response) {
+        List<QuizQuestion> questions = parsePrimary(response);
+        if (questions.isEmpty()) {
+            Log.d(TAG, "Primary parsing failed, trying fallback");
+            questions = parseFallback(response);
+        }
+        return questions;
+    }
+    
+    private static List<QuizQuestion> parsePrimary(String response) {
+        List<QuizQuestion> parsedQuestions = new ArrayList<>();
+        
+        try {
+            Log.d(TAG, "Raw quiz response length: " + response.length());
+            Log.d(TAG, "Raw quiz response: " + response);
+            
+            // Split response into individual questions first
+            String[] questionBlocks = response.split("(?=Q\\d+)");
+            
+            for (String block : questionBlocks) {
+                if (block.trim().isEmpty()) continue;
+                
+                Log.d(TAG, "Processing block: " + block);
+                
+                // Extract question
+                Pattern questionPattern = Pattern.compile("Q\\d+[:.)]?\\s*(.+?)(?=A\\))", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+                Matcher questionMatcher = questionPattern.matcher(block);
+                
+                if (!questionMatcher.find()) {
+                    Log.d(TAG, "No question found in block");
+                    continue;
+                }
+                
+                String question = questionMatcher.group(1).trim();
+                
+                // Extract options A, B, C, D
+                String optionA = extractOption(block, "A");
+                String optionB = extractOption(block, "B");
+                String optionC = extractOption(block, "C");
+                String optionD = extractOption(block, "D");
+                
+                // Extract correct answer - try multiple patterns
+                String correct = extractCorrectAnswer(block);
+                
+                if (question.isEmpty() || optionA.isEmpty() || optionB.isEmpty() || 
+                    optionC.isEmpty() || optionD.isEmpty() || correct.isEmpty()) {
+                    Log.d(TAG, "Incomplete question data, skipping");
+                    continue;
+                }
+                
+                Log.d(TAG, String.format("Parsed Question: %s (Correct: %s)", question, correct));
+                
+                parsedQuestions.add(new QuizQuestion(
+                    question, optionA, optionB, optionC, optionD, correct.toUpperCase()
+                ));
+            }
+            
+            Log.d(TAG, "Total questions parsed: " + parsedQuestions.size());
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing quiz", e);
+        }
+        
+        return parsedQuestions;
+    }
+    
+    private static String extractOption(String text, String option) {
+        Pattern pattern = Pattern.compile(option + "\\)\\s*(.+?)(?=[ABCD]\\)|Correct|$)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+        Matcher matcher = pattern.matcher(text);
+        if (matcher.find()) {
+            return matcher.group(1).trim();
+        }
+        return "";
+    }
+    
+    private static String extractCorrectAnswer(String text) {
+        // Try multiple patterns for correct answer
+        String[] patterns = {
+            "Correct:\\s*([A-Da-d])\\)",  // Correct: A)
+            "Correct:\\s*([A-Da-d])",    // Correct: A
+            "Answer:\\s*([A-Da-d])\\)",  // Answer: A)
+            "Answer:\\s*([A-Da-d])",     // Answer: A
+            "Correct\\s*Answer:\\s*([A-Da-d])\\)", // Correct Answer: A)
+            "Correct\\s*Answer:\\s*([A-Da-d])"     // Correct Answer: A
+        };
+        
+        for (String patternStr : patterns) {
+            Pattern pattern = Pattern.compile(patternStr, Pattern.CASE_INSENSITIVE);
+            Matcher matcher = pattern.matcher(text);
+            if (matcher.find()) {
+                return matcher.group(1).toUpperCase();
+            }
+        }
+        
+        Log.d(TAG, "No correct answer found in: " + text);
+        return "";
+    }
+    
+    private static List<QuizQuestion> parseFallback(String response) {
+        List<QuizQuestion> parsedQuestions = new ArrayList<>();
+        
+        try {
+            Log.d(TAG, "Using fallback parsing method");
+            
+            // Very simple line-by-line parsing as fallback
+            String[] lines = response.split("\n");
+            String currentQuestion = "";
+            String optionA = "", optionB = "", optionC = "", optionD = "";
+            String correct = "";
+            
+            for (String line : lines) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                
+                if (line.matches("Q\\d+.*")) {
+                    // New question found, save previous if complete
+                    if (!currentQuestion.isEmpty() && !correct.isEmpty()) {
+                        parsedQuestions.add(new QuizQuestion(currentQuestion, optionA, optionB, optionC, optionD, correct));
+                    }
+                    // Reset for new question
+                    currentQuestion = line.replaceFirst("Q\\d+[:.)]?\\s*", "");
+                    optionA = optionB = optionC = optionD = correct = "";
+                } else if (line.startsWith("A)")) {
+                    optionA = line.substring(2).trim();
+                } else if (line.startsWith("B)")) {
+                    optionB = line.substring(2).trim();
+                } else if (line.startsWith("C)")) {
+                    optionC = line.substring(2).trim();
+                } else if (line.startsWith("D)")) {
+                    optionD = line.substring(2).trim();
+                } else if (line.toLowerCase().contains("correct")) {
+                    // Extract just the letter
+                    if (line.contains("A")) correct = "A";
+                    else if (line.contains("B")) correct = "B";
+                    else if (line.contains("C")) correct = "C";
+                    else if (line.contains("D")) correct = "D";
+                }
+            }
+            
+            // Don't forget the last question
+            if (!currentQuestion.isEmpty() && !correct.isEmpty()) {
+                parsedQuestions.add(new QuizQuestion(currentQuestion, optionA, optionB, optionC, optionD, correct));
+            }
+            
+            Log.d(TAG, "Fallback parsing found: " + parsedQuestions.size() + " questions");
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error in fallback parsing", e);
+        }
+        
+        return parsedQuestions;
+    }
+}
@@ -0,0 +1,23 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+/**
+ * QuizQuestion - A generated multiple choice question with four options
+ */
+public class QuizQuestion {
+    String question;
+    String optionA, optionB, optionC, optionD;
+    String correctAnswer;  // "A" to "D"
+
+    QuizQuestion(String question, String optionA, String optionB, String optionC, String optionD, String correctAnswer) {
+        this.question = question;
+        this.optionA = optionA;
+        this.optionB = optionB;
+        this.optionC = optionC;
+        this.optionD = optionD;
+        this.correctAnswer = correctAnswer;
+    }
+}
@@ -78,7 +78,7 @@ public class QuizResult {
     /**
      * Extract topic keywords from a question
      */
-    private String extractTopicFromQuestion(String question) {
+    static String extractTopicFromQuestion(String question) {
         if (question == null || question.isEmpty()) return "";
         
         // Remove common question words and get key content
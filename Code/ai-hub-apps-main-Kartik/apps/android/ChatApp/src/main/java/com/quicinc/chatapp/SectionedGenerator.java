@@ -0,0 +1,196 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * SectionedGenerator - Generates quiz questions or flashcards from across a whole document as
+ * several short requests instead of one long one over its start
+ *
+ * Map: the text is split into sections that fit the prompt, about count / ITEMS_PER_SECTION of
+ * them are picked spread over the document (from a random offset, so repeated runs cover other
+ * parts), and each is queued on the inference lane as its own request for a few items, with the
+ * section run through PromptCompressor. Other prompts can run between sections, and the first
+ * items are ready after one short generation.
+ *
+ * Reduce: the sections' items are merged round-robin in document order, so the first N items
+ * cover the document as evenly as N allows, and near-duplicates (see ItemDeduplicator) are
+ * dropped. Callers trim the ranked list to the count they show.
+ *
+ * The returned future completes on the I/O pool, so callers can save what they get in their
+ * callbacks without holding up the inference thread.
+ */
+public class SectionedGenerator<T> {
+
+    private static final String TAG = "SectionedGenerator";
+    private static final int ITEMS_PER_SECTION = 3;
+    private static final int MIN_SECTION_CHARS = 1000;
+
+    /**
+     * Builds the prompt asking for count items from one section
+     */
+    public interface PromptBuilder {
+        String build(String sectionText, int count);
+    }
+
+    /**
+     * Progress of a run, called on the inference thread as each section finishes
+     */
+    public interface Listener<T> {
+        void onSectionDone(List<T> items, int done, int total);
+    }
+
+    private final String name;
+    private final int sectionChars;
+    private final PromptBuilder promptBuilder;
+    private final Function<String, List<T>> parser;
+    private final Function<T, String> textOf;
+    private final Random random = new Random();
+
+    /**
+     * @param name for traces, e.g. "quiz"
+     * @param sectionChars largest section that fits the prompt
+     * @param parser parses a response into items (never null)
+     * @param textOf the text items are compared by for duplicates
+     */
+    public SectionedGenerator(String name, int sectionChars, PromptBuilder promptBuilder,
+                              Function<String, List<T>> parser, Function<T, String> textOf) {
+        this.name = name;
+        this.sectionChars = sectionChars;
+        this.promptBuilder = promptBuilder;
+        this.parser = parser;
+        this.textOf = textOf;
+    }
+
+    /**
+     * Queue the section requests for about count items
+     *
+     * @param cancelled checked before each section; cancelled sections yield no items
+     * @param listener may be null
+     * @return the ranked items, possibly more or fewer than count; completes exceptionally if
+     *         the listener or the merge throws
+     */
+    public CompletableFuture<List<T>> generate(String text, int count, int priority,
+                                               BooleanSupplier cancelled, Listener<T> listener) {
+        DocumentRetriever.Chunks chunks = DocumentRetriever.split(text, sectionChars,
+                Math.min(MIN_SECTION_CHARS, sectionChars / 2));
+        int[] sections = pickSections(chunks.starts.length, count);
+        int perSection = (count + sections.length - 1) / Math.max(1, sections.length);
+
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        if (sections.length == 0) {
+            future.complete(new ArrayList<>());
+            return future;
+        }
+        Tracer.Span span = Tracer.begin(name, "generateSections");
+        span.setDetail(sections.length + " of " + chunks.starts.length + " sections x " + perSection);
+
+        List<List<T>> results = new ArrayList<>();
+        for (int i = 0; i < sections.length; i++) {
+            results.add(new ArrayList<>());
+        }
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < sections.length; i++) {
+            final int slot = i;
+            String section = text.substring(chunks.starts[sections[i]], chunks.ends[sections[i]]);
+            AppExecutors.get().submitInference(() -> {
+                List<T> items = new ArrayList<>();
+                if (!cancelled.getAsBoolean()) {
+                    try (Tracer.Span sectionSpan = Tracer.begin(name, "generateSection")) {
+                        StringBuilder response = new StringBuilder();
+                        String prompt = promptBuilder.build(
+                                PromptCompressor.compress(section, PromptCompressor.DEFAULT_KEEP_RATIO, null), perSection);
+                        GenieWrapper.getShared().getResponseForPrompt(prompt, response::append);
+                        items = parser.apply(response.toString());
+                        sectionSpan.setDetail(items.size() + " items");
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error generating section " + slot + ": " + e.getMessage(), e);
+                    }
+                }
+                synchronized (results) {
+                    results.set(slot, items);
+                }
+                int finished = done.incrementAndGet();
+                try {
+                    if (listener != null) {
+                        listener.onSectionDone(items, finished, sections.length);
+                    }
+                    if (finished == sections.length) {
+                        List<T> ranked;
+                        synchronized (results) {
+                            ranked = merge(results);
+                        }
+                        span.end();
+                        AppExecutors.get().io().execute(() -> future.complete(ranked));
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error finishing section " + slot + ": " + e.getMessage(), e);
+                    span.end();
+                    future.completeExceptionally(e);
+                }
+            }, priority);
+        }
+        return future;
+    }
+
+    /**
+     * Indexes of about count / ITEMS_PER_SECTION sections, evenly spaced from a random offset
+     */
+    private int[] pickSections(int total, int count) {
+        int wanted = Math.min(total, Math.max(1, (count + ITEMS_PER_SECTION - 1) / ITEMS_PER_SECTION));
+        int[] picked = new int[wanted];
+        double stride = total / (double) Math.max(1, picked.length);
+        double offset = random.nextDouble() * stride;
+        for (int i = 0; i < picked.length; i++) {
+            picked[i] = Math.min(total - 1, (int) (offset + i * stride));
+        }
+        return picked;
+    }
+
+    /**
+     * Round-robin over the sections in document order, dropping near-duplicates
+     */
+    private List<T> merge(List<List<T>> results) {
+        List<T> ranked = new ArrayList<>();
+        List<int[]> signatures = new ArrayList<>();
+        for (int round = 0; ; round++) {
+            boolean any = false;
+            for (List<T> items : results) {
+                if (round >= items.size()) {
+                    continue;
+                }
+                any = true;
+                T item = items.get(round);
+                int[] signature = ItemDeduplicator.signature(textOf.apply(item));
+                if (signature == null || isDuplicate(signature, signatures)) {
+                    continue;
+                }
+                signatures.add(signature);
+                ranked.add(item);
+            }
+            if (!any) {
+                return ranked;
+            }
+        }
+    }
+
+    private static boolean isDuplicate(int[] signature, List<int[]> signatures) {
+        for (int[] other : signatures) {
+            if (ItemDeduplicator.similarity(signature, other) >= ItemDeduplicator.DUPLICATE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,232 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+import android.util.Pair;
+
+import com.quicinc.tflite.DelegateAutoTuner;
+import com.quicinc.tflite.InterpreterPool;
+import com.quicinc.tflite.TFLiteHelpers;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * SentenceEmbedder - Runs a small sentence-embedding model (MiniLM-style BERT) on the CPU
+ *
+ * The model and its vocabulary are optional assets (see MODEL_ASSET); without them get() returns
+ * null and callers fall back to using the start of the document. Embeddings are mean-pooled over
+ * the real tokens and L2-normalized, so the dot product of two embeddings is their cosine
+ * similarity.
+ *
+ * Thread-safe: each call leases one of POOL_SIZE XNNPack interpreters. Their thread count is
+ * tuned for the device by DelegateAutoTuner on first load, capped so the pool's interpreters
+ * together use at most one thread per core.
+ */
+public class SentenceEmbedder {
+
+    private static final String TAG = "SentenceEmbedder";
+    static final String MODEL_ASSET = "models/embedding/embedding.tflite";
+    static final String VOCAB_ASSET = "models/embedding/vocab.txt";
+    private static final int MAX_TOKENS = 128;
+    private static final int POOL_SIZE = 2;
+    private static final long LEASE_TIMEOUT_SECONDS = 10;
+
+    private static SentenceEmbedder instance;
+    private static boolean loadAttempted = false;
+
+    private final WordPieceTokenizer tokenizer;
+    private final InterpreterPool pool;
+    private final String modelIdentifier;
+    private final int dimension;
+    private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /**
+     * The shared embedder, loading it on first use. Blocks while loading; call off the main
+     * thread.
+     *
+     * @return the embedder, or null if the model is not installed or failed to load
+     */
+    public static synchronized SentenceEmbedder get(Context context) {
+        if (!loadAttempted) {
+            loadAttempted = true;
+            try (Tracer.Span span = Tracer.begin("embedding", "loadModel")) {
+                instance = new SentenceEmbedder(context.getApplicationContext());
+                span.setDetail(instance.dimension + " dims");
+                Log.i(TAG, "Embedding model loaded: " + instance.dimension + " dims");
+            } catch (IOException e) {
+                Log.i(TAG, "No embedding model (" + e.getMessage() + "), retrieval disabled");
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading embedding model: " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    private SentenceEmbedder(Context context) throws Exception {
+        AssetManager assets = context.getAssets();
+        try (InputStream vocab = assets.open(VOCAB_ASSET)) {
+            tokenizer = new WordPieceTokenizer(vocab);
+        }
+        Pair<MappedByteBuffer, String> model = TFLiteHelpers.loadModelFile(
+                assets, MODEL_ASSET, context.getCacheDir().getAbsolutePath());
+        modelIdentifier = model.second;
+        // XNNPack only: the model is small and several instances run in parallel
+        String nativeLibraryDir = context.getApplicationInfo().nativeLibraryDir;
+        String cacheDir = context.getCacheDir().getAbsolutePath();
+        DelegateAutoTuner.Config tuned = DelegateAutoTuner.getTunedConfig(model.first,
+                new TFLiteHelpers.DelegateType[][] { { } }, nativeLibraryDir, cacheDir, modelIdentifier);
+        int maxThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / POOL_SIZE);
+        pool = new InterpreterPool(POOL_SIZE, model.first,
+                tuned.withNumCPUThreads(Math.min(tuned.getNumCPUThreads(), maxThreads)),
+                nativeLibraryDir, cacheDir, modelIdentifier);
+
+        try (InterpreterPool.Lease lease = pool.lease(LEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            int[] shape = lease.getInterpreter().getOutputTensor(outputIndex(lease.getInterpreter())).shape();
+            dimension = shape[shape.length - 1];
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Identifies the model, so vectors from another model are not mixed in
+     */
+    public String getModelIdentifier() {
+        return modelIdentifier;
+    }
+
+    /**
+     * Embed one passage (truncated to MAX_TOKENS tokens)
+     *
+     * @return unit-length embedding
+     */
+    public float[] embed(String text) throws InterruptedException, TimeoutException {
+        Buffers b = buffers.get();
+        int tokens = tokenizer.encode(text, b.ids, b.mask);
+
+        try (InterpreterPool.Lease lease = pool.lease(LEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            Interpreter interpreter = lease.getInterpreter();
+            Object[] inputs = new Object[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputs.length; i++) {
+                Tensor tensor = interpreter.getInputTensor(i);
+                String name = tensor.name().toLowerCase();
+                int[] values = name.contains("mask") ? b.mask : name.contains("type") ? b.zeros : b.ids;
+                inputs[i] = b.input(i, values, tensor.dataType() == DataType.INT64);
+            }
+            int outputIndex = outputIndex(interpreter);
+            Tensor output = interpreter.getOutputTensor(outputIndex);
+            ByteBuffer outputBuffer = b.output(output.numBytes());
+            Map<Integer, Object> outputs = new HashMap<>();
+            outputs.put(outputIndex, outputBuffer);
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+
+            outputBuffer.rewind();
+            float[] embedding = new float[dimension];
+            if (output.shape().length == 3) {
+                // Token embeddings [1, tokens, dim]: mean over the real tokens
+                for (int t = 0; t < tokens; t++) {
+                    int base = t * dimension * 4;
+                    for (int d = 0; d < dimension; d++) {
+                        embedding[d] += outputBuffer.getFloat(base + d * 4);
+                    }
+                }
+            } else {
+                for (int d = 0; d < dimension; d++) {
+                    embedding[d] = outputBuffer.getFloat(d * 4);
+                }
+            }
+            normalize(embedding);
+            return embedding;
+        }
+    }
+
+    /**
+     * The pooled sentence embedding output if the model has one, else the token embeddings
+     */
+    private static int outputIndex(Interpreter interpreter) {
+        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+            if (interpreter.getOutputTensor(i).shape().length == 2) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static void normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Per-thread input and output buffers, reused across calls
+     */
+    private static final class Buffers {
+        final int[] ids = new int[MAX_TOKENS];
+        final int[] mask = new int[MAX_TOKENS];
+        final int[] zeros = new int[MAX_TOKENS];
+        ByteBuffer[] inputs = new ByteBuffer[3];  // input_ids, attention_mask, token_type_ids
+        ByteBuffer output;
+
+        ByteBuffer input(int index, int[] values, boolean int64) {
+            int size = MAX_TOKENS * (int64 ? 8 : 4);
+            if (index >= inputs.length) {
+                inputs = Arrays.copyOf(inputs, index + 1);
+            }
+            if (inputs[index] == null || inputs[index].capacity() != size) {
+                inputs[index] = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            }
+            ByteBuffer buffer = inputs[index];
+            buffer.rewind();
+            for (int value : values) {
+                if (int64) {
+                    buffer.putLong(value);
+                } else {
+                    buffer.putInt(value);
+                }
+            }
+            buffer.rewind();
+            return buffer;
+        }
+
+        ByteBuffer output(int size) {
+            if (output == null || output.capacity() != size) {
+                output = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            }
+            output.rewind();
+            return output;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * StreamingRenderBuffer - Coalesces streamed tokens into one UI update per display frame
+ *
+ * Tokens are appended from the generation thread. At most one frame callback is pending at a
+ * time, and each frame delivers everything that arrived since the previous frame to the
+ * listener on the main thread. A fast decoder therefore costs one main-looper message and
+ * one rebind per frame instead of one per token.
+ */
+public class StreamingRenderBuffer implements Choreographer.FrameCallback {
+
+    /**
+     * Receives coalesced text on the main thread
+     */
+    public interface Listener {
+        void onFlush(String text);
+    }
+
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final StringBuilder pending = new StringBuilder();
+    private boolean frameScheduled = false;
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(StreamingRenderBuffer.this);
+        }
+    };
+
+    public StreamingRenderBuffer(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queue text for the next frame. Safe to call from any thread.
+     */
+    public void append(String text) {
+        synchronized (pending) {
+            pending.append(text);
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        mainHandler.post(scheduleFrame);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * Deliver any remaining text immediately, then run the completion on the main thread.
+     * Call once the generation has finished.
+     */
+    public void complete(Runnable onComplete) {
+        mainHandler.post(() -> {
+            mainHandler.removeCallbacks(scheduleFrame);
+            Choreographer.getInstance().removeFrameCallback(this);
+            flush();
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        });
+    }
+
+    private void flush() {
+        String text;
+        synchronized (pending) {
+            frameScheduled = false;
+            if (pending.length() == 0) {
+                return;
+            }
+            text = pending.toString();
+            pending.setLength(0);
+        }
+        listener.onFlush(text);
+    }
+}
@@ -0,0 +1,105 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * TaskScope - Work submitted to AppExecutors on behalf of one activity
+ *
+ * When the owning activity is destroyed, queued tasks are cancelled and running tasks are
+ * interrupted, so work does not keep running after the user navigates away.
+ */
+public class TaskScope implements DefaultLifecycleObserver {
+
+    private static final String TAG = "TaskScope";
+
+    private final String name;
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private boolean closed = false;
+
+    public TaskScope(@NonNull LifecycleOwner owner) {
+        this.name = owner.getClass().getSimpleName();
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Run on the shared I/O pool (file, content resolver and storage access)
+     */
+    public void io(Runnable task) {
+        track(AppExecutors.get().io().submit(task));
+    }
+
+    /**
+     * Run on the shared CPU pool (parsing and text processing)
+     */
+    public void cpu(Runnable task) {
+        track(AppExecutors.get().cpu().submit(task));
+    }
+
+    /**
+     * Queue work for the model at the given AppExecutors priority
+     */
+    public void inference(Runnable task, int priority) {
+        track(AppExecutors.get().submitInference(task, priority));
+    }
+
+    /**
+     * Whether the owner has been destroyed; long-running tasks can poll this between stages
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void track(Future<?> future) {
+        if (closed) {
+            future.cancel(true);
+            return;
+        }
+        // Drop finished tasks so the list stays small over a long session
+        Iterator<Future<?>> it = tasks.iterator();
+        while (it.hasNext()) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+        tasks.add(future);
+    }
+
+    /**
+     * Cancel all pending and running work of this scope
+     */
+    public synchronized void cancelAll() {
+        int cancelled = 0;
+        for (Future<?> future : tasks) {
+            if (!future.isDone() && future.cancel(true)) {
+                cancelled++;
+            }
+        }
+        tasks.clear();
+        if (cancelled > 0) {
+            Log.d(TAG, name + ": cancelled " + cancelled + " task(s)");
+        }
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        synchronized (this) {
+            closed = true;
+        }
+        cancelAll();
+        owner.getLifecycle().removeObserver(this);
+        AppExecutors.get().logMetrics();
+    }
+}
@@ -0,0 +1,296 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracer - Lightweight tracing spans across the PDF, prompt, generation, parsing and storage stages
+ *
+ * Events are kept in a fixed-size ring buffer (oldest events are overwritten) and can be
+ * exported as Chrome trace JSON, which opens directly in ui.perfetto.dev or chrome://tracing.
+ *
+ * Usage:
+ *   try (Tracer.Span span = Tracer.begin("pdf", "formatPdfText")) {
+ *       ...
+ *   }
+ */
+public final class Tracer {
+
+    private static final String TAG = "Tracer";
+    private static final int CAPACITY = 4096;  // Events kept in memory
+
+    private static final char PHASE_COMPLETE = 'X';
+    private static final char PHASE_INSTANT = 'i';
+    private static final char PHASE_COUNTER = 'C';
+
+    // Ring buffer, stored as parallel arrays so the buffer itself allocates nothing per event
+    private static final char[] phases = new char[CAPACITY];
+    private static final String[] categories = new String[CAPACITY];
+    private static final String[] names = new String[CAPACITY];
+    private static final long[] startNanos = new long[CAPACITY];
+    private static final long[] durationNanos = new long[CAPACITY];
+    private static final int[] threadIds = new int[CAPACITY];
+    private static final String[] details = new String[CAPACITY];
+    private static long totalRecorded = 0;
+
+    private static final Map<Integer, String> threadNames = new ConcurrentHashMap<>();
+    private static final long originNanos = System.nanoTime();
+
+    private Tracer() {
+    }
+
+    /**
+     * Start a span on the current thread. Close it (or call end()) when the stage finishes.
+     * A span may be ended on a different thread than the one that started it.
+     */
+    public static Span begin(String category, String name) {
+        return new Span(category, name, currentThreadId(), System.nanoTime());
+    }
+
+    /**
+     * Record a zero-duration marker (e.g. first token received)
+     */
+    public static void instant(String category, String name) {
+        record(PHASE_INSTANT, category, name, System.nanoTime(), 0, currentThreadId(), null);
+    }
+
+    /**
+     * Record a counter sample (e.g. queue depth), shown as a track in the trace viewer
+     */
+    public static void counter(String category, String name, long value) {
+        record(PHASE_COUNTER, category, name, System.nanoTime(), 0, currentThreadId(), String.valueOf(value));
+    }
+
+    /**
+     * Drop all recorded events
+     */
+    public static synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            categories[i] = null;
+            names[i] = null;
+            details[i] = null;
+        }
+        totalRecorded = 0;
+        Log.d(TAG, "Trace buffer cleared");
+    }
+
+    /**
+     * Number of events currently held in the ring buffer
+     */
+    public static synchronized int size() {
+        return (int) Math.min(totalRecorded, CAPACITY);
+    }
+
+    private static synchronized void record(char phase, String category, String name,
+                                            long start, long duration, int tid, String detail) {
+        int slot = (int) (totalRecorded % CAPACITY);
+        phases[slot] = phase;
+        categories[slot] = category;
+        names[slot] = name;
+        startNanos[slot] = start;
+        durationNanos[slot] = duration;
+        threadIds[slot] = tid;
+        details[slot] = detail;
+        totalRecorded++;
+    }
+
+    private static int currentThreadId() {
+        int tid = Process.myTid();
+        if (!threadNames.containsKey(tid)) {
+            threadNames.put(tid, Thread.currentThread().getName());
+        }
+        return tid;
+    }
+
+    /**
+     * Write the ring buffer contents as Chrome trace JSON to a new file in the given directory
+     *
+     * @return the written file
+     */
+    public static File exportToFile(File directory) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create trace directory: " + directory);
+        }
+        File file = new File(directory, "trace_" + System.currentTimeMillis() + ".json");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            exportChromeJson(writer);
+        }
+        Log.i(TAG, "Exported " + size() + " trace events to " + file.getAbsolutePath());
+        return file;
+    }
+
+    /**
+     * Write the ring buffer contents as Chrome trace JSON ("traceEvents" array format)
+     */
+    public static void exportChromeJson(Writer writer) throws IOException {
+        int pid = Process.myPid();
+        StringBuilder event = new StringBuilder(256);
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+
+        // Thread name metadata so tracks are labelled in the viewer
+        for (Map.Entry<Integer, String> entry : threadNames.entrySet()) {
+            event.setLength(0);
+            event.append("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":").append(pid)
+                 .append(",\"tid\":").append(entry.getKey())
+                 .append(",\"args\":{\"name\":");
+            appendJsonString(event, entry.getValue());
+            event.append("}}");
+            if (!first) {
+                writer.write(',');
+            }
+            writer.write(event.toString());
+            first = false;
+        }
+
+        // Copy the events under the lock and write them after, so recording threads are not
+        // blocked on the file
+        int count;
+        char[] phaseCopy;
+        String[] categoryCopy;
+        String[] nameCopy;
+        long[] startCopy;
+        long[] durationCopy;
+        int[] threadCopy;
+        String[] detailCopy;
+        synchronized (Tracer.class) {
+            count = (int) Math.min(totalRecorded, CAPACITY);
+            phaseCopy = new char[count];
+            categoryCopy = new String[count];
+            nameCopy = new String[count];
+            startCopy = new long[count];
+            durationCopy = new long[count];
+            threadCopy = new int[count];
+            detailCopy = new String[count];
+            long oldest = totalRecorded - count;
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((oldest + i) % CAPACITY);
+                phaseCopy[i] = phases[slot];
+                categoryCopy[i] = categories[slot];
+                nameCopy[i] = names[slot];
+                startCopy[i] = startNanos[slot];
+                durationCopy[i] = durationNanos[slot];
+                threadCopy[i] = threadIds[slot];
+                detailCopy[i] = details[slot];
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            event.setLength(0);
+            event.append("{\"ph\":\"").append(phaseCopy[i]).append('"');
+            event.append(",\"cat\":");
+            appendJsonString(event, categoryCopy[i]);
+            event.append(",\"name\":");
+            appendJsonString(event, nameCopy[i]);
+            event.append(",\"pid\":").append(pid);
+            event.append(",\"tid\":").append(threadCopy[i]);
+            event.append(",\"ts\":").append(toMicros(startCopy[i] - originNanos));
+
+            if (phaseCopy[i] == PHASE_COMPLETE) {
+                event.append(",\"dur\":").append(toMicros(durationCopy[i]));
+                if (detailCopy[i] != null) {
+                    event.append(",\"args\":{\"detail\":");
+                    appendJsonString(event, detailCopy[i]);
+                    event.append('}');
+                }
+            } else if (phaseCopy[i] == PHASE_COUNTER) {
+                event.append(",\"args\":{\"value\":").append(detailCopy[i]).append('}');
+            } else {
+                event.append(",\"s\":\"t\"");
+            }
+            event.append('}');
+
+            if (!first) {
+                writer.write(',');
+            }
+            writer.write(event.toString());
+            first = false;
+        }
+        writer.write("]}");
+    }
+
+    private static String toMicros(long nanos) {
+        return String.valueOf(nanos / 1000) + "." + String.format("%03d", Math.abs(nanos % 1000));
+    }
+
+    private static void appendJsonString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Span - A timed stage. Recorded into the ring buffer when ended.
+     */
+    public static final class Span implements AutoCloseable {
+        private final String category;
+        private final String name;
+        private final int threadId;
+        private final long start;
+        private String detail;
+        private boolean ended = false;
+
+        private Span(String category, String name, int threadId, long start) {
+            this.category = category;
+            this.name = name;
+            this.threadId = threadId;
+            this.start = start;
+        }
+
+        /**
+         * Attach a short detail (sizes, counts, file name) shown in the viewer's args panel
+         */
+        public Span setDetail(String detail) {
+            this.detail = detail;
+            return this;
+        }
+
+        public void end() {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            record(PHASE_COMPLETE, category, name, start, System.nanoTime() - start, threadId, detail);
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import android.util.AtomicFile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * VectorIndex - Approximate nearest-neighbor index over unit-length embeddings
+ *
+ * Vectors are stored int8-quantized (one scale per vector) next to an HNSW graph in a single
+ * file, which is memory-mapped for search: opening an index reads only its header, and a query
+ * touches the few hundred vectors the graph walk visits. Similarity is the dot product (cosine
+ * for unit vectors).
+ *
+ * File layout (little-endian):
+ *   header       MAGIC, VERSION, dimension, count, entryPoint, maxLevel
+ *   offsets      count ints: position of each node's links
+ *   vectors      count x (float scale, dimension bytes)
+ *   links        per node: level, then for each level 0..level: n, n neighbor ids
+ */
+public class VectorIndex {
+
+    private static final int MAGIC = 0x56494458;  // "VIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * 4;
+    private static final int M = 12;  // Neighbors per node on upper levels
+    private static final int M0 = 2 * M;  // Neighbors per node on level 0
+    private static final int EF_CONSTRUCTION = 64;
+    private static final int EF_SEARCH = 64;
+    private static final double LEVEL_MULTIPLIER = 1 / Math.log(M);
+
+    private final ByteBuffer data;
+    private final int dimension;
+    private final int count;
+    private final int entryPoint;
+    private final int maxLevel;
+    private final int vectorsStart;
+
+    private VectorIndex(ByteBuffer data) throws IOException {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a vector index");
+        }
+        dimension = data.getInt(8);
+        count = data.getInt(12);
+        entryPoint = data.getInt(16);
+        maxLevel = data.getInt(20);
+        vectorsStart = HEADER_BYTES + count * 4;
+    }
+
+    /**
+     * Memory-map an index written by write()
+     */
+    public static VectorIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new VectorIndex(buffer);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Find the k vectors most similar to the query
+     *
+     * @return vector ids, most similar first
+     */
+    public int[] search(float[] query, int k) {
+        if (count == 0) {
+            return new int[0];
+        }
+        Graph graph = new Graph() {
+            @Override
+            public float similarity(int node) {
+                int base = vectorsStart + node * (4 + dimension);
+                float dot = 0;
+                for (int d = 0; d < dimension; d++) {
+                    dot += query[d] * data.get(base + 4 + d);
+                }
+                return dot * data.getFloat(base);
+            }
+
+            @Override
+            public int[] neighbors(int node, int level) {
+                int position = linksStart(node) + 4;
+                for (int l = 0; l < level; l++) {
+                    position += 4 + 4 * data.getInt(position);
+                }
+                int[] neighbors = new int[data.getInt(position)];
+                for (int i = 0; i < neighbors.length; i++) {
+                    neighbors[i] = data.getInt(position + 4 + 4 * i);
+                }
+                return neighbors;
+            }
+        };
+
+        int entry = entryPoint;
+        for (int level = maxLevel; level > 0; level--) {
+            entry = best(searchLayer(graph, entry, 1, level, count));
+        }
+        PriorityQueue<Candidate> results = searchLayer(graph, entry, Math.max(EF_SEARCH, k), 0, count);
+        return topIds(results, k);
+    }
+
+    private int linksStart(int node) {
+        return data.getInt(HEADER_BYTES + node * 4);
+    }
+
+    /**
+     * Build the graph over the vectors and write the index to a file
+     *
+     * @param vectors unit-length vectors, all of the same dimension
+     */
+    public static void write(File file, float[][] vectors, int dimension) throws IOException {
+        int count = vectors.length;
+        Builder builder = new Builder(vectors);
+        for (int i = 0; i < count; i++) {
+            builder.insert(i);
+        }
+
+        // Size the file
+        int linksBytes = 0;
+        for (int i = 0; i < count; i++) {
+            linksBytes += 4;
+            for (List<Integer> neighbors : builder.links.get(i)) {
+                linksBytes += 4 + 4 * neighbors.size();
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + count * 4 + count * (4 + dimension) + linksBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count)
+                .putInt(builder.entryPoint).putInt(Math.max(0, builder.maxLevel));
+
+        int linksPosition = HEADER_BYTES + count * 4 + count * (4 + dimension);
+        for (int i = 0; i < count; i++) {
+            out.putInt(linksPosition);
+            linksPosition += 4;
+            for (List<Integer> neighbors : builder.links.get(i)) {
+                linksPosition += 4 + 4 * neighbors.size();
+            }
+        }
+        for (float[] vector : vectors) {
+            quantize(vector, out);
+        }
+        for (int i = 0; i < count; i++) {
+            List<List<Integer>> levels = builder.links.get(i);
+            out.putInt(levels.size() - 1);
+            for (List<Integer> neighbors : levels) {
+                out.putInt(neighbors.size());
+                for (int neighbor : neighbors) {
+                    out.putInt(neighbor);
+                }
+            }
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream stream = atomicFile.startWrite();
+        try {
+            stream.write(out.array());
+            atomicFile.finishWrite(stream);
+        } catch (IOException e) {
+            atomicFile.failWrite(stream);
+            throw e;
+        }
+    }
+
+    /**
+     * Symmetric int8 quantization: value = byte * scale, scale = max |component| / 127
+     */
+    private static void quantize(float[] vector, ByteBuffer out) {
+        float maxAbs = 0;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        float scale = maxAbs > 0 ? maxAbs / 127f : 1f;
+        out.putFloat(scale);
+        for (float v : vector) {
+            out.put((byte) Math.round(v / scale));
+        }
+    }
+
+    /**
+     * Best-first search of one graph level from an entry node, keeping the ef most similar nodes
+     *
+     * @return the results as a min-heap by similarity (least similar at the head)
+     */
+    private static PriorityQueue<Candidate> searchLayer(Graph graph, int entry, int ef, int level, int count) {
+        BitSet visited = new BitSet(count);
+        visited.set(entry);
+        Candidate start = new Candidate(entry, graph.similarity(entry));
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>((a, b) -> Float.compare(b.similarity, a.similarity));
+        PriorityQueue<Candidate> results = new PriorityQueue<>((a, b) -> Float.compare(a.similarity, b.similarity));
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.similarity < results.peek().similarity) {
+                break;  // Every remaining candidate is worse than the worst result
+            }
+            for (int neighbor : graph.neighbors(current.node, level)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = graph.similarity(neighbor);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbor, similarity);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static int best(PriorityQueue<Candidate> results) {
+        Candidate best = null;
+        for (Candidate candidate : results) {
+            if (best == null || candidate.similarity > best.similarity) {
+                best = candidate;
+            }
+        }
+        return best.node;
+    }
+
+    private static int[] topIds(PriorityQueue<Candidate> results, int k) {
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort((a, b) -> Float.compare(b.similarity, a.similarity));
+        int[] ids = new int[Math.min(k, sorted.size())];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sorted.get(i).node;
+        }
+        return ids;
+    }
+
+    private interface Graph {
+        float similarity(int node);
+
+        int[] neighbors(int node, int level);
+    }
+
+    private static final class Candidate {
+        final int node;
+        final float similarity;
+
+        Candidate(int node, float similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * In-memory HNSW construction over float vectors
+     */
+    private static final class Builder {
+        final float[][] vectors;
+        final List<List<List<Integer>>> links = new ArrayList<>();  // node -> level -> neighbors
+        final Random random = new Random(42);  // Same input, same file
+        int entryPoint = 0;
+        int maxLevel = -1;
+
+        Builder(float[][] vectors) {
+            this.vectors = vectors;
+        }
+
+        void insert(int node) {
+            int level = (int) (-Math.log(1 - random.nextDouble()) * LEVEL_MULTIPLIER);
+            List<List<Integer>> levels = new ArrayList<>();
+            for (int l = 0; l <= level; l++) {
+                levels.add(new ArrayList<>());
+            }
+            links.add(levels);
+            if (maxLevel < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            Graph graph = graphFor(vectors[node]);
+            int entry = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                entry = best(searchLayer(graph, entry, 1, l, vectors.length));
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                PriorityQueue<Candidate> found = searchLayer(graph, entry, EF_CONSTRUCTION, l, vectors.length);
+                List<Candidate> sorted = new ArrayList<>(found);
+                sorted.sort((a, b) -> Float.compare(b.similarity, a.similarity));
+                int maxNeighbors = l == 0 ? M0 : M;
+                for (int i = 0; i < Math.min(maxNeighbors, sorted.size()); i++) {
+                    int neighbor = sorted.get(i).node;
+                    levels.get(l).add(neighbor);
+                    List<Integer> back = links.get(neighbor).get(l);
+                    back.add(node);
+                    if (back.size() > maxNeighbors) {
+                        prune(neighbor, back, maxNeighbors);
+                    }
+                }
+                entry = sorted.get(0).node;
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+        }
+
+        /**
+         * Keep the maxNeighbors neighbors most similar to the node
+         */
+        private void prune(int node, List<Integer> neighbors, int maxNeighbors) {
+            float[] vector = vectors[node];
+            neighbors.sort((a, b) -> Float.compare(dot(vector, vectors[b]), dot(vector, vectors[a])));
+            while (neighbors.size() > maxNeighbors) {
+                neighbors.remove(neighbors.size() - 1);
+            }
+        }
+
+        private Graph graphFor(float[] query) {
+            return new Graph() {
+                @Override
+                public float similarity(int node) {
+                    return dot(query, vectors[node]);
+                }
+
+                @Override
+                public int[] neighbors(int node, int level) {
+                    List<Integer> list = links.get(node).get(level);
+                    int[] neighbors = new int[list.size()];
+                    for (int i = 0; i < neighbors.length; i++) {
+                        neighbors[i] = list.get(i);
+                    }
+                    return neighbors;
+                }
+            };
+        }
+
+        private static float dot(float[] a, float[] b) {
+            float dot = 0;
+            for (int i = 0; i < a.length; i++) {
+                dot += a[i] * b[i];
+            }
+            return dot;
+        }
+    }
+}
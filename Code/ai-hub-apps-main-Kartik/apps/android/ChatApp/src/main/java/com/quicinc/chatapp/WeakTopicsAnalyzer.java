@@ -27,23 +27,7 @@ public class WeakTopicsAnalyzer {
      * Returns a formatted string of weak topics for quiz generation prompt
      */
     public static String getWeakTopicsPrompt(SharedPreferences preferences, String userName) {
-        List<QuizResult> quizHistory = loadQuizHistory(preferences, userName);
-        
-        if (quizHistory == null || quizHistory.isEmpty()) {
-            return ""; // No history, no weak topics
-        }
-        
-        // Collect all weak topics from recent quizzes
-        Set<String> allWeakTopics = new HashSet<>();
-        int recentQuizCount = Math.min(5, quizHistory.size()); // Look at last 5 quizzes
-        
-        for (int i = 0; i < recentQuizCount; i++) {
-            QuizResult result = quizHistory.get(i);
-            if (result.getPercentage() < 80) { // Only consider quizzes where user struggled
-                List<String> weakTopics = result.getWeakTopics();
-                allWeakTopics.addAll(weakTopics);
-            }
-        }
+        Set<String> allWeakTopics = getWeakTopics(preferences, userName);
         
         if (allWeakTopics.isEmpty()) {
             return "";
@@ -64,6 +48,30 @@ public class WeakTopicsAnalyzer {
         return promptAddition.toString();
     }
     
+    /**
+     * Weak topics from recent quizzes where the user struggled, in the form of
+     * QuizResult.getWeakTopics()
+     */
+    public static Set<String> getWeakTopics(SharedPreferences preferences, String userName) {
+        List<QuizResult> quizHistory = loadQuizHistory(preferences, userName);
+        
+        // Collect all weak topics from recent quizzes
+        Set<String> allWeakTopics = new HashSet<>();
+        if (quizHistory == null || quizHistory.isEmpty()) {
+            return allWeakTopics; // No history, no weak topics
+        }
+        int recentQuizCount = Math.min(5, quizHistory.size()); // Look at last 5 quizzes
+        
+        for (int i = 0; i < recentQuizCount; i++) {
+            QuizResult result = quizHistory.get(i);
+            if (result.getPercentage() < 80) { // Only consider quizzes where user struggled
+                List<String> weakTopics = result.getWeakTopics();
+                allWeakTopics.addAll(weakTopics);
+            }
+        }
+        return allWeakTopics;
+    }
+    
     /**
      * Get summary of weak topics for display
      */
@@ -0,0 +1,151 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.chatapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WordPieceTokenizer - BERT (uncased) tokenizer for the sentence embedding model
+ *
+ * Lowercases, strips accents, splits on whitespace and punctuation, then splits each word into
+ * the longest vocabulary pieces ("##" marks a continuation). Output is [CLS] tokens [SEP],
+ * truncated and zero-padded to maxLength.
+ */
+public class WordPieceTokenizer {
+
+    private static final String UNKNOWN = "[UNK]";
+    private static final int MAX_WORD_CHARS = 100;  // Longer words become [UNK], as in BERT
+
+    private final Map<String, Integer> vocab = new HashMap<>();
+    private final int unknownId;
+    private final int clsId;
+    private final int sepId;
+
+    /**
+     * @param vocabStream vocab.txt of the model, one token per line (line number = id)
+     */
+    public WordPieceTokenizer(InputStream vocabStream) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(vocabStream, StandardCharsets.UTF_8))) {
+            String line;
+            int id = 0;
+            while ((line = reader.readLine()) != null) {
+                vocab.put(line.trim(), id++);
+            }
+        }
+        unknownId = idOf(UNKNOWN);
+        clsId = idOf("[CLS]");
+        sepId = idOf("[SEP]");
+    }
+
+    private int idOf(String token) throws IOException {
+        Integer id = vocab.get(token);
+        if (id == null) {
+            throw new IOException("Vocabulary has no " + token + " token");
+        }
+        return id;
+    }
+
+    /**
+     * Tokenize text into ids, writing maxLength ids and the matching attention mask
+     *
+     * @return number of real tokens (including [CLS] and [SEP])
+     */
+    public int encode(String text, int[] ids, int[] mask) {
+        int maxLength = ids.length;
+        int count = 0;
+        ids[count++] = clsId;
+
+        String normalized = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= normalized.length() && count < maxLength - 1; i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;  // Accent stripped by NFD
+            }
+            if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+                count = appendWord(word, ids, count, maxLength - 1);
+            } else if (isPunctuation(c)) {
+                count = appendWord(word, ids, count, maxLength - 1);
+                word.append(c);
+                count = appendWord(word, ids, count, maxLength - 1);
+            } else {
+                word.append(c);
+            }
+        }
+
+        ids[count++] = sepId;
+        for (int i = 0; i < maxLength; i++) {
+            mask[i] = i < count ? 1 : 0;
+            if (i >= count) {
+                ids[i] = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Split the buffered word into pieces, append them (up to limit) and clear the buffer
+     */
+    private int appendWord(StringBuilder word, int[] ids, int count, int limit) {
+        if (word.length() == 0) {
+            return count;
+        }
+        String text = word.toString();
+        word.setLength(0);
+        if (text.length() > MAX_WORD_CHARS) {
+            if (count < limit) {
+                ids[count++] = unknownId;
+            }
+            return count;
+        }
+
+        int start = 0;
+        int wordStart = count;
+        while (start < text.length()) {
+            int end = text.length();
+            Integer piece = null;
+            while (start < end) {
+                String candidate = start > 0 ? "##" + text.substring(start, end) : text.substring(start, end);
+                piece = vocab.get(candidate);
+                if (piece != null) {
+                    break;
+                }
+                end--;
+            }
+            if (piece == null) {
+                // No piece matches: the whole word is unknown
+                count = wordStart;
+                if (count < limit) {
+                    ids[count++] = unknownId;
+                }
+                return count;
+            }
+            if (count >= limit) {
+                return count;
+            }
+            ids[count++] = piece;
+            start = end;
+        }
+        return count;
+    }
+
+    private static boolean isPunctuation(char c) {
+        if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.CONNECTOR_PUNCTUATION || type == Character.DASH_PUNCTUATION
+                || type == Character.START_PUNCTUATION || type == Character.END_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.OTHER_PUNCTUATION;
+    }
+}
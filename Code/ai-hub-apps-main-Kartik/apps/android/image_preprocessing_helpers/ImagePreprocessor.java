@@ -0,0 +1,168 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Resizes, pads and normalizes images directly into model input buffers.
+ *
+ * Equivalent to resizeAndPadMaintainAspectRatio followed by writing the pixels into an NHWC RGB
+ * input tensor, but every object involved (staging bitmap, canvas, pixel array, direct buffer)
+ * belongs to a pooled Slot and is reused, so preprocessing a stream of frames allocates nothing
+ * once the pool is warm. Each concurrent caller takes its own Slot.
+ *
+ * Usage:
+ * <pre>
+ *     ImagePreprocessor pre = ImagePreprocessor.forInputShape(inputTensor.shape(), true, MEAN, STD, 0);
+ *     try (ImagePreprocessor.Slot slot = pre.process(bitmap)) {
+ *         interpreter.run(slot.getBuffer(), output);
+ *     }
+ * </pre>
+ */
+public class ImagePreprocessor {
+    private static final int CHANNELS = 3;
+
+    private final int width;
+    private final int height;
+    private final boolean float32;
+    private final float[] scale = new float[CHANNELS];
+    private final float[] offset = new float[CHANNELS];
+    private final int paddingValue;
+    private final ConcurrentLinkedQueue<Slot> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param width  Input tensor width
+     * @param height  Input tensor height
+     * @param float32  Whether the tensor is float32 (normalized) or uint8 (raw 0-255 values)
+     * @param mean  Per-channel (R, G, B) mean on the 0-255 scale, or null for 0. Float only.
+     * @param std  Per-channel (R, G, B) standard deviation on the 0-255 scale, or null for 255. Float only.
+     * @param paddingValue  Value to use for padding (usually 0 or 0xFF)
+     */
+    public ImagePreprocessor(int width, int height, boolean float32, float[] mean, float[] std, int paddingValue) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid input size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.float32 = float32;
+        this.paddingValue = paddingValue;
+        for (int c = 0; c < CHANNELS; c++) {
+            float m = mean != null ? mean[c] : 0f;
+            float s = std != null ? std[c] : 255f;
+            // (value - mean) / std as one multiply-add per channel
+            scale[c] = 1f / s;
+            offset[c] = -m / s;
+        }
+    }
+
+    /**
+     * Create a preprocessor for an NHWC input tensor shape, e.g. {1, 224, 224, 3}.
+     *
+     * @param shape  Input tensor shape (Tensor.shape())
+     * @param float32  Whether the tensor data type is float32 (otherwise uint8)
+     */
+    public static ImagePreprocessor forInputShape(int[] shape, boolean float32, float[] mean, float[] std, int paddingValue) {
+        if (shape.length != 4 || shape[0] != 1 || shape[3] != CHANNELS) {
+            throw new IllegalArgumentException("Expected an NHWC RGB input of batch 1, got shape of rank " + shape.length);
+        }
+        return new ImagePreprocessor(shape[2], shape[1], float32, mean, std, paddingValue);
+    }
+
+    /**
+     * Size in bytes of one input buffer
+     */
+    public int getBufferSize() {
+        return width * height * CHANNELS * (float32 ? 4 : 1);
+    }
+
+    /**
+     * Resize and pad the image (keeping its aspect ratio) and write it into a pooled buffer.
+     * Close the returned slot once the buffer has been consumed, to return it to the pool.
+     *
+     * @param image  Image to preprocess; not modified
+     * @return Slot holding the filled buffer, positioned at 0
+     */
+    public Slot process(Bitmap image) {
+        Slot slot = pool.poll();
+        if (slot == null) {
+            slot = new Slot();
+        }
+        slot.fill(image);
+        return slot;
+    }
+
+    /**
+     * Drop the pooled buffers, e.g. when the model is closed
+     */
+    public void clear() {
+        Slot slot;
+        while ((slot = pool.poll()) != null) {
+            slot.staging.recycle();
+        }
+    }
+
+    /**
+     * A reusable input buffer and the objects needed to fill it
+     */
+    public final class Slot implements AutoCloseable {
+        private final ByteBuffer buffer;
+        private final Bitmap staging;
+        private final Canvas canvas;
+        private final RectF dst = new RectF();
+        private final int[] pixels;
+
+        private Slot() {
+            buffer = ByteBuffer.allocateDirect(getBufferSize()).order(ByteOrder.nativeOrder());
+            staging = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(staging);
+            pixels = new int[width * height];
+        }
+
+        /**
+         * The filled input buffer, positioned at 0
+         */
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        private void fill(Bitmap image) {
+            ImageProcessing.computePaddedRect(image.getWidth(), image.getHeight(), width, height, dst);
+            canvas.drawARGB(0xFF, paddingValue, paddingValue, paddingValue);
+            canvas.drawBitmap(image, null, dst, null);  // Same sampling as resizeAndPadMaintainAspectRatio
+            staging.getPixels(pixels, 0, width, 0, 0, width, height);
+
+            buffer.rewind();
+            if (float32) {
+                for (int pixel : pixels) {
+                    buffer.putFloat(((pixel >> 16) & 0xFF) * scale[0] + offset[0]);
+                    buffer.putFloat(((pixel >> 8) & 0xFF) * scale[1] + offset[1]);
+                    buffer.putFloat((pixel & 0xFF) * scale[2] + offset[2]);
+                }
+            } else {
+                for (int pixel : pixels) {
+                    buffer.put((byte) (pixel >> 16));
+                    buffer.put((byte) (pixel >> 8));
+                    buffer.put((byte) pixel);
+                }
+            }
+            buffer.rewind();
+        }
+
+        /**
+         * Return this slot to the pool. The buffer must not be used afterwards.
+         */
+        @Override
+        public void close() {
+            pool.offer(this);
+        }
+    }
+}
@@ -25,25 +25,40 @@ public class ImageProcessing {
             int outputBitmapWidth,
             int outputBitmapHeight,
             int paddingValue) {
-        int width = image.getWidth();
-        int height = image.getHeight();
+        RectF dst = new RectF();
+        computePaddedRect(image.getWidth(), image.getHeight(), outputBitmapWidth, outputBitmapHeight, dst);
+
+        Bitmap outputImage = Bitmap.createBitmap(outputBitmapWidth, outputBitmapHeight, Bitmap.Config.ARGB_8888);
+        Canvas can = new Canvas(outputImage);
+        can.drawARGB(0xFF, paddingValue, paddingValue, paddingValue);
+        can.drawBitmap(image, null, dst, null);
+        return outputImage;
+    }
+
+    /**
+     * Compute where an image lands when resized into an output of the given size while
+     * respecting its aspect ratio: centered, with padding on two sides.
+     *
+     * @param width  Input width
+     * @param height  Input height
+     * @param outputWidth  Output width
+     * @param outputHeight  Output height
+     * @param dst  Receives the destination rectangle
+     */
+    public static void computePaddedRect(int width, int height, int outputWidth, int outputHeight, RectF dst) {
         float ratioBitmap = (float) width / (float) height;
-        float ratioMax = (float) outputBitmapWidth / (float) outputBitmapHeight;
+        float ratioMax = (float) outputWidth / (float) outputHeight;
 
-        int finalWidth = outputBitmapWidth;
-        int finalHeight = outputBitmapHeight;
+        int finalWidth = outputWidth;
+        int finalHeight = outputHeight;
         if (ratioMax > ratioBitmap) {
-            finalWidth = (int) ((float)outputBitmapHeight * ratioBitmap);
+            finalWidth = (int) ((float)outputHeight * ratioBitmap);
         } else {
-            finalHeight = (int) ((float)outputBitmapWidth / ratioBitmap);
+            finalHeight = (int) ((float)outputWidth / ratioBitmap);
         }
 
-        Bitmap outputImage = Bitmap.createBitmap(outputBitmapWidth, outputBitmapHeight, Bitmap.Config.ARGB_8888);
-        Canvas can = new Canvas(outputImage);
-        can.drawARGB(0xFF, paddingValue, paddingValue, paddingValue);
-        int left = (outputBitmapWidth - finalWidth) / 2;
-        int top = (outputBitmapHeight - finalHeight) / 2;
-        can.drawBitmap(image, null, new RectF(left, top, finalWidth + left, finalHeight + top), null);
-        return outputImage;
+        int left = (outputWidth - finalWidth) / 2;
+        int top = (outputHeight - finalHeight) / 2;
+        dst.set(left, top, finalWidth + left, finalHeight + top);
     }
 }
@@ -0,0 +1,400 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.tflite;
+
+import android.os.Build;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.Pair;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Picks the fastest interpreter configuration for a model on this device.
+ *
+ * CreateInterpreterAndDelegatesFromOptions returns the first delegate set that loads, with a
+ * caller-chosen CPU thread count. On the first run, CreateTunedInterpreter instead benchmarks:
+ *
+ *   1. XNNPack with 1, 2, 4 ... threads, to find the best thread count for layers on CPU
+ *   2. Every delegate set in the priority order with that thread count, GPUv2 sets both with
+ *      and without FP16
+ *
+ * Each configuration runs WARMUP_RUNS untimed and TIMED_RUNS timed inferences on zeroed inputs,
+ * and the median is compared. The winner is saved in cacheDir, keyed by the model identifier and
+ * the device build fingerprint, and later starts create it directly. A saved configuration
+ * that no longer loads (e.g. after a driver update) is tuned again.
+ *
+ * InterpreterPool takes a tuned Config directly (see getTunedConfig), so every interpreter of
+ * the pool is created with it.
+ */
+public class DelegateAutoTuner {
+    private static final String TAG = "QualcommTFLiteHelpers";
+    private static final String TUNING_FILE = "delegate_tuning.properties";
+    private static final int WARMUP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * Create an interpreter with the fastest configuration for this model and device, tuning
+     * first if no result is saved.
+     *
+     * @param tfLiteModel           The model to load.
+     * @param delegatePriorityOrder Delegate sets to consider, see CreateInterpreterAndDelegatesFromOptions.
+     *                              CPU-only is considered only if the order contains an empty set.
+     * @param nativeLibraryDir      Android.Context.nativeLibraryDir (native library directory location)
+     * @param cacheDir              Android app cache directory.
+     * @param modelIdentifier       Unique identifier string for the model being loaded.
+     * @return A pair of the created interpreter and associated delegates, as for
+     *         CreateInterpreterAndDelegatesFromOptions.
+     */
+    public static Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> CreateTunedInterpreter(
+            MappedByteBuffer tfLiteModel,
+            TFLiteHelpers.DelegateType[][] delegatePriorityOrder,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        Config saved = getSavedConfig(cacheDir, modelIdentifier);
+        if (saved != null) {
+            Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> result =
+                    saved.create(tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier);
+            if (result != null) {
+                Log.i(TAG, "Using tuned configuration " + saved);
+                return result;
+            }
+            Log.w(TAG, "Tuned configuration " + saved + " no longer loads, tuning again.");
+        }
+
+        Config best = tuneAndSave(tfLiteModel, delegatePriorityOrder, nativeLibraryDir, cacheDir, modelIdentifier);
+        Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> result =
+                best.create(tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier);
+        if (result == null) {
+            throw new RuntimeException("Tuned configuration " + best + " failed to load.");
+        }
+        return result;
+    }
+
+    /**
+     * The fastest configuration for this model and device, tuning first if no result is saved.
+     * Unlike CreateTunedInterpreter, a saved configuration is returned without loading it.
+     *
+     * @param tfLiteModel           The model to tune.
+     * @param delegatePriorityOrder Delegate sets to consider, see CreateTunedInterpreter.
+     * @param nativeLibraryDir      Android.Context.nativeLibraryDir (native library directory location)
+     * @param cacheDir              Android app cache directory.
+     * @param modelIdentifier       Unique identifier string for the model being loaded.
+     * @return The configuration, for InterpreterPool or Config.create.
+     */
+    public static Config getTunedConfig(
+            MappedByteBuffer tfLiteModel,
+            TFLiteHelpers.DelegateType[][] delegatePriorityOrder,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        Config saved = getSavedConfig(cacheDir, modelIdentifier);
+        if (saved != null) {
+            return saved;
+        }
+        return tuneAndSave(tfLiteModel, delegatePriorityOrder, nativeLibraryDir, cacheDir, modelIdentifier);
+    }
+
+    private static Config getSavedConfig(String cacheDir, String modelIdentifier) {
+        return Config.parse(load(new File(cacheDir, TUNING_FILE)).getProperty(tuningKey(modelIdentifier)));
+    }
+
+    private static Config tuneAndSave(
+            MappedByteBuffer tfLiteModel,
+            TFLiteHelpers.DelegateType[][] delegatePriorityOrder,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        Config best = tune(tfLiteModel, delegatePriorityOrder, nativeLibraryDir, cacheDir, modelIdentifier);
+        if (best == null) {
+            throw new RuntimeException("Unable to create an interpreter of any kind for the provided model. See log for details.");
+        }
+        synchronized (DelegateAutoTuner.class) {
+            File tuningFile = new File(cacheDir, TUNING_FILE);
+            Properties tuning = load(tuningFile);
+            tuning.setProperty(tuningKey(modelIdentifier), best.serialize());
+            save(tuning, tuningFile);
+        }
+        return best;
+    }
+
+    private static String tuningKey(String modelIdentifier) {
+        return modelIdentifier + "@" + Build.FINGERPRINT;
+    }
+
+    /**
+     * Benchmark the candidate configurations.
+     *
+     * @return The fastest configuration, or null if none could be created.
+     */
+    public static Config tune(
+            MappedByteBuffer tfLiteModel,
+            TFLiteHelpers.DelegateType[][] delegatePriorityOrder,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        long start = System.nanoTime();
+
+        // 1. Thread count for layers on CPU
+        Config bestCpu = null;
+        for (int threads : threadCandidates()) {
+            Config config = new Config(new TFLiteHelpers.DelegateType[0], threads, false);
+            if (benchmark(config, tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier)
+                    && (bestCpu == null || config.latencyMs < bestCpu.latencyMs)) {
+                bestCpu = config;
+            }
+        }
+        int numCPUThreads = bestCpu != null ? bestCpu.numCPUThreads : AIHubDefaults.numCPUThreads;
+
+        // 2. Delegate sets
+        Config best = null;
+        for (TFLiteHelpers.DelegateType[] delegates : delegatePriorityOrder) {
+            List<Config> configs = new ArrayList<>();
+            if (delegates.length == 0) {
+                if (bestCpu != null) {
+                    configs.add(bestCpu);
+                }
+            } else if (Arrays.asList(delegates).contains(TFLiteHelpers.DelegateType.GPUv2)) {
+                configs.add(new Config(delegates, numCPUThreads, true));
+                configs.add(new Config(delegates, numCPUThreads, false));
+            } else {
+                configs.add(new Config(delegates, numCPUThreads, true));
+            }
+
+            for (Config config : configs) {
+                if (config != bestCpu && !benchmark(config, tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier)) {
+                    continue;
+                }
+                if (best == null || config.latencyMs < best.latencyMs) {
+                    best = config;
+                }
+            }
+        }
+
+        Log.i(TAG, "Tuning finished in " + (System.nanoTime() - start) / 1000000 + " ms, best: " + best);
+        return best;
+    }
+
+    /**
+     * 1, 2, 4 ... up to the number of cores, and the number of cores itself
+     */
+    private static List<Integer> threadCandidates() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> threads = new TreeSet<>();
+        for (int n = 1; n <= cores; n *= 2) {
+            threads.add(n);
+        }
+        threads.add(cores);
+        return new ArrayList<>(threads);
+    }
+
+    /**
+     * Time the configuration and store the median latency in config.latencyMs.
+     *
+     * @return False if the configuration could not be created or run.
+     */
+    private static boolean benchmark(Config config, MappedByteBuffer tfLiteModel, String nativeLibraryDir,
+                                     String cacheDir, String modelIdentifier) {
+        Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> created =
+                config.create(tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier);
+        if (created == null) {
+            return false;
+        }
+        Interpreter interpreter = created.first;
+        try {
+            Object[] inputs = new Object[interpreter.getInputTensorCount()];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = ByteBuffer.allocateDirect(interpreter.getInputTensor(i).numBytes()).order(ByteOrder.nativeOrder());
+            }
+            Map<Integer, Object> outputs = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                outputs.put(i, ByteBuffer.allocateDirect(interpreter.getOutputTensor(i).numBytes()).order(ByteOrder.nativeOrder()));
+            }
+
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run(interpreter, inputs, outputs);
+            }
+            double[] times = new double[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = System.nanoTime();
+                run(interpreter, inputs, outputs);
+                times[i] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(times);
+            config.latencyMs = times[TIMED_RUNS / 2];
+            Log.i(TAG, "Benchmarked " + config);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Benchmark of " + config + " failed | " + e.getMessage());
+            return false;
+        } finally {
+            interpreter.close();
+            created.second.values().forEach(Delegate::close);
+        }
+    }
+
+    private static void run(Interpreter interpreter, Object[] inputs, Map<Integer, Object> outputs) {
+        for (Object input : inputs) {
+            ((ByteBuffer) input).rewind();
+        }
+        for (Object output : outputs.values()) {
+            ((ByteBuffer) output).rewind();
+        }
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    private static Properties load(File file) {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try (InputStream in = new AtomicFile(file).openRead()) {
+                properties.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read delegate tuning: " + e.getMessage());
+            }
+        }
+        return properties;
+    }
+
+    private static void save(Properties properties, File file) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            properties.store(out, "Delegate tuning: model@device=delegates;threads;fp16;latency ms");
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            if (out != null) {
+                atomicFile.failWrite(out);
+            }
+            Log.w(TAG, "Unable to save delegate tuning: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One interpreter configuration: delegates (in registration order), CPU threads, FP16 on GPU.
+     */
+    public static final class Config {
+        final TFLiteHelpers.DelegateType[] delegates;
+        final int numCPUThreads;
+        final boolean allowFp16;
+        double latencyMs = Double.NaN;
+
+        Config(TFLiteHelpers.DelegateType[] delegates, int numCPUThreads, boolean allowFp16) {
+            this.delegates = delegates;
+            this.numCPUThreads = numCPUThreads;
+            this.allowFp16 = allowFp16;
+        }
+
+        public int getNumCPUThreads() {
+            return numCPUThreads;
+        }
+
+        /**
+         * The same delegates with a different CPU thread count, e.g. to share the cores
+         * between the interpreters of a pool.
+         */
+        public Config withNumCPUThreads(int threads) {
+            return new Config(delegates, threads, allowFp16);
+        }
+
+        /**
+         * Create the interpreter and delegates of this configuration.
+         *
+         * @return The interpreter and its delegates, or null if they could not be created.
+         */
+        Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> create(
+                MappedByteBuffer tfLiteModel, String nativeLibraryDir, String cacheDir, String modelIdentifier) {
+            Map<TFLiteHelpers.DelegateType, Delegate> created = new HashMap<>();
+            @SuppressWarnings("unchecked")
+            Pair<TFLiteHelpers.DelegateType, Delegate>[] pairs = new Pair[delegates.length];
+            for (int i = 0; i < delegates.length; i++) {
+                Delegate delegate;
+                if (delegates[i] == TFLiteHelpers.DelegateType.GPUv2) {
+                    // Separate serialization entries per precision
+                    delegate = TFLiteHelpers.CreateGPUv2Delegate(cacheDir,
+                            allowFp16 ? modelIdentifier : modelIdentifier + "_fp32", allowFp16);
+                } else {
+                    delegate = TFLiteHelpers.CreateDelegate(delegates[i], nativeLibraryDir, cacheDir, modelIdentifier);
+                }
+                if (delegate == null) {
+                    created.values().forEach(Delegate::close);
+                    return null;
+                }
+                created.put(delegates[i], delegate);
+                pairs[i] = new Pair<>(delegates[i], delegate);
+            }
+
+            Interpreter interpreter = TFLiteHelpers.CreateInterpreterFromDelegates(pairs, numCPUThreads, tfLiteModel);
+            if (interpreter == null) {
+                created.values().forEach(Delegate::close);
+                return null;
+            }
+            return new Pair<>(interpreter, created);
+        }
+
+        String serialize() {
+            StringBuilder names = new StringBuilder();
+            for (TFLiteHelpers.DelegateType delegate : delegates) {
+                if (names.length() > 0) {
+                    names.append('+');
+                }
+                names.append(delegate.name());
+            }
+            return names + ";" + numCPUThreads + ";" + allowFp16 + ";" + latencyMs;
+        }
+
+        /**
+         * @return The configuration, or null if value is null or not a valid configuration.
+         */
+        static Config parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                String[] parts = value.split(";", -1);
+                String[] names = parts[0].isEmpty() ? new String[0] : parts[0].split("\\+");
+                TFLiteHelpers.DelegateType[] delegates = new TFLiteHelpers.DelegateType[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    delegates[i] = TFLiteHelpers.DelegateType.valueOf(names[i]);
+                }
+                Config config = new Config(delegates, Integer.parseInt(parts[1]), Boolean.parseBoolean(parts[2]));
+                config.latencyMs = Double.parseDouble(parts[3]);
+                return config;
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Ignoring invalid tuning entry: " + value);
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            List<String> names = new ArrayList<>();
+            for (TFLiteHelpers.DelegateType delegate : delegates) {
+                names.add(delegate.name());
+            }
+            names.add("XNNPack");
+            return "{" + String.join(", ", names) + "} x" + numCPUThreads + " threads"
+                    + (Arrays.asList(delegates).contains(TFLiteHelpers.DelegateType.GPUv2) ? (allowFp16 ? ", FP16" : ", FP32") : "")
+                    + (Double.isNaN(latencyMs) ? "" : String.format(", %.2f ms", latencyMs));
+        }
+    }
+}
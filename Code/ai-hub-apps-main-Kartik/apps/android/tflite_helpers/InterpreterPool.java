@@ -0,0 +1,292 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.tflite;
+
+import android.util.Log;
+import android.util.Pair;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of interpreters for one model, leased to one caller at a time.
+ *
+ * Interpreter is not thread-safe, so concurrent callers each lease their own instance:
+ *
+ * <pre>
+ *     try (InterpreterPool.Lease lease = pool.lease(100, TimeUnit.MILLISECONDS)) {
+ *         lease.getInterpreter().run(input, output);
+ *     }
+ * </pre>
+ *
+ * The first interpreter is created with CreateInterpreterAndDelegatesFromOptions. The others use
+ * the same delegate types that succeeded for it, so the priority-order search runs once. A
+ * delegate instance is bound to the graph of the interpreter it was registered with and cannot
+ * be used by two interpreters at once, so each interpreter gets its own delegates. They share
+ * the compiled model through the delegate cache (cacheDir + modelIdentifier), so only the first
+ * one pays for compilation. All interpreters share the one MappedByteBuffer.
+ *
+ * A pool can also be created from a DelegateAutoTuner.Config, in which case every interpreter
+ * uses the tuned delegates, thread count and precision.
+ *
+ * For CPU-only models (XNNPack), several interpreters with a few threads each let small
+ * inferences run in parallel on multi-core CPUs.
+ */
+public class InterpreterPool implements AutoCloseable {
+    private static final String TAG = "QualcommTFLiteHelpers";
+
+    private final List<Interpreter> interpreters = new ArrayList<>();
+    private final List<Delegate> delegates = new ArrayList<>();
+    private final ArrayBlockingQueue<Interpreter> idle;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalHoldNanos = new AtomicLong();
+    private final AtomicLong maxHoldNanos = new AtomicLong();
+
+    /**
+     * Create a pool of interpreters for the given model.
+     *
+     * @param size                  Number of interpreters.
+     * @param tfLiteModel           The model to load.
+     * @param delegatePriorityOrder Delegates to try, see CreateInterpreterAndDelegatesFromOptions.
+     * @param numCPUThreads         Number of CPU threads for each interpreter.
+     * @param nativeLibraryDir      Android.Context.nativeLibraryDir (native library directory location)
+     * @param cacheDir              Android app cache directory.
+     * @param modelIdentifier       Unique identifier string for the model being loaded.
+     */
+    public InterpreterPool(
+            int size,
+            MappedByteBuffer tfLiteModel,
+            TFLiteHelpers.DelegateType[][] delegatePriorityOrder,
+            int numCPUThreads,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + size);
+        }
+        idle = new ArrayBlockingQueue<>(size);
+
+        Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> first =
+                TFLiteHelpers.CreateInterpreterAndDelegatesFromOptions(
+                        tfLiteModel, delegatePriorityOrder, numCPUThreads, nativeLibraryDir, cacheDir, modelIdentifier);
+        add(first.first, first.second.values());
+        TFLiteHelpers.DelegateType[] order = registrationOrder(delegatePriorityOrder, first.second);
+
+        for (int i = 1; i < size; i++) {
+            Interpreter interpreter = createLike(
+                    order, numCPUThreads, tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier);
+            if (interpreter == null) {
+                Log.w(TAG, "Interpreter pool limited to " + interpreters.size() + " of " + size + " interpreters.");
+                break;
+            }
+        }
+    }
+
+    /**
+     * Create a pool of interpreters with a tuned configuration.
+     *
+     * @param size             Number of interpreters.
+     * @param tfLiteModel      The model to load.
+     * @param config           Configuration from DelegateAutoTuner.getTunedConfig.
+     * @param nativeLibraryDir Android.Context.nativeLibraryDir (native library directory location)
+     * @param cacheDir         Android app cache directory.
+     * @param modelIdentifier  Unique identifier string for the model being loaded.
+     * @throws RuntimeException If not even one interpreter could be created with the configuration.
+     */
+    public InterpreterPool(
+            int size,
+            MappedByteBuffer tfLiteModel,
+            DelegateAutoTuner.Config config,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + size);
+        }
+        idle = new ArrayBlockingQueue<>(size);
+
+        for (int i = 0; i < size; i++) {
+            Pair<Interpreter, Map<TFLiteHelpers.DelegateType, Delegate>> created =
+                    config.create(tfLiteModel, nativeLibraryDir, cacheDir, modelIdentifier);
+            if (created == null) {
+                if (interpreters.isEmpty()) {
+                    throw new RuntimeException("Unable to create an interpreter with configuration " + config + ".");
+                }
+                Log.w(TAG, "Interpreter pool limited to " + interpreters.size() + " of " + size + " interpreters.");
+                break;
+            }
+            add(created.first, created.second.values());
+        }
+    }
+
+    /**
+     * Create one more interpreter with its own delegates of the given types, registered in the
+     * same order as for the first interpreter.
+     *
+     * @return The created interpreter, or null if it could not be created.
+     */
+    private Interpreter createLike(
+            TFLiteHelpers.DelegateType[] order,
+            int numCPUThreads,
+            MappedByteBuffer tfLiteModel,
+            String nativeLibraryDir,
+            String cacheDir,
+            String modelIdentifier) {
+        List<Delegate> created = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        Pair<TFLiteHelpers.DelegateType, Delegate>[] pairs = new Pair[order.length];
+        for (int i = 0; i < order.length; i++) {
+            Delegate delegate = TFLiteHelpers.CreateDelegate(order[i], nativeLibraryDir, cacheDir, modelIdentifier);
+            if (delegate == null) {
+                created.forEach(Delegate::close);
+                return null;
+            }
+            created.add(delegate);
+            pairs[i] = new Pair<>(order[i], delegate);
+        }
+
+        Interpreter interpreter = TFLiteHelpers.CreateInterpreterFromDelegates(pairs, numCPUThreads, tfLiteModel);
+        if (interpreter == null) {
+            created.forEach(Delegate::close);
+            return null;
+        }
+        add(interpreter, created);
+        return interpreter;
+    }
+
+    /**
+     * The delegate list of delegatePriorityOrder that produced the first interpreter
+     */
+    private static TFLiteHelpers.DelegateType[] registrationOrder(
+            TFLiteHelpers.DelegateType[][] delegatePriorityOrder,
+            Map<TFLiteHelpers.DelegateType, Delegate> firstDelegates) {
+        for (TFLiteHelpers.DelegateType[] attempt : delegatePriorityOrder) {
+            if (attempt.length == firstDelegates.size()) {
+                boolean matches = true;
+                for (TFLiteHelpers.DelegateType type : attempt) {
+                    matches &= firstDelegates.containsKey(type);
+                }
+                if (matches) {
+                    return attempt;
+                }
+            }
+        }
+        return firstDelegates.keySet().toArray(new TFLiteHelpers.DelegateType[0]);
+    }
+
+    private void add(Interpreter interpreter, Iterable<Delegate> interpreterDelegates) {
+        interpreters.add(interpreter);
+        interpreterDelegates.forEach(delegates::add);
+        idle.add(interpreter);
+    }
+
+    /**
+     * Number of interpreters in the pool. May be smaller than requested if some could not be created.
+     */
+    public int size() {
+        return interpreters.size();
+    }
+
+    /**
+     * Lease an interpreter, waiting up to the given time for one to become free.
+     *
+     * @return A lease that must be closed to return the interpreter to the pool.
+     * @throws TimeoutException If no interpreter became free in time.
+     */
+    public Lease lease(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (closed) {
+            throw new IllegalStateException("Interpreter pool is closed.");
+        }
+        long start = System.nanoTime();
+        Interpreter interpreter = idle.poll(timeout, unit);
+        long acquired = System.nanoTime();
+        if (interpreter == null) {
+            timeoutCount.incrementAndGet();
+            throw new TimeoutException("No interpreter free after " + unit.toMillis(timeout) + " ms.");
+        }
+        leaseCount.incrementAndGet();
+        totalWaitNanos.addAndGet(acquired - start);
+        return new Lease(interpreter, acquired);
+    }
+
+    /**
+     * Lease metrics: count, timeouts, average wait and hold times, longest hold
+     */
+    public String getStats() {
+        long leases = leaseCount.get();
+        return String.format(
+                "%d interpreters, %d leases, %d timeouts, wait avg %.2f ms, hold avg %.2f ms / max %.2f ms",
+                interpreters.size(), leases, timeoutCount.get(),
+                leases > 0 ? totalWaitNanos.get() / 1e6 / leases : 0.0,
+                leases > 0 ? totalHoldNanos.get() / 1e6 / leases : 0.0,
+                maxHoldNanos.get() / 1e6);
+    }
+
+    /**
+     * Close all interpreters and delegates. Interpreters must not be leased at this point.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Log.i(TAG, "Closing interpreter pool: " + getStats());
+        interpreters.forEach(Interpreter::close);
+        delegates.forEach(Delegate::close);
+        interpreters.clear();
+        delegates.clear();
+        idle.clear();
+    }
+
+    /**
+     * Exclusive use of one interpreter until closed.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Interpreter interpreter;
+        private final long acquiredNanos;
+        private boolean released = false;
+
+        private Lease(Interpreter interpreter, long acquiredNanos) {
+            this.interpreter = interpreter;
+            this.acquiredNanos = acquiredNanos;
+        }
+
+        public Interpreter getInterpreter() {
+            if (released) {
+                throw new IllegalStateException("Lease already returned.");
+            }
+            return interpreter;
+        }
+
+        /**
+         * Return the interpreter to the pool.
+         */
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            long held = System.nanoTime() - acquiredNanos;
+            totalHoldNanos.addAndGet(held);
+            maxHoldNanos.accumulateAndGet(held, Math::max);
+            if (!closed) {
+                idle.offer(interpreter);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+// ---------------------------------------------------------------------
+// Copyright (c) 2025 Qualcomm Technologies, Inc. and/or its subsidiaries.
+// SPDX-License-Identifier: BSD-3-Clause
+// ---------------------------------------------------------------------
+package com.quicinc.tflite;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Identifies model files for the delegate caches (QNN context binaries, GPU serialization)
+ * without reading the whole model on every load.
+ *
+ * A model's identifier is a SHA-256 of its full contents, since it names the delegate cache a
+ * model is paired with. It is stored in cacheDir together with a cheap signature: file size,
+ * modification time of the containing file (the APK for assets) and a CRC32 of a few blocks
+ * sampled across the model. As long as the signature matches, the stored identifier is reused
+ * and only the sampled blocks are read.
+ */
+class ModelFingerprintCache {
+    private static final String TAG = "QualcommTFLiteHelpers";
+    private static final String CACHE_FILE = "model_fingerprints_v2.properties";  // v1 held CRC32 identifiers
+    private static final int SAMPLE_COUNT = 16;
+    private static final int SAMPLE_SIZE = 4096;
+
+    private ModelFingerprintCache() {
+    }
+
+    /**
+     * Get the identifier of a model, computing it only if the model changed since it was cached.
+     *
+     * @param model     The memory-mapped model.
+     * @param modelName Name of the model, used as the cache key.
+     * @param mtime     Modification time of the file containing the model.
+     * @param cacheDir  Directory to persist fingerprints in, or null to always compute.
+     * @return A unique model identifier string.
+     */
+    static synchronized String getIdentifier(ByteBuffer model, String modelName, long mtime, String cacheDir) {
+        String signature = model.capacity() + "," + mtime + "," + Long.toHexString(sampleChecksum(model));
+        File cacheFile = cacheDir != null ? new File(cacheDir, CACHE_FILE) : null;
+        Properties cache = cacheFile != null ? load(cacheFile) : new Properties();
+
+        String cached = cache.getProperty(modelName);
+        if (cached != null && cached.startsWith(signature + ",")) {
+            return cached.substring(signature.length() + 1);
+        }
+
+        long start = System.nanoTime();
+        String identifier = fullDigest(model);
+        Log.i(TAG, "Fingerprinted " + modelName + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        if (cacheFile != null) {
+            cache.setProperty(modelName, signature + "," + identifier);
+            save(cache, cacheFile);
+        }
+        return identifier;
+    }
+
+    /**
+     * CRC32 of SAMPLE_COUNT blocks spread evenly across the model, including the first and last.
+     */
+    private static long sampleChecksum(ByteBuffer model) {
+        CRC32 crc = new CRC32();
+        int size = model.capacity();
+        if (size <= SAMPLE_COUNT * SAMPLE_SIZE) {
+            return fullChecksum(model);
+        }
+        long stride = (long) (size - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            ByteBuffer block = model.duplicate();
+            int position = (int) (i * stride);
+            block.position(position);
+            block.limit(position + SAMPLE_SIZE);
+            crc.update(block);
+        }
+        return crc.getValue();
+    }
+
+    private static long fullChecksum(ByteBuffer model) {
+        CRC32 crc = new CRC32();
+        ByteBuffer all = model.duplicate();
+        all.clear();
+        crc.update(all);
+        return crc.getValue();
+    }
+
+    private static String fullDigest(ByteBuffer model) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+        ByteBuffer all = model.duplicate();
+        all.clear();
+        digest.update(all);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static Properties load(File file) {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try (InputStream in = new AtomicFile(file).openRead()) {
+                properties.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read model fingerprints: " + e.getMessage());
+            }
+        }
+        return properties;
+    }
+
+    private static void save(Properties properties, File file) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            properties.store(out, "Model fingerprints: name=size,mtime,sample,identifier");
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            if (out != null) {
+                atomicFile.failWrite(out);
+            }
+            Log.w(TAG, "Unable to save model fingerprints: " + e.getMessage());
+        }
+    }
+}
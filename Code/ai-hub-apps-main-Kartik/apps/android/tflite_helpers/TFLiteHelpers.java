@@ -6,6 +6,8 @@ package com.quicinc.tflite;
 
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.Log;
 import android.util.Pair;
 
@@ -20,9 +22,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -202,10 +201,26 @@ public class TFLiteHelpers {
      * @throws IOException If the model file does not exist or cannot be read.
      */
     public static Pair<MappedByteBuffer, String> loadModelFile(AssetManager assets, String modelFilename)
-            throws IOException, NoSuchAlgorithmException {
+            throws IOException {
+        return loadModelFile(assets, modelFilename, null);
+    }
+
+    /**
+     * Load a TF Lite model from disk, reusing its identifier from a previous load if the model
+     * has not changed, so the whole model is not read on every app start.
+     *
+     * @param assets        Android app asset manager.
+     * @param modelFilename File name of the resource to load.
+     * @param cacheDir      Android app cache directory, where model fingerprints are kept.
+     *                      If null, the identifier is computed on every load.
+     * @return The loaded model in MappedByteBuffer format, and a unique model identifier hash string.
+     * @throws IOException If the model file does not exist or cannot be read.
+     */
+    public static Pair<MappedByteBuffer, String> loadModelFile(AssetManager assets, String modelFilename, String cacheDir)
+            throws IOException {
         AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
         MappedByteBuffer buffer;
-        String hash;
+        long mtime;
 
         try (FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
             FileChannel fileChannel = inputStream.getChannel();
@@ -215,25 +230,16 @@ public class TFLiteHelpers {
             // Map the file to a buffer
             buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
 
-            // Compute the hash
-            MessageDigest hashDigest = MessageDigest.getInstance("MD5");
-            inputStream.skip(startOffset);
-            try (DigestInputStream dis = new DigestInputStream(inputStream, hashDigest)) {
-                byte[] data = new byte[8192];
-                int numRead = 0;
-                while (numRead < declaredLength) {
-                    numRead += dis.read(data, 0, Math.min(8192, (int)declaredLength - numRead));
-                }; // Computing MD5 hash
-            }
-
-            // Convert hash to string
-            StringBuilder hex = new StringBuilder();
-            for (byte b : hashDigest.digest()) {
-                hex.append(String.format("%02x", b));
+            // Modification time of the containing file (the APK), which changes on app updates
+            try {
+                mtime = Os.fstat(fileDescriptor.getFileDescriptor()).st_mtime;
+            } catch (ErrnoException e) {
+                mtime = 0;
             }
-            hash = hex.toString();
         }
 
+        // Compute the hash, or reuse it if the model did not change
+        String hash = ModelFingerprintCache.getIdentifier(buffer, modelFilename, mtime, cacheDir);
         return new Pair<>(buffer, hash);
     }
 
@@ -342,6 +348,19 @@ public class TFLiteHelpers {
      * @return A The created delegate if successful, and null otherwise.
      */
     static Delegate CreateGPUv2Delegate(String cacheDir, String modelIdentifier) {
+        return CreateGPUv2Delegate(cacheDir, modelIdentifier, true);
+    }
+
+    /**
+     * Create and configure the GPUv2 delegate.
+     *
+     * @param cacheDir              Android app cache directory.
+     * @param modelIdentifier       Unique identifier string for the model being loaded.
+     *                              Use a different identifier for each precision setting.
+     * @param precisionLossAllowed  Whether to allow execution in FP16 precision.
+     * @return A The created delegate if successful, and null otherwise.
+     */
+    static Delegate CreateGPUv2Delegate(String cacheDir, String modelIdentifier, boolean precisionLossAllowed) {
         GpuDelegateFactory.Options gpuOptions = new GpuDelegateFactory.Options();
 
         // -------------------------------
@@ -365,7 +384,7 @@ public class TFLiteHelpers {
         //
         // -------------------------------
         gpuOptions.setInferencePreference(GpuDelegateFactory.Options.INFERENCE_PREFERENCE_SUSTAINED_SPEED);
-        gpuOptions.setPrecisionLossAllowed(true);
+        gpuOptions.setPrecisionLossAllowed(precisionLossAllowed);
         gpuOptions.setSerializationParams(cacheDir, modelIdentifier);
 
         try {